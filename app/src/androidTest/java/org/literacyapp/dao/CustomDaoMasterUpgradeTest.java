@@ -0,0 +1,84 @@
+package org.literacyapp.dao;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.literacyapp.contentprovider.dao.DaoMaster;
+import org.literacyapp.contentprovider.dao.converter.FloatArrayConverter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CustomDaoMasterUpgradeTest {
+
+    private static final String DB_NAME = "literacyapp-upgrade-test-db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void testUpgradeFrom2000007() {
+        // Tables of the analytics data as they have been created by schema version 2000007
+        SQLiteDatabase db = context.openOrCreateDatabase(DB_NAME, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE \"STUDENT_IMAGE_COLLECTION_EVENT\" (" +
+                "\"_id\" INTEGER PRIMARY KEY AUTOINCREMENT ," +
+                "\"DEVICE_ID\" INTEGER NOT NULL ," +
+                "\"TIME\" INTEGER NOT NULL ," +
+                "\"STUDENT_ID\" INTEGER NOT NULL ," +
+                "\"MEAN_FEATURE_VECTOR\" TEXT);");
+        db.execSQL("CREATE TABLE \"STUDENT_IMAGE_FEATURE\" (" +
+                "\"_id\" INTEGER PRIMARY KEY AUTOINCREMENT ," +
+                "\"TIME_CREATED\" INTEGER NOT NULL ," +
+                "\"FEATURE_VECTOR\" TEXT NOT NULL );");
+        db.execSQL("CREATE TABLE \"STUDENT_IMAGE\" (" +
+                "\"_id\" INTEGER PRIMARY KEY AUTOINCREMENT ," +
+                "\"TIME_COLLECTED\" INTEGER NOT NULL ," +
+                "\"IMAGE_FILE_URL\" TEXT NOT NULL ," +
+                "\"STUDENT_IMAGE_FEATURE_ID\" INTEGER NOT NULL ," +
+                "\"STUDENT_IMAGE_COLLECTION_EVENT_ID\" INTEGER NOT NULL );");
+        db.execSQL("INSERT INTO STUDENT_IMAGE_COLLECTION_EVENT VALUES (1, 1, 1000, 5, '[2.0,3.0]');");
+        db.execSQL("INSERT INTO STUDENT_IMAGE_FEATURE VALUES (1, 1000, '[1.0,2.0]');");
+        db.execSQL("INSERT INTO STUDENT_IMAGE_FEATURE VALUES (2, 1000, '[3.0,4.0]');");
+        db.execSQL("INSERT INTO STUDENT_IMAGE VALUES (1, 1000, 'image1.png', 1, 1);");
+        db.execSQL("INSERT INTO STUDENT_IMAGE VALUES (2, 1000, 'image2.png', 2, 1);");
+        db.setVersion(2000007);
+        db.close();
+
+        CustomDaoMaster.DevOpenHelper openHelper = new CustomDaoMaster.DevOpenHelper(context, DB_NAME);
+        SQLiteDatabase upgradedDb = openHelper.getWritableDatabase();
+        try {
+            assertEquals(DaoMaster.SCHEMA_VERSION, upgradedDb.getVersion());
+
+            Cursor cursor = upgradedDb.rawQuery("SELECT MEAN_FEATURE_VECTOR, FEATURE_VECTOR_SUM, FEATURE_VECTOR_COUNT FROM STUDENT_IMAGE_COLLECTION_EVENT WHERE _id = 1", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertArrayEquals(new float[] {2, 3}, FloatArrayConverter.toFloatArray(cursor.getBlob(0)), 0);
+                assertArrayEquals(new float[] {4, 6}, FloatArrayConverter.toFloatArray(cursor.getBlob(1)), 0);
+                assertEquals(2, cursor.getInt(2));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            openHelper.close();
+        }
+    }
+}
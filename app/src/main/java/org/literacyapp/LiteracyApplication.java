@@ -8,8 +8,12 @@ import android.preference.PreferenceManager;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
 
+import org.literacyapp.authentication.recognition.IncrementalMeanTrainer;
+import org.literacyapp.authentication.recognition.StudentEmbeddingIndex;
+import org.literacyapp.authentication.recognition.TensorFlowModelHolder;
 import org.literacyapp.dao.CustomDaoMaster;
 import org.literacyapp.contentprovider.dao.DaoSession;
+import org.literacyapp.util.HttpClientHelper;
 import org.literacyapp.util.VersionHelper;
 
 public class LiteracyApplication extends Application {
@@ -23,6 +27,12 @@ public class LiteracyApplication extends Application {
 
     private DaoSession daoSession;
 
+    private StudentEmbeddingIndex studentEmbeddingIndex;
+
+    private IncrementalMeanTrainer incrementalMeanTrainer;
+
+    private TensorFlowModelHolder tensorFlowModelHolder;
+
     private TextToSpeech tts;
 
     @Override
@@ -54,6 +64,9 @@ public class LiteracyApplication extends Application {
                 Log.i(getClass().getName(), "TextToSpeech status: " + status);
             }
         });
+
+        // Initialize the response cache of the shared HTTP client
+        HttpClientHelper.init(getApplicationContext());
     }
 
     public DaoSession getDaoSession() {
@@ -69,6 +82,59 @@ public class LiteracyApplication extends Application {
         return daoSession;
     }
 
+    /**
+     * Returns the process-wide index of the meanFeatureVectors used for face recognition.
+     * It is loaded from the database on first use.
+     */
+    public synchronized StudentEmbeddingIndex getStudentEmbeddingIndex() {
+        if (studentEmbeddingIndex == null) {
+            studentEmbeddingIndex = new StudentEmbeddingIndex(getDaoSession().getStudentImageCollectionEventDao());
+        }
+
+        return studentEmbeddingIndex;
+    }
+
+    /**
+     * Returns the process-wide running sums of the featureVectors per Student.
+     */
+    public synchronized IncrementalMeanTrainer getIncrementalMeanTrainer() {
+        if (incrementalMeanTrainer == null) {
+            incrementalMeanTrainer = new IncrementalMeanTrainer(getDaoSession().getStudentImageCollectionEventDao());
+        }
+
+        return incrementalMeanTrainer;
+    }
+
+    /**
+     * Returns the process-wide holder of the TensorFlow model used for feature extraction.
+     * The model itself is loaded on the first acquire.
+     */
+    public synchronized TensorFlowModelHolder getTensorFlowModelHolder() {
+        if (tensorFlowModelHolder == null) {
+            tensorFlowModelHolder = new TensorFlowModelHolder(getApplicationContext());
+        }
+
+        return tensorFlowModelHolder;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Log.i(getClass().getName(), "onTrimMemory: " + level);
+        super.onTrimMemory(level);
+
+        // Keep the model loaded if only the UI has been hidden, since the next authentication is likely to follow soon
+        if ((level >= TRIM_MEMORY_RUNNING_LOW) && (level != TRIM_MEMORY_UI_HIDDEN)) {
+            TensorFlowModelHolder currentTensorFlowModelHolder;
+            synchronized (this) {
+                currentTensorFlowModelHolder = tensorFlowModelHolder;
+            }
+            // Outside of the application lock, so the synchronized getters aren't blocked
+            if (currentTensorFlowModelHolder != null) {
+                currentTensorFlowModelHolder.releaseIfUnused();
+            }
+        }
+    }
+
     public TextToSpeech getTts() {
         return tts;
     }
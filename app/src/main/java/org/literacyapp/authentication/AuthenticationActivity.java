@@ -14,17 +14,21 @@ import org.literacyapp.LiteracyApplication;
 import org.literacyapp.R;
 import org.literacyapp.authentication.animaloverlay.AnimalOverlay;
 import org.literacyapp.authentication.animaloverlay.AnimalOverlayHelper;
+import org.literacyapp.authentication.detection.BrightnessController;
+import org.literacyapp.authentication.detection.DownscaledFaceDetector;
+import org.literacyapp.authentication.detection.FaceDetectionResult;
+import org.literacyapp.authentication.detection.FaceTracker;
 import org.literacyapp.authentication.helper.AuthenticationHelper;
 import org.literacyapp.authentication.helper.AuthenticationInstructionHelper;
 import org.literacyapp.authentication.helper.DetectionHelper;
+import org.literacyapp.authentication.recognition.RecognitionResult;
 import org.literacyapp.authentication.thread.AuthenticationThread;
-import org.literacyapp.authentication.thread.RecognitionThread;
-import org.literacyapp.authentication.thread.TrainingThread;
+import org.literacyapp.authentication.thread.FaceDetectionWorker;
+import org.literacyapp.authentication.thread.RecognitionWorker;
 import org.literacyapp.contentprovider.dao.AuthenticationEventDao;
 import org.literacyapp.contentprovider.dao.DaoSession;
 import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
 import org.literacyapp.contentprovider.model.Student;
-import org.literacyapp.util.EnvironmentSettings;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.JavaCameraView;
 import org.opencv.android.OpenCVLoader;
@@ -33,11 +37,10 @@ import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import ch.zhaw.facerecognitionlibrary.Helpers.MatOperation;
 import ch.zhaw.facerecognitionlibrary.PreProcessor.PreProcessorFactory;
-import ch.zhaw.facerecognitionlibrary.Recognition.TensorFlow;
 import pl.droidsonroids.gif.GifImageView;
 
 public class AuthenticationActivity extends AppCompatActivity implements CameraBridgeViewBase.CvCameraViewListener2 {
@@ -46,7 +49,10 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
     public static final String AUTHENTICATION_ANIMATION_ALREADY_PLAYED_IDENTIFIER = "AuthenticationAnimationAlreadyPlayed";
     public static final String ANIMAL_OVERLAY_IDENTIFIER = "AnimalOverlayName";
     private static final int NUMBER_OF_MAXIMUM_TRIES = 3;
-    private TensorFlow tensorFlow;
+    // Results of older frames are not shown anymore, e.g. if the detection is lagging behind
+    private static final long MAX_FACE_DETECTION_RESULT_AGE = 1000;
+    // While a face is tracked, the full detection only runs on every n-th frame to refresh the tracked face and the face image
+    private static final int FULL_DETECTION_INTERVAL_FRAMES = 10;
     private PreProcessorFactory ppF;
     private JavaCameraView preview;
     private AnimalOverlayHelper animalOverlayHelper;
@@ -58,10 +64,15 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
     private MediaPlayer mediaPlayerAnimalSound;
     private long startTimeFallback;
     private long startTimeAuthenticationAnimation;
-    private Thread tensorFlowLoadingThread;
-    private RecognitionThread recognitionThread;
+    private RecognitionWorker recognitionWorker;
+    private Future<RecognitionResult> recognitionFuture;
+    private FaceDetectionWorker faceDetectionWorker;
+    private long lastRecognizedSequenceNumber;
+    private FaceTracker faceTracker;
+    private BrightnessController brightnessController;
+    private long lastTrackedSequenceNumber;
+    private int framesSinceFullDetection;
     private GifImageView authenticationAnimation;
-    private boolean recognitionThreadStarted;
     private boolean activityStopped;
     private AuthenticationEventDao authenticationEventDao;
     private int screenBrightnessMode;
@@ -110,24 +121,18 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
         preview.setVisibility(SurfaceView.VISIBLE);
         preview.setCvCameraViewListener(this);
 
-        final TrainingThread trainingThread = new TrainingThread(getApplicationContext());
-
-        tensorFlowLoadingThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                tensorFlow = trainingThread.getInitializedTensorFlow();
-            }
-        });
+        animalOverlayHelper = new AnimalOverlayHelper(getApplicationContext());
 
-        recognitionThreadStarted = false;
+        faceTracker = new FaceTracker();
 
-        animalOverlayHelper = new AnimalOverlayHelper(getApplicationContext());
+        brightnessController = new BrightnessController(this, preview);
 
         activityStopped = false;
     }
 
     @Override
     public void onCameraViewStarted(int width, int height) {
+        brightnessController.onCameraViewStarted();
 
     }
 
@@ -146,32 +151,36 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
 //            DetectionHelper.setIncreasedScreenBrightness(getApplicationContext(), imgRgba);
 //        }
 
+        // Brighten dark images with the exposure compensation and the window brightness, the system settings stay untouched
+        brightnessController.onCameraFrame(inputFrame.gray());
+
         long currentTime = new Date().getTime();
 
-        if ((!tensorFlowLoadingThread.isAlive()) && ((startTimeAuthenticationAnimation + AUTHENTICATION_ANIMATION_TIME) < currentTime)){
+        if ((recognitionWorker != null) && recognitionWorker.isReady() && ((startTimeAuthenticationAnimation + AUTHENTICATION_ANIMATION_TIME) < currentTime)){
             prepareForAuthentication();
 
-            if (!recognitionThread.isAlive() && recognitionThreadStarted) {
-                List<Student> students = recognitionThread.getRecognizedStudent();
-                Student student = new Student();
-                if (students.size() == 1){
-                    student = students.get(0);
-                }
+            if ((recognitionFuture != null) && recognitionFuture.isDone()) {
+                // The most similar Student is only accepted if it is above the threshold and clearly ahead of the second most similar Student
+                Student student = getIdentifiedStudent(recognitionFuture);
                 numberOfTries++;
                 Log.i(getClass().getName(), "Number of authentication/recognition tries: " + numberOfTries);
-                if ((student != null) && (students.size() == 1)) {
+                if (student != null) {
                     AuthenticationHelper.updateCurrentStudent(student, getApplicationContext(), false);
                     finish();
                 } else if (numberOfTries >= NUMBER_OF_MAXIMUM_TRIES) {
                     startStudentImageCollectionActivity(true);
                 }
-                recognitionThreadStarted = false;
+                recognitionFuture = null;
             }
 
-            Mat imgCopy = new Mat();
-
-            // Store original image for face recognition
-            imgRgba.copyTo(imgCopy);
+            // Hand over the original image for face detection and recognition, the detection runs asynchronously
+            // Between the full detections the face is only tracked, the full detection is run again if the face has been lost
+            framesSinceFullDetection++;
+            if (!faceTracker.isTracking() || (framesSinceFullDetection >= FULL_DETECTION_INTERVAL_FRAMES)){
+                if (faceDetectionWorker.offerFrame(imgRgba, inputFrame.gray(), currentTime)){
+                    framesSinceFullDetection = 0;
+                }
+            }
 
             // Mirror front camera image
             Core.flip(imgRgba,imgRgba,1);
@@ -180,30 +189,35 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
             boolean isFaceInsideFrame = false;
             boolean faceDetected = false;
 
-            List<Mat> images = ppF.getCroppedImage(imgCopy);
-            if (images != null && images.size() == 1){
-                Mat img = images.get(0);
-                if (img != null){
-                    Rect[] faces = ppF.getFacesForRecognition();
-                    if (faces != null && faces.length == 1){
-                        faces = MatOperation.rotateFaces(imgRgba, faces, ppF.getAngleForRecognition());
-                        face = faces[0];
-                        faceDetected = true;
-                        // Reset startTimeFallback for fallback timeout, because at least one face has been detected
-                        startTimeFallback = currentTime;
-                        isFaceInsideFrame = DetectionHelper.isFaceInsideFrame(animalOverlay, imgRgba, face);
-
-                        if (isFaceInsideFrame){
-                            if (!recognitionThread.isAlive() && !recognitionThreadStarted){
-                                if (!activityStopped){
-                                    mediaPlayerAnimalSound.start();
-
-                                    recognitionThread = new RecognitionThread(tensorFlow, studentImageCollectionEventDao);
-                                    recognitionThread.setImg(img);
-                                    recognitionThread.start();
-                                    recognitionThreadStarted = true;
-                                }
-                            }
+            FaceDetectionResult faceDetectionResult = faceDetectionWorker.getLatestResult();
+            boolean isFaceDetectionResultRecent = (faceDetectionResult != null) && faceDetectionResult.isFaceDetected() && ((currentTime - faceDetectionResult.getFrameTime()) < MAX_FACE_DETECTION_RESULT_AGE);
+            if ((faceDetectionResult != null) && (faceDetectionResult.getSequenceNumber() > lastTrackedSequenceNumber)){
+                // A new full detection restarts the tracking
+                lastTrackedSequenceNumber = faceDetectionResult.getSequenceNumber();
+                if (isFaceDetectionResultRecent){
+                    faceTracker.reset(imgRgba, faceDetectionResult.getFace());
+                } else {
+                    faceTracker.stop();
+                }
+            } else if (faceTracker.isTracking()){
+                faceTracker.track(imgRgba);
+            }
+
+            if (faceTracker.isTracking()){
+                face = faceTracker.getTrackedFace();
+                faceDetected = true;
+                // Reset startTimeFallback for fallback timeout, because at least one face has been detected
+                startTimeFallback = currentTime;
+                isFaceInsideFrame = DetectionHelper.isFaceInsideFrame(animalOverlay, imgRgba, face);
+
+                // Every detected face image is used for one recognition at most
+                if (isFaceInsideFrame && isFaceDetectionResultRecent && (faceDetectionResult.getSequenceNumber() > lastRecognizedSequenceNumber)){
+                    if (recognitionFuture == null){
+                        if (!activityStopped){
+                            mediaPlayerAnimalSound.start();
+
+                            recognitionFuture = recognitionWorker.submit(faceDetectionResult.getFaceImage(), null);
+                            lastRecognizedSequenceNumber = faceDetectionResult.getSequenceNumber();
                         }
                     }
                 }
@@ -220,8 +234,6 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
                 DetectionHelper.startFallbackActivity(getApplicationContext(), getClass().getName());
                 finish();
             }
-
-            EnvironmentSettings.freeMemory();
         }
 
         return imgRgba;
@@ -232,6 +244,15 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
     {
         super.onResume();
         ppF = new PreProcessorFactory(getApplicationContext());
+        if (faceDetectionWorker != null){
+            faceDetectionWorker.shutdown();
+        }
+        faceDetectionWorker = new FaceDetectionWorker(ppF, new DownscaledFaceDetector(getApplicationContext(), ppF));
+        faceDetectionWorker.start();
+        lastRecognizedSequenceNumber = 0;
+        lastTrackedSequenceNumber = 0;
+        framesSinceFullDetection = 0;
+        faceTracker.stop();
         numberOfTries = 0;
         animalOverlay = animalOverlayHelper.getAnimalOverlay("");
         if (animalOverlay != null) {
@@ -241,7 +262,10 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
         mediaPlayerTabletPlacement = AuthenticationInstructionHelper.getMediaPlayerTabletPlacement(getApplicationContext());
         mediaPlayerTabletPlacement.start();
         mediaPlayerTabletPlacementOverlay = AuthenticationInstructionHelper.getMediaPlayerTabletPlacementOverlay(getApplicationContext());
-        tensorFlowLoadingThread.start();
+        if ((recognitionWorker == null) || recognitionWorker.isShutdown()){
+            recognitionFuture = null;
+            recognitionWorker = new RecognitionWorker(getApplicationContext());
+        }
         startTimeFallback = new Date().getTime();
         startTimeAuthenticationAnimation = new Date().getTime();
     }
@@ -262,11 +286,26 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
                 }
             });
 
-            recognitionThread = new RecognitionThread(tensorFlow, studentImageCollectionEventDao);
             startTimeFallback = new Date().getTime();
         }
     }
 
+    /**
+     * Returns the identified Student of a finished recognition or null if the recognition failed
+     * @param recognitionFuture
+     * @return
+     */
+    private Student getIdentifiedStudent(Future<RecognitionResult> recognitionFuture){
+        try {
+            return recognitionFuture.get().getIdentifiedStudent();
+        } catch (InterruptedException e) {
+            Log.e(getClass().getName(), null, e);
+        } catch (ExecutionException e) {
+            Log.e(getClass().getName(), null, e);
+        }
+        return null;
+    }
+
     private synchronized void startStudentImageCollectionActivity(boolean authenticationAnimationAlreadyPlayed){
         Intent studentImageCollectionIntent = new Intent(getApplicationContext(), StudentImageCollectionActivity.class);
         studentImageCollectionIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
@@ -305,6 +344,12 @@ public class AuthenticationActivity extends AppCompatActivity implements CameraB
         mediaPlayerTabletPlacementOverlay.release();
         mediaPlayerAnimalSound.stop();
         mediaPlayerAnimalSound.release();
+        if (recognitionWorker != null){
+            recognitionWorker.shutdown();
+        }
+        faceDetectionWorker.shutdown();
+        faceTracker.release();
+        brightnessController.reset();
         //Usage of this flag was inactivated in AuthenticationActivity and StudentImageCollectionActivity on 20170129
         /*if (isDeviceRooted){
             DetectionHelper.setDefaultScreenBrightnessAndMode(getApplicationContext(), screenBrightnessMode, screenBrightness, displayTemperatureNight);
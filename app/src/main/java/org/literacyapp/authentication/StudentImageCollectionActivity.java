@@ -3,28 +3,26 @@ package org.literacyapp.authentication;
 import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
 import android.view.SurfaceView;
 import android.view.View;
 import android.widget.ImageView;
 
-import org.literacyapp.LiteracyApplication;
 import org.literacyapp.R;
 import org.literacyapp.authentication.animaloverlay.AnimalOverlay;
 import org.literacyapp.authentication.animaloverlay.AnimalOverlayHelper;
+import org.literacyapp.authentication.detection.BrightnessController;
+import org.literacyapp.authentication.detection.DownscaledFaceDetector;
+import org.literacyapp.authentication.detection.FaceQualityScorer;
+import org.literacyapp.authentication.detection.FaceSampleSelector;
+import org.literacyapp.authentication.detection.FaceTracker;
+import org.literacyapp.authentication.detection.MatPool;
+import org.literacyapp.authentication.helper.AuthenticationHelper;
 import org.literacyapp.authentication.helper.AuthenticationInstructionHelper;
 import org.literacyapp.authentication.helper.DetectionHelper;
 import org.literacyapp.authentication.thread.AuthenticationThread;
-import org.literacyapp.contentprovider.dao.DaoSession;
-import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
-import org.literacyapp.contentprovider.dao.StudentImageDao;
+import org.literacyapp.authentication.thread.StudentImageWriter;
 import org.literacyapp.contentprovider.model.Device;
-import org.literacyapp.contentprovider.model.StudentImage;
-import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
-import org.literacyapp.receiver.BootReceiver;
 import org.literacyapp.util.DeviceInfoHelper;
-import org.literacyapp.util.EnvironmentSettings;
-import org.literacyapp.util.StudentHelper;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.JavaCameraView;
 import org.opencv.android.OpenCVLoader;
@@ -32,14 +30,9 @@ import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
-import ch.zhaw.facerecognitionlibrary.Helpers.FileHelper;
-import ch.zhaw.facerecognitionlibrary.Helpers.MatName;
 import ch.zhaw.facerecognitionlibrary.Helpers.MatOperation;
 import ch.zhaw.facerecognitionlibrary.PreProcessor.PreProcessorFactory;
 import pl.droidsonroids.gif.GifImageView;
@@ -52,14 +45,21 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
 
     private JavaCameraView preview;
     private PreProcessorFactory ppF;
+    private DownscaledFaceDetector downscaledFaceDetector;
     private long lastTime;
     private long startTimeFallback;
     private long startTimeAuthenticationAnimation;
-    private StudentImageDao studentImageDao;
-    private StudentImageCollectionEventDao studentImageCollectionEventDao;
     private Device device;
-    private LiteracyApplication literacyApplication;
-    private List<Mat> studentImages;
+    private StudentImageWriter studentImageWriter;
+    private boolean studentImagesCommitted;
+    // Names of the written images
+    private FaceSampleSelector<String> faceSampleSelector;
+    private FaceQualityScorer faceQualityScorer;
+    private MatPool matPool;
+    private FaceTracker faceTracker;
+    private BrightnessController brightnessController;
+    private boolean trackedFaceInsideFrame;
+    private int framesSinceFullDetection;
     private AnimalOverlayHelper animalOverlayHelper;
     private AnimalOverlay animalOverlay;
     private MediaPlayer mediaPlayerTabletPlacement;
@@ -77,6 +77,14 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
     // Image collection parameters
     private static final long TIMER_DIFF = 200;
     private static final int NUMBER_OF_IMAGES = 20;
+    // Only the best and most diverse of the collected images are stored
+    private static final int NUMBER_OF_SELECTED_IMAGES = AuthenticationHelper.NUMBER_OF_SELECTED_IMAGES;
+    // Extract the featureVectors while the images are collected, so the Student can be recognized after the next training without reading the images again
+    private static final boolean EXTRACT_FEATURES_DURING_COLLECTION = true;
+    // Store the images of one collection in a single StudentImageContainer instead of one PNG file per image
+    private static final boolean PACK_STUDENT_IMAGES = true;
+    // While the tracked face is outside of the frame, no image is collected and the full detection only runs on every n-th frame
+    private static final int FULL_DETECTION_INTERVAL_FRAMES = 10;
     private int imagesProcessed;
 
     static {
@@ -117,18 +125,20 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
         // Reset imageProcessed counter
         imagesProcessed = 0;
 
-        // Initialize DB Session
-        literacyApplication = (LiteracyApplication) getApplicationContext();
-        DaoSession daoSession = literacyApplication.getDaoSession();
-        studentImageCollectionEventDao = literacyApplication.getDaoSession().getStudentImageCollectionEventDao();
+        device = DeviceInfoHelper.getDevice(getApplicationContext());
 
-        // Create required DB Objects
-        studentImageCollectionEventDao = daoSession.getStudentImageCollectionEventDao();
-        studentImageDao = daoSession.getStudentImageDao();
+        // Every accepted image is stored right away in the background
+        studentImageWriter = new StudentImageWriter(getApplicationContext(), device, EXTRACT_FEATURES_DURING_COLLECTION, PACK_STUDENT_IMAGES);
+        studentImagesCommitted = false;
 
-        device = DeviceInfoHelper.getDevice(getApplicationContext());
+        faceSampleSelector = new FaceSampleSelector<>(NUMBER_OF_SELECTED_IMAGES);
+        faceQualityScorer = new FaceQualityScorer();
+
+        matPool = new MatPool();
 
-        studentImages = new ArrayList<>();
+        faceTracker = new FaceTracker();
+
+        brightnessController = new BrightnessController(this, preview);
 
         animalOverlayHelper = new AnimalOverlayHelper(getApplicationContext());
 
@@ -139,6 +149,7 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
 
     @Override
     public void onCameraViewStarted(int width, int height) {
+        brightnessController.onCameraViewStarted();
 
     }
 
@@ -156,15 +167,22 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
 //            DetectionHelper.setIncreasedScreenBrightness(getApplicationContext(), imgRgba);
 //        }
 
+        // Brighten dark images with the exposure compensation and the window brightness, the system settings stay untouched
+        brightnessController.onCameraFrame(inputFrame.gray());
+
         long currentTime = new Date().getTime();
 
         if (authenticationAnimationAlreadyPlayed || ((startTimeAuthenticationAnimation + AuthenticationActivity.AUTHENTICATION_ANIMATION_TIME) < currentTime)){
             prepareForAuthentication();
 
-            Mat imgCopy = new Mat();
-
-            // Store original image for face recognition
-            imgRgba.copyTo(imgCopy);
+            // The full detection is only needed if an image can be collected or if the face is not tracked
+            framesSinceFullDetection++;
+            boolean isFullDetectionRequired = !faceTracker.isTracking() || trackedFaceInsideFrame || (framesSinceFullDetection >= FULL_DETECTION_INTERVAL_FRAMES);
+            Mat imgCopy = null;
+            if(((lastTime + TIMER_DIFF) < currentTime) && isFullDetectionRequired){
+                // Store original image for face recognition, only if the detection is due
+                imgCopy = matPool.acquireCopy(imgRgba);
+            }
 
             // Mirror front camera image
             Core.flip(imgRgba,imgRgba,1);
@@ -173,30 +191,43 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
             boolean isFaceInsideFrame = false;
             boolean faceDetected = false;
 
-            if((lastTime + TIMER_DIFF) < currentTime){
+            if(imgCopy != null){
                 lastTime = currentTime;
-                List<Mat> images = ppF.getCroppedImage(imgCopy);
+                framesSinceFullDetection = 0;
+                faceTracker.stop();
+                // The face is searched on the downscaled luma plane, which hasn't been mirrored, and cropped from the original image
+                List<Mat> images = downscaledFaceDetector.getCroppedImage(imgCopy, inputFrame.gray());
+                matPool.release(imgCopy);
                 if((images != null) && (images.size() == 1)){
                     Mat img = images.get(0);
                     if(img != null) {
-                        Rect[] faces = ppF.getFacesForRecognition();
+                        Rect[] faces = downscaledFaceDetector.getFacesForRecognition();
                         if ((faces != null) && (faces.length == 1)) {
                             faces = MatOperation.rotateFaces(imgRgba, faces, ppF.getAngleForRecognition());
                             face = faces[0];
                             faceDetected = true;
+                            faceTracker.reset(imgRgba, face);
                             // Reset startTimeFallback for fallback timeout, because at least one face has been detected
                             startTimeFallback = currentTime;
                             isFaceInsideFrame = DetectionHelper.isFaceInsideFrame(animalOverlay, imgRgba, face);
 
                             if (isFaceInsideFrame){
-                                if (!activityStopped){
+                                if (!activityStopped && !studentImagesCommitted){
                                     mediaPlayerAnimalSound.start();
 
-                                    studentImages.add(img);
+                                    double quality = faceQualityScorer.getQuality(img);
+                                    float[] poseDescriptor = faceQualityScorer.getPoseDescriptor(img);
+                                    // The image is released by the StudentImageWriter after it has been stored
+                                    String imageName = studentImageWriter.write(img, quality);
+                                    String droppedImageName = faceSampleSelector.offer(imageName, quality, poseDescriptor);
+                                    if (droppedImageName != null){
+                                        studentImageWriter.discard(droppedImageName);
+                                    }
 
                                     // Stop after NUMBER_OF_IMAGES (settings option)
                                     if(imagesProcessed == NUMBER_OF_IMAGES){
-                                        storeStudentImages();
+                                        studentImageWriter.commit(faceSampleSelector.getSelectedSamples());
+                                        studentImagesCommitted = true;
                                         finish();
                                     }
 
@@ -206,7 +237,14 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
                         }
                     }
                 }
+            } else if (faceTracker.isTracking() && faceTracker.track(imgRgba)){
+                // Between the full detections the arrow overlay follows the tracked face
+                face = faceTracker.getTrackedFace();
+                faceDetected = true;
+                startTimeFallback = currentTime;
+                isFaceInsideFrame = DetectionHelper.isFaceInsideFrame(animalOverlay, imgRgba, face);
             }
+            trackedFaceInsideFrame = isFaceInsideFrame;
 
             if (DetectionHelper.shouldFallbackActivityBeStarted(startTimeFallback, currentTime)){
                 // Prevent from second execution of fallback activity because of threading
@@ -219,8 +257,6 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
                 DetectionHelper.drawArrowFromFaceToFrame(animalOverlay, imgRgba, face);
                 AuthenticationInstructionHelper.playTabletPlacementOverlay(mediaPlayerTabletPlacement, mediaPlayerTabletPlacementOverlay, mediaPlayerAnimalSound);
             }
-
-            EnvironmentSettings.freeMemory();
         }
 
         return imgRgba;
@@ -231,6 +267,7 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
     {
         super.onResume();
         ppF = new PreProcessorFactory(getApplicationContext());
+        downscaledFaceDetector = new DownscaledFaceDetector(getApplicationContext(), ppF);
         animalOverlay = animalOverlayHelper.getAnimalOverlay(animalOverlayName);
         if (animalOverlay != null){
             mediaPlayerAnimalSound = MediaPlayer.create(this, getResources().getIdentifier(animalOverlay.getSoundFile(), AuthenticationInstructionHelper.RESOURCES_RAW_FOLDER, getPackageName()));
@@ -267,40 +304,6 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
         }
     }
 
-    /**
-     * Stores all the buffered StudentImages to the file system and database
-     */
-    private synchronized void storeStudentImages(){
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                StudentImageCollectionEvent studentImageCollectionEvent = new StudentImageCollectionEvent();
-                studentImageCollectionEvent.setTime(Calendar.getInstance());
-                studentImageCollectionEvent.setDevice(device);
-                Long studentImageCollectionEventId = studentImageCollectionEventDao.insert(studentImageCollectionEvent);
-                for(int i=0; i<studentImages.size(); i++){
-                    MatName matName = new MatName(Integer.toString(i), studentImages.get(i));
-                    FileHelper fileHelper = new FileHelper();
-                    String wholeFolderPath = StudentHelper.getStudentImageDirectory() + "/" + device.getDeviceId() + "/" + Long.toString(studentImageCollectionEventId);
-                    new File(wholeFolderPath).mkdirs();
-                    fileHelper.saveMatToImage(matName, wholeFolderPath + "/");
-
-                    String imageUrl = wholeFolderPath + "/" + Integer.toString(i) + ".png";
-                    StudentImage studentImage = new StudentImage();
-                    studentImage.setTimeCollected(Calendar.getInstance());
-                    studentImage.setImageFileUrl(imageUrl);
-                    studentImage.setStudentImageCollectionEvent(studentImageCollectionEvent);
-                    studentImageDao.insert(studentImage);
-                }
-                Log.i(getClass().getName(), "storeStudentImages has finished successfully.");
-
-                // Initiate background job for face recognition training
-                BootReceiver.scheduleFaceRecognitionTranining(getApplicationContext());
-
-            }
-        }).start();
-    }
-
     @Override
     protected void onStop() {
         super.onStop();
@@ -313,6 +316,15 @@ public class StudentImageCollectionActivity extends AppCompatActivity implements
         mediaPlayerTabletPlacementOverlay.release();
         mediaPlayerAnimalSound.stop();
         mediaPlayerAnimalSound.release();
+        matPool.clear();
+        faceTracker.release();
+        brightnessController.reset();
+        downscaledFaceDetector.release();
+        faceQualityScorer.release();
+        if (!studentImagesCommitted){
+            // The collection has been interrupted, the images written so far are deleted
+            studentImageWriter.abort();
+        }
 
         //Usage of this flag was inactivated in AuthenticationActivity and StudentImageCollectionActivity on 20170129
         /*if (isDeviceRooted){
@@ -4,13 +4,16 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
+import android.graphics.YuvImage;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.StreamConfigurationMap;
@@ -44,9 +47,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Collect images of student where eye gaze is directed towards the camera of the device as much
@@ -54,6 +61,14 @@ import java.util.List;
  */
 public class StudentImageCollectionActivity extends AppCompatActivity {
 
+    // Keep one capture session with a YUV ImageReader instead of creating a new session with a JPEG ImageReader for every picture
+    private static final boolean BURST_MODE = true;
+    private static final int MAX_CAPTURE_WIDTH = 1280;
+    private static final int MAX_CAPTURE_HEIGHT = 960;
+    private static final int MAX_IMAGES = 2;
+    private static final int JPEG_QUALITY = 95;
+    private static final int NUMBER_OF_ENCODER_THREADS = 2;
+
     private RelativeLayout takePictureButton;
     private TextureView textureView;
     private ImageView imageViewAnimal;
@@ -66,6 +81,10 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
     private ImageReader imageReader;
     private Handler mBackgroundHandler;
     private HandlerThread mBackgroundThread;
+    private Surface previewSurface;
+    // Files of the pictures which have been requested in burst mode, in the order of the captures
+    private final Queue<File> pendingFiles = new ConcurrentLinkedQueue<>();
+    private ExecutorService encoderExecutor;
 
     private int imageCounter;
 
@@ -94,6 +113,8 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
             imageViewAnimal.setImageDrawable(getDrawable(R.drawable.cow));
         }
 
+        encoderExecutor = Executors.newFixedThreadPool(NUMBER_OF_ENCODER_THREADS);
+
         takePictureButton = (RelativeLayout) findViewById(R.id.btn_takepicture);
         takePictureButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -210,6 +231,48 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
             MediaPlayerHelper.play(getApplicationContext(), R.raw.cow);
         }
 
+        boolean pictureTaken;
+        if (BURST_MODE) {
+            pictureTaken = takeBurstPicture();
+        } else {
+            pictureTaken = takeJpegPicture();
+        }
+        if (!pictureTaken) {
+            // Not counted, the next tap takes the picture again
+            Log.w(getClass().getName(), "takePicture: The picture could not be taken");
+            return;
+        }
+
+        imageCounter++;
+        if (imageCounter < 5) {
+            new Handler().postDelayed(new Runnable() {
+                @Override
+                public void run() {
+//                    if (imageCounter == 1) {
+//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_4_more);
+//                        Toast.makeText(getApplicationContext(), "Take 4 more pictures", Toast.LENGTH_LONG).show();
+//                    } else if (imageCounter == 2) {
+//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_3_more);
+//                        Toast.makeText(getApplicationContext(), "Take 3 more pictures", Toast.LENGTH_LONG).show();
+//                    } else if (imageCounter == 3) {
+//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_2_more);
+//                        Toast.makeText(getApplicationContext(), "Take 2 more pictures", Toast.LENGTH_LONG).show();
+//                    } else if (imageCounter == 4) {
+//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_1_more);
+//                        Toast.makeText(getApplicationContext(), "Take 1 more picture", Toast.LENGTH_LONG).show();
+//                    }
+                }
+            }, 2000);
+        } else {
+            finish();
+        }
+    }
+
+    /**
+     * Capture a full size JPEG with a new capture session, the preview is restarted afterwards
+     * @return true if the capture session has been requested
+     */
+    private boolean takeJpegPicture() {
         CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
         try {
             CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraDevice.getId());
@@ -230,15 +293,7 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
             final CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
             captureBuilder.addTarget(reader.getSurface());
             captureBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-            String collectionPath = Environment.getExternalStorageDirectory() + "/.literacyapp/face_recognition/dataset_collection/";
-            File collectionDir = new File(collectionPath);
-            if (!collectionDir.exists()) {
-                collectionDir.mkdirs();
-            }
-            String dateFormatted = (String) DateFormat.format("yyyy-MM-dd-HHmmss", Calendar.getInstance());
-            String fileName = DeviceInfoHelper.getDeviceId(getApplicationContext()) + "_" + dateFormatted + ".jpg";
-            final File file = new File(collectionDir, fileName);
-            Log.i(getClass().getName(), "file: " + file);
+            final File file = getCollectionFile();
 
             ImageReader.OnImageAvailableListener readerListener = new ImageReader.OnImageAvailableListener() {
                 @Override
@@ -300,35 +355,159 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
                     Log.w(getClass().getName(), "onConfigureFailed");
                 }
             }, mBackgroundHandler);
+            return true;
         } catch (CameraAccessException e) {
             Log.e(getClass().getName(), null, e);
+            return false;
         }
+    }
 
-        imageCounter++;
-        if (imageCounter < 5) {
-            new Handler().postDelayed(new Runnable() {
+    /**
+     * Capture a YUV image with the existing capture session, the image is encoded to JPEG on the encoder threads
+     * @return true if the capture has been sent, false if the capture session hasn't been configured yet
+     */
+    private boolean takeBurstPicture() {
+        if ((cameraCaptureSessions == null) || (imageReader == null)) {
+            return false;
+        }
+        try {
+            CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            captureBuilder.addTarget(imageReader.getSurface());
+            // Keep the preview running during the capture
+            captureBuilder.addTarget(previewSurface);
+            captureBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            pendingFiles.add(getCollectionFile());
+            cameraCaptureSessions.capture(captureBuilder.build(), new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure) {
+                    Log.w(getClass().getName(), "onCaptureFailed");
+                    super.onCaptureFailed(session, request, failure);
+                    // No image will be delivered for this capture
+                    pendingFiles.poll();
+                }
+            }, mBackgroundHandler);
+            return true;
+        } catch (CameraAccessException e) {
+            pendingFiles.poll();
+            Log.e(getClass().getName(), null, e);
+            return false;
+        }
+    }
+
+    private File getCollectionFile() {
+        String collectionPath = Environment.getExternalStorageDirectory() + "/.literacyapp/face_recognition/dataset_collection/";
+        File collectionDir = new File(collectionPath);
+        if (!collectionDir.exists()) {
+            collectionDir.mkdirs();
+        }
+        Calendar calendar = Calendar.getInstance();
+        // Including the milliseconds, several burst pictures are taken within the same second
+        String dateFormatted = DateFormat.format("yyyy-MM-dd-HHmmss", calendar) + String.format(Locale.US, "%03d", calendar.get(Calendar.MILLISECOND));
+        String fileName = DeviceInfoHelper.getDeviceId(getApplicationContext()) + "_" + dateFormatted + ".jpg";
+        File file = new File(collectionDir, fileName);
+        Log.i(getClass().getName(), "file: " + file);
+        return file;
+    }
+
+    private final ImageReader.OnImageAvailableListener yuvImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Log.i(getClass().getName(), "onImageAvailable");
+
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            final File file = pendingFiles.poll();
+            final int width = image.getWidth();
+            final int height = image.getHeight();
+            final byte[] nv21;
+            try {
+                // Copy the planes, so the image can be given back to the camera right away
+                nv21 = toNv21(image);
+            } finally {
+                image.close();
+            }
+            if (file == null) {
+                return;
+            }
+            encoderExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-//                    if (imageCounter == 1) {
-//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_4_more);
-//                        Toast.makeText(getApplicationContext(), "Take 4 more pictures", Toast.LENGTH_LONG).show();
-//                    } else if (imageCounter == 2) {
-//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_3_more);
-//                        Toast.makeText(getApplicationContext(), "Take 3 more pictures", Toast.LENGTH_LONG).show();
-//                    } else if (imageCounter == 3) {
-//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_2_more);
-//                        Toast.makeText(getApplicationContext(), "Take 2 more pictures", Toast.LENGTH_LONG).show();
-//                    } else if (imageCounter == 4) {
-//                        MediaPlayerHelper.play(getApplicationContext(), R.raw.face_instruction_1_more);
-//                        Toast.makeText(getApplicationContext(), "Take 1 more picture", Toast.LENGTH_LONG).show();
-//                    }
+                    OutputStream output = null;
+                    try {
+                        output = new FileOutputStream(file);
+                        new YuvImage(nv21, ImageFormat.NV21, width, height, null).compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, output);
+                        Log.i(getClass().getName(), "Image has been stored: " + file);
+                    } catch (FileNotFoundException e) {
+                        Log.e(getClass().getName(), null, e);
+                    } finally {
+                        if (output != null) {
+                            try {
+                                output.close();
+                            } catch (IOException e) {
+                                Log.e(getClass().getName(), null, e);
+                            }
+                        }
+                    }
                 }
-            }, 2000);
-        } else {
-            finish();
+            });
+        }
+    };
+
+    /**
+     * Copy a YUV_420_888 image into the NV21 layout, respecting the row and pixel strides of the planes
+     * @param image
+     * @return
+     */
+    private static byte[] toNv21(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Image.Plane[] planes = image.getPlanes();
+        copyPlane(planes[0], width, height, nv21, 0, 1);
+        // NV21 stores the chroma interleaved as V, U
+        copyPlane(planes[2], width / 2, height / 2, nv21, width * height, 2);
+        copyPlane(planes[1], width / 2, height / 2, nv21, width * height + 1, 2);
+        return nv21;
+    }
+
+    private static void copyPlane(Image.Plane plane, int width, int height, byte[] output, int offset, int outputPixelStride) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        int rowLength = (width - 1) * pixelStride + 1;
+        byte[] row = new byte[rowLength];
+        for (int y = 0; y < height; y++) {
+            buffer.position(y * rowStride);
+            buffer.get(row, 0, rowLength);
+            for (int x = 0; x < width; x++) {
+                output[offset + (y * width + x) * outputPixelStride] = row[x * pixelStride];
+            }
         }
     }
 
+    /**
+     * Returns the largest YUV size within the bounds or the smallest size if none fits
+     * @param sizes
+     * @return
+     */
+    private static Size getCaptureSize(Size[] sizes) {
+        Size captureSize = null;
+        Size smallestSize = null;
+        for (Size size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if ((size.getWidth() <= MAX_CAPTURE_WIDTH) && (size.getHeight() <= MAX_CAPTURE_HEIGHT)
+                    && ((captureSize == null) || (area > (long) captureSize.getWidth() * captureSize.getHeight()))) {
+                captureSize = size;
+            }
+            if ((smallestSize == null) || (area < (long) smallestSize.getWidth() * smallestSize.getHeight())) {
+                smallestSize = size;
+            }
+        }
+        return (captureSize != null) ? captureSize : smallestSize;
+    }
+
     protected void createCameraPreview() {
         Log.i(getClass().getName(), "createCameraPreview");
 
@@ -337,9 +516,23 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
             assert texture != null;
             texture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
             Surface surface = new Surface(texture);
+            previewSurface = surface;
             captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             captureRequestBuilder.addTarget(surface);
-            cameraDevice.createCaptureSession(Arrays.asList(surface), new CameraCaptureSession.StateCallback() {
+            List<Surface> outputSurfaces = new ArrayList<Surface>(2);
+            outputSurfaces.add(surface);
+            if (BURST_MODE) {
+                if (imageReader == null) {
+                    CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+                    StreamConfigurationMap map = manager.getCameraCharacteristics(cameraDevice.getId()).get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                    Size captureSize = getCaptureSize(map.getOutputSizes(ImageFormat.YUV_420_888));
+                    Log.i(getClass().getName(), "captureSize: " + captureSize);
+                    imageReader = ImageReader.newInstance(captureSize.getWidth(), captureSize.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+                    imageReader.setOnImageAvailableListener(yuvImageListener, mBackgroundHandler);
+                }
+                outputSurfaces.add(imageReader.getSurface());
+            }
+            cameraDevice.createCaptureSession(outputSurfaces, new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
                     Log.i(getClass().getName(), "onConfigured");
@@ -399,6 +592,8 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
             cameraDevice.close();
             cameraDevice = null;
         }
+        cameraCaptureSessions = null;
+        pendingFiles.clear();
         if (imageReader != null) {
             imageReader.close();
             imageReader = null;
@@ -424,4 +619,12 @@ public class StudentImageCollectionActivity extends AppCompatActivity {
         stopBackgroundThread();
         super.onPause();
     }
+
+    @Override
+    protected void onDestroy() {
+        Log.i(getClass().getName(), "onDestroy");
+        // Pictures which are still being encoded are stored nevertheless
+        encoderExecutor.shutdown();
+        super.onDestroy();
+    }
 }
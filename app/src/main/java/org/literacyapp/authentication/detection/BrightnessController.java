@@ -0,0 +1,125 @@
+package org.literacyapp.authentication.detection;
+
+import android.app.Activity;
+import android.util.Log;
+import android.view.WindowManager;
+
+import org.opencv.android.JavaCameraView;
+import org.opencv.core.Mat;
+
+/**
+ * Brightens dark camera images without root permissions.
+ * If the estimated brightness is too low, the exposure compensation of the camera is increased step by step,
+ * once it can't be increased anymore the window brightness is set to the maximum, so the screen lights the face.
+ * Bright images undo the changes in the reverse order. The changes only apply while the activity is shown.
+ * The frames are delivered on the camera thread while reset is called on the main thread, so all state is guarded by
+ * the BrightnessController and frames are ignored after reset until the camera has been started again.
+ */
+
+public class BrightnessController {
+
+    private static final double MIN_IMAGE_BRIGHTNESS = 1.0;
+    private static final double MAX_IMAGE_BRIGHTNESS = 3.0;
+    // Number of estimates which are skipped after a change, so the camera can adapt
+    private static final int SETTLE_UPDATES = 2;
+
+    private final Activity activity;
+    private final JavaCameraView cameraView;
+    private final BrightnessEstimator brightnessEstimator = new BrightnessEstimator();
+    private int exposureCompensationSteps;
+    private boolean windowBrightnessIncreased;
+    private int updatesToSettle;
+    private boolean active;
+
+    public BrightnessController(Activity activity, JavaCameraView cameraView){
+        this.activity = activity;
+        this.cameraView = cameraView;
+    }
+
+    /**
+     * Has to be called for every camera frame
+     * @param gray - Luma plane of the camera frame
+     */
+    public synchronized void onCameraFrame(Mat gray){
+        if (!active){
+            return;
+        }
+        if (!brightnessEstimator.update(gray)){
+            return;
+        }
+        if (updatesToSettle > 0){
+            updatesToSettle--;
+            return;
+        }
+        double brightness = brightnessEstimator.getBrightness();
+        if (brightness < MIN_IMAGE_BRIGHTNESS){
+            if (cameraView.changeExposureCompensation(1)){
+                exposureCompensationSteps++;
+                updatesToSettle = SETTLE_UPDATES;
+                Log.i(getClass().getName(), "onCameraFrame: Exposure compensation has been increased: brightness: " + brightness + " exposureCompensationSteps: " + exposureCompensationSteps);
+            } else if (!windowBrightnessIncreased){
+                windowBrightnessIncreased = true;
+                updateWindowBrightness();
+                updatesToSettle = SETTLE_UPDATES;
+                Log.i(getClass().getName(), "onCameraFrame: Window brightness has been increased: brightness: " + brightness);
+            }
+        } else if (brightness > MAX_IMAGE_BRIGHTNESS){
+            if (windowBrightnessIncreased){
+                windowBrightnessIncreased = false;
+                updateWindowBrightness();
+                updatesToSettle = SETTLE_UPDATES;
+                Log.i(getClass().getName(), "onCameraFrame: Window brightness has been reset: brightness: " + brightness);
+            } else if ((exposureCompensationSteps > 0) && cameraView.changeExposureCompensation(-1)){
+                exposureCompensationSteps--;
+                updatesToSettle = SETTLE_UPDATES;
+                Log.i(getClass().getName(), "onCameraFrame: Exposure compensation has been decreased: brightness: " + brightness + " exposureCompensationSteps: " + exposureCompensationSteps);
+            }
+        }
+    }
+
+    /**
+     * Has to be called when the camera has been (re)started, a new camera starts without exposure compensation
+     */
+    public synchronized void onCameraViewStarted(){
+        active = true;
+        exposureCompensationSteps = 0;
+        updatesToSettle = 0;
+        brightnessEstimator.reset();
+    }
+
+    /**
+     * Undo all changes, afterwards the frames are ignored until onCameraViewStarted
+     */
+    public synchronized void reset(){
+        active = false;
+        if (exposureCompensationSteps != 0){
+            cameraView.changeExposureCompensation(-exposureCompensationSteps);
+            exposureCompensationSteps = 0;
+        }
+        if (windowBrightnessIncreased){
+            windowBrightnessIncreased = false;
+            updateWindowBrightness();
+        }
+        updatesToSettle = 0;
+        brightnessEstimator.reset();
+    }
+
+    /**
+     * Apply windowBrightnessIncreased on the UI thread. The current value is read when the update runs, so an update
+     * posted by a frame before reset can't increase the window brightness again afterwards.
+     */
+    private void updateWindowBrightness(){
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                float screenBrightness;
+                synchronized (BrightnessController.this){
+                    screenBrightness = windowBrightnessIncreased ? WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_FULL : WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE;
+                }
+                WindowManager.LayoutParams layoutParams = activity.getWindow().getAttributes();
+                layoutParams.screenBrightness = screenBrightness;
+                activity.getWindow().setAttributes(layoutParams);
+            }
+        });
+    }
+}
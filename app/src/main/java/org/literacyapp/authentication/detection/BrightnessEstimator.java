@@ -0,0 +1,99 @@
+package org.literacyapp.authentication.detection;
+
+import org.opencv.core.Mat;
+
+/**
+ * Estimates the brightness of the camera image from a subsampled luma histogram, which is only updated every few frames.
+ * Only every SAMPLE_STEP-th pixel of every SAMPLE_STEP-th row is read, so the estimation is cheap enough to run for every camera frame.
+ * The estimates are smoothed over the updates, so a single dark or bright frame doesn't cause a reaction.
+ * Not thread-safe, it is meant to be used on the camera thread.
+ */
+
+public class BrightnessEstimator {
+
+    private static final int UPDATE_INTERVAL_FRAMES = 5;
+    private static final int SAMPLE_STEP = 8;
+    // Four luma values per bin
+    private static final int HISTOGRAM_BINS = 64;
+    private static final int HISTOGRAM_BIN_SHIFT = 2;
+    // Weight of the newest estimate
+    private static final double SMOOTHING = 0.4;
+    // Mean luma which corresponds to a brightness of 1, same scale as DetectionHelper.getImageBrightness
+    private static final double LUMA_PER_BRIGHTNESS = 64;
+
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+    private int numberOfSamples;
+    private byte[] row;
+    private int framesSinceUpdate = UPDATE_INTERVAL_FRAMES;
+    private double brightness = -1;
+
+    /**
+     * Update the estimate with the luma plane of a camera frame if the update interval has passed
+     * @param gray - Luma plane with one byte per pixel
+     * @return true if the estimate has been updated
+     */
+    public boolean update(Mat gray){
+        if (++framesSinceUpdate < UPDATE_INTERVAL_FRAMES){
+            return false;
+        }
+        framesSinceUpdate = 0;
+        int cols = gray.cols();
+        if ((row == null) || (row.length != cols)){
+            row = new byte[cols];
+        }
+        clearHistogram();
+        for (int y = SAMPLE_STEP / 2; y < gray.rows(); y += SAMPLE_STEP){
+            gray.get(y, 0, row);
+            addRow(row, cols);
+        }
+        return finishUpdate();
+    }
+
+    void clearHistogram(){
+        for (int i = 0; i < HISTOGRAM_BINS; i++){
+            histogram[i] = 0;
+        }
+        numberOfSamples = 0;
+    }
+
+    void addRow(byte[] luma, int length){
+        for (int x = SAMPLE_STEP / 2; x < length; x += SAMPLE_STEP){
+            histogram[(luma[x] & 0xFF) >> HISTOGRAM_BIN_SHIFT]++;
+            numberOfSamples++;
+        }
+    }
+
+    boolean finishUpdate(){
+        if (numberOfSamples == 0){
+            return false;
+        }
+        double sum = 0;
+        for (int i = 0; i < HISTOGRAM_BINS; i++){
+            // Center of the bin
+            sum += histogram[i] * ((i << HISTOGRAM_BIN_SHIFT) + ((1 << HISTOGRAM_BIN_SHIFT) - 1) / 2.0);
+        }
+        double currentBrightness = sum / numberOfSamples / LUMA_PER_BRIGHTNESS;
+        brightness = hasEstimate() ? (SMOOTHING * currentBrightness + (1 - SMOOTHING) * brightness) : currentBrightness;
+        return true;
+    }
+
+    public boolean hasEstimate(){
+        return brightness >= 0;
+    }
+
+    /**
+     * Returns the smoothed brightness in the scale of DetectionHelper.getImageBrightness, a mid-gray image has a brightness of 2
+     * @return
+     */
+    public double getBrightness(){
+        return brightness;
+    }
+
+    /**
+     * Forget the previous estimates, e.g. after the camera has been restarted
+     */
+    public void reset(){
+        brightness = -1;
+        framesSinceUpdate = UPDATE_INTERVAL_FRAMES;
+    }
+}
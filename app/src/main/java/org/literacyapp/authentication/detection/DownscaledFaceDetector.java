@@ -0,0 +1,110 @@
+package org.literacyapp.authentication.detection;
+
+import android.content.Context;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+import ch.zhaw.facerecognitionlibrary.Helpers.FaceDetection;
+import ch.zhaw.facerecognitionlibrary.PreProcessor.PreProcessorFactory;
+
+/**
+ * Runs the face detection on a downscaled level of the luma (Y) plane of the camera frame instead of the full resolution RGBA frame.
+ * The detected face is mapped back to the full resolution and only a region around it is handed over to the PreProcessorFactory,
+ * so the face image is still cropped and preprocessed from the original frame.
+ * Not thread-safe, every thread needs its own instance.
+ */
+
+public class DownscaledFaceDetector {
+
+    // Each level halves the width and height, one level leaves a quarter of the pixels
+    private static final int PYRAMID_LEVELS = 1;
+    // Part of the face size which is added around the detected face, so the PreProcessorFactory can detect it again
+    private static final double CROP_MARGIN = 0.3;
+
+    private final PreProcessorFactory ppF;
+    private final FaceDetection faceDetection;
+    private final Mat pyramidLevel = new Mat();
+    private final Mat faceRegion = new Mat();
+    private Rect[] facesForRecognition;
+
+    public DownscaledFaceDetector(Context context, PreProcessorFactory ppF){
+        this.ppF = ppF;
+        faceDetection = new FaceDetection(context);
+    }
+
+    /**
+     * Same as PreProcessorFactory.getCroppedImage, but the face is searched on the downscaled luma plane
+     * @param rgba - Full resolution frame, it may be modified
+     * @param gray - Luma plane of the same frame
+     * @return the preprocessed face images or null if no face has been detected
+     */
+    public List<Mat> getCroppedImage(Mat rgba, Mat gray){
+        facesForRecognition = null;
+
+        Imgproc.pyrDown(gray, pyramidLevel);
+        for (int level = 1; level < PYRAMID_LEVELS; level++){
+            Imgproc.pyrDown(pyramidLevel, pyramidLevel);
+        }
+        int rows = pyramidLevel.rows();
+        int cols = pyramidLevel.cols();
+        Rect[] faces = faceDetection.getFaces(pyramidLevel);
+
+        if ((pyramidLevel.rows() != rows) || (pyramidLevel.cols() != cols)){
+            // The face has only been found in a rotated image, let the PreProcessorFactory handle the rotation on the full frame
+            List<Mat> images = ppF.getCroppedImage(rgba);
+            facesForRecognition = ppF.getFacesForRecognition();
+            return images;
+        }
+        if ((faces == null) || (faces.length != 1)){
+            return null;
+        }
+
+        int scale = 1 << PYRAMID_LEVELS;
+        Rect face = faces[0];
+        int marginX = (int) (face.width * scale * CROP_MARGIN);
+        int marginY = (int) (face.height * scale * CROP_MARGIN);
+        int x = Math.max(0, face.x * scale - marginX);
+        int y = Math.max(0, face.y * scale - marginY);
+        int width = Math.min(rgba.cols(), (face.x + face.width) * scale + marginX) - x;
+        int height = Math.min(rgba.rows(), (face.y + face.height) * scale + marginY) - y;
+        if ((width <= 0) || (height <= 0)){
+            return null;
+        }
+        Rect cropRegion = new Rect(x, y, width, height);
+
+        // The region is copied, because the PreProcessorFactory may rotate its input
+        Mat region = rgba.submat(cropRegion);
+        region.copyTo(faceRegion);
+        region.release();
+        List<Mat> images = ppF.getCroppedImage(faceRegion);
+
+        Rect[] regionFaces = ppF.getFacesForRecognition();
+        if (regionFaces != null){
+            facesForRecognition = new Rect[regionFaces.length];
+            for (int i = 0; i < regionFaces.length; i++){
+                facesForRecognition[i] = new Rect(regionFaces[i].x + cropRegion.x, regionFaces[i].y + cropRegion.y, regionFaces[i].width, regionFaces[i].height);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Returns the faces of the last getCroppedImage call in the coordinates of the full resolution frame
+     * @return
+     */
+    public Rect[] getFacesForRecognition(){
+        return facesForRecognition;
+    }
+
+    /**
+     * Free the native memory of the internal buffers
+     */
+    public void release(){
+        pyramidLevel.release();
+        faceRegion.release();
+    }
+}
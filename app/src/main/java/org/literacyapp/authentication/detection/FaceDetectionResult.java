@@ -0,0 +1,63 @@
+package org.literacyapp.authentication.detection;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Result of the face detection of a single camera frame
+ */
+
+public class FaceDetectionResult {
+
+    private final long sequenceNumber;
+    private final long frameTime;
+    private final Mat faceImage;
+    private final Rect face;
+
+    public FaceDetectionResult(long sequenceNumber, long frameTime, Mat faceImage, Rect face){
+        this.sequenceNumber = sequenceNumber;
+        this.frameTime = frameTime;
+        this.faceImage = faceImage;
+        this.face = face;
+    }
+
+    /**
+     * Increases with every detected frame, can be used to process every result only once
+     * @return
+     */
+    public long getSequenceNumber(){
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the time when the frame has been captured
+     * @return
+     */
+    public long getFrameTime(){
+        return frameTime;
+    }
+
+    /**
+     * Returns true if exactly one face has been detected
+     * @return
+     */
+    public boolean isFaceDetected(){
+        return faceImage != null;
+    }
+
+    /**
+     * Returns the preprocessed face image, which can be used for the recognition
+     * @return
+     */
+    public Mat getFaceImage(){
+        return faceImage;
+    }
+
+    /**
+     * Returns the face rectangle, already rotated like the preview frame
+     * @return
+     */
+    public Rect getFace(){
+        return face;
+    }
+}
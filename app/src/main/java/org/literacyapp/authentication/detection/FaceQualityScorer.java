@@ -0,0 +1,102 @@
+package org.literacyapp.authentication.detection;
+
+import org.literacyapp.authentication.helper.DetectionHelper;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Scores face images for the FaceSampleSelector.
+ * The quality combines the sharpness (variance of the Laplacian) and the brightness, the pose descriptor is a small normalized thumbnail.
+ * Not thread-safe, the buffers are reused for every image.
+ */
+
+public class FaceQualityScorer {
+
+    // Variance of the Laplacian at which the sharpness score is 0.5
+    private static final double SHARPNESS_REFERENCE = 100;
+    // Brightness of a mid-gray image as returned by DetectionHelper.getImageBrightness
+    private static final double BRIGHTNESS_TARGET = 2;
+    private static final int POSE_DESCRIPTOR_SIZE = 16;
+
+    private final Mat gray = new Mat();
+    private final Mat laplacian = new Mat();
+    private final Mat thumbnail = new Mat();
+    private final Mat thumbnailFloat = new Mat();
+    private final MatOfDouble mean = new MatOfDouble();
+    private final MatOfDouble standardDeviation = new MatOfDouble();
+
+    /**
+     * Returns the quality of the face image between 0 and 1
+     * @param img
+     * @return
+     */
+    public double getQuality(Mat img){
+        toGray(img);
+        Imgproc.Laplacian(gray, laplacian, CvType.CV_64F);
+        Core.meanStdDev(laplacian, mean, standardDeviation);
+        double sharpness = Math.pow(standardDeviation.get(0, 0)[0], 2);
+        double sharpnessScore = sharpness / (sharpness + SHARPNESS_REFERENCE);
+
+        double brightness = DetectionHelper.getImageBrightness(img);
+        double brightnessScore = Math.max(0, 1 - Math.abs(brightness - BRIGHTNESS_TARGET) / BRIGHTNESS_TARGET);
+
+        return sharpnessScore * brightnessScore;
+    }
+
+    /**
+     * Returns a zero-mean descriptor with unit length, similar poses have a dot product close to 1
+     * @param img
+     * @return
+     */
+    public float[] getPoseDescriptor(Mat img){
+        toGray(img);
+        Imgproc.resize(gray, thumbnail, new Size(POSE_DESCRIPTOR_SIZE, POSE_DESCRIPTOR_SIZE), 0, 0, Imgproc.INTER_AREA);
+        thumbnail.convertTo(thumbnailFloat, CvType.CV_32F);
+        float[] poseDescriptor = new float[POSE_DESCRIPTOR_SIZE * POSE_DESCRIPTOR_SIZE];
+        thumbnailFloat.get(0, 0, poseDescriptor);
+
+        float sum = 0;
+        for (float value : poseDescriptor){
+            sum += value;
+        }
+        float average = sum / poseDescriptor.length;
+        double squaredNorm = 0;
+        for (int i = 0; i < poseDescriptor.length; i++){
+            poseDescriptor[i] -= average;
+            squaredNorm += poseDescriptor[i] * poseDescriptor[i];
+        }
+        if (squaredNorm > 0){
+            float norm = (float) Math.sqrt(squaredNorm);
+            for (int i = 0; i < poseDescriptor.length; i++){
+                poseDescriptor[i] /= norm;
+            }
+        }
+        return poseDescriptor;
+    }
+
+    /**
+     * Free the native memory of the internal buffers
+     */
+    public void release(){
+        gray.release();
+        laplacian.release();
+        thumbnail.release();
+        thumbnailFloat.release();
+        mean.release();
+        standardDeviation.release();
+    }
+
+    private void toGray(Mat img){
+        if (img.channels() == 4){
+            Imgproc.cvtColor(img, gray, Imgproc.COLOR_RGBA2GRAY);
+        } else if (img.channels() == 3){
+            Imgproc.cvtColor(img, gray, Imgproc.COLOR_RGB2GRAY);
+        } else {
+            img.copyTo(gray);
+        }
+    }
+}
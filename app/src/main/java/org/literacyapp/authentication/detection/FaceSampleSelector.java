@@ -0,0 +1,89 @@
+package org.literacyapp.authentication.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer, which keeps the best and most diverse face samples of a stream.
+ * Every sample has a quality and a normalized pose descriptor. Once the buffer is full, the sample with the lowest utility is dropped,
+ * where the utility is the quality reduced by the similarity to the most similar other sample, so near-duplicates are dropped first.
+ * @param <T> - Type of the samples, e.g. Mat
+ */
+
+public class FaceSampleSelector<T> {
+
+    private final int capacity;
+    private final List<T> samples = new ArrayList<>();
+    private final List<Double> qualities = new ArrayList<>();
+    private final List<float[]> poseDescriptors = new ArrayList<>();
+
+    /**
+     * @param capacity - Maximum number of samples which are kept
+     */
+    public FaceSampleSelector(int capacity){
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a sample to the buffer
+     * @param sample
+     * @param quality - Quality between 0 and 1
+     * @param poseDescriptor - Descriptor with unit length, the dot product of two descriptors is their similarity
+     * @return the sample which has been dropped, this can be the new sample itself, or null if the buffer wasn't full
+     */
+    public T offer(T sample, double quality, float[] poseDescriptor){
+        if (!poseDescriptors.isEmpty() && (poseDescriptors.get(0).length != poseDescriptor.length)){
+            throw new IllegalArgumentException("Dimension " + poseDescriptor.length + " doesn't match the dimension of the other samples " + poseDescriptors.get(0).length);
+        }
+        samples.add(sample);
+        qualities.add(quality);
+        poseDescriptors.add(poseDescriptor);
+        if (samples.size() <= capacity){
+            return null;
+        }
+
+        int worstSample = 0;
+        double worstUtility = Double.MAX_VALUE;
+        for (int i = 0; i < samples.size(); i++){
+            double utility = getUtility(i);
+            // On equal utility the older sample is kept
+            if (utility <= worstUtility){
+                worstUtility = utility;
+                worstSample = i;
+            }
+        }
+        qualities.remove(worstSample);
+        poseDescriptors.remove(worstSample);
+        return samples.remove(worstSample);
+    }
+
+    /**
+     * Returns the kept samples in the order they have been offered
+     * @return
+     */
+    public List<T> getSelectedSamples(){
+        return new ArrayList<>(samples);
+    }
+
+    public int size(){
+        return samples.size();
+    }
+
+    private double getUtility(int sample){
+        float maxSimilarity = 0;
+        for (int i = 0; i < samples.size(); i++){
+            if (i != sample){
+                maxSimilarity = Math.max(maxSimilarity, dot(poseDescriptors.get(sample), poseDescriptors.get(i)));
+            }
+        }
+        return qualities.get(sample) * (1 - maxSimilarity);
+    }
+
+    private static float dot(float[] a, float[] b){
+        float dot = 0;
+        for (int i = 0; i < a.length; i++){
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
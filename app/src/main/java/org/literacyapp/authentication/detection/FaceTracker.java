@@ -0,0 +1,124 @@
+package org.literacyapp.authentication.detection;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Lightweight tracker, which follows a detected face between two full face detections.
+ * The face region of the detection frame is used as template and searched again in the following frames,
+ * but only in a small region around the last position and on a downscaled grayscale image.
+ * If the template can't be found anymore, the face is reported as lost and a full detection should be run.
+ * Must only be used from one thread (the camera thread).
+ */
+
+public class FaceTracker {
+
+    private static final int DOWNSCALE_FACTOR = 4;
+    // Part of the face size which is searched around the last position in every direction
+    private static final double SEARCH_MARGIN = 0.5;
+    private static final double MIN_MATCH_SCORE = 0.6;
+    private static final int MIN_TEMPLATE_SIZE = 8;
+
+    private final Mat smallFrame = new Mat();
+    private final Mat grayFrame = new Mat();
+    private final Mat template = new Mat();
+    private final Mat matchResult = new Mat();
+    // Tracked face in the coordinates of the downscaled frame
+    private Rect smallFace;
+
+    /**
+     * Start tracking a face which has just been detected
+     * @param rgba - Current frame
+     * @param face - Detected face in the coordinates of the frame
+     */
+    public void reset(Mat rgba, Rect face){
+        toSmallGray(rgba);
+        Rect candidate = clip(new Rect(face.x / DOWNSCALE_FACTOR, face.y / DOWNSCALE_FACTOR, face.width / DOWNSCALE_FACTOR, face.height / DOWNSCALE_FACTOR));
+        if ((candidate.width < MIN_TEMPLATE_SIZE) || (candidate.height < MIN_TEMPLATE_SIZE)){
+            smallFace = null;
+            return;
+        }
+        Mat templateRegion = grayFrame.submat(candidate);
+        templateRegion.copyTo(template);
+        templateRegion.release();
+        smallFace = candidate;
+    }
+
+    /**
+     * Stop tracking, e.g. because the full detection didn't find a face
+     */
+    public void stop(){
+        smallFace = null;
+    }
+
+    public boolean isTracking(){
+        return smallFace != null;
+    }
+
+    /**
+     * Search the face in the region around its last position
+     * @param rgba - Current frame
+     * @return false if the face has been lost
+     */
+    public boolean track(Mat rgba){
+        if (smallFace == null){
+            return false;
+        }
+        toSmallGray(rgba);
+        int marginX = (int) (smallFace.width * SEARCH_MARGIN);
+        int marginY = (int) (smallFace.height * SEARCH_MARGIN);
+        Rect searchRegion = clip(new Rect(smallFace.x - marginX, smallFace.y - marginY, smallFace.width + 2 * marginX, smallFace.height + 2 * marginY));
+        if ((searchRegion.width < template.cols()) || (searchRegion.height < template.rows())){
+            smallFace = null;
+            return false;
+        }
+        Mat searchImage = grayFrame.submat(searchRegion);
+        Imgproc.matchTemplate(searchImage, template, matchResult, Imgproc.TM_CCOEFF_NORMED);
+        searchImage.release();
+        Core.MinMaxLocResult minMaxLocResult = Core.minMaxLoc(matchResult);
+        if (minMaxLocResult.maxVal < MIN_MATCH_SCORE){
+            smallFace = null;
+            return false;
+        }
+        smallFace = new Rect(searchRegion.x + (int) minMaxLocResult.maxLoc.x, searchRegion.y + (int) minMaxLocResult.maxLoc.y, template.cols(), template.rows());
+        return true;
+    }
+
+    /**
+     * Returns the tracked face in the coordinates of the frame or null if no face is tracked
+     * @return
+     */
+    public Rect getTrackedFace(){
+        if (smallFace == null){
+            return null;
+        }
+        return new Rect(smallFace.x * DOWNSCALE_FACTOR, smallFace.y * DOWNSCALE_FACTOR, smallFace.width * DOWNSCALE_FACTOR, smallFace.height * DOWNSCALE_FACTOR);
+    }
+
+    /**
+     * Free the native memory of the internal buffers
+     */
+    public void release(){
+        smallFace = null;
+        smallFrame.release();
+        grayFrame.release();
+        template.release();
+        matchResult.release();
+    }
+
+    private void toSmallGray(Mat rgba){
+        Imgproc.resize(rgba, smallFrame, new Size(rgba.cols() / DOWNSCALE_FACTOR, rgba.rows() / DOWNSCALE_FACTOR), 0, 0, Imgproc.INTER_NEAREST);
+        Imgproc.cvtColor(smallFrame, grayFrame, Imgproc.COLOR_RGBA2GRAY);
+    }
+
+    private Rect clip(Rect rect){
+        int x = Math.max(0, rect.x);
+        int y = Math.max(0, rect.y);
+        int width = Math.min(grayFrame.cols(), rect.x + rect.width) - x;
+        int height = Math.min(grayFrame.rows(), rect.y + rect.height) - y;
+        return new Rect(x, y, Math.max(0, width), Math.max(0, height));
+    }
+}
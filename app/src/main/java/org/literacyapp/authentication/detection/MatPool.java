@@ -0,0 +1,95 @@
+package org.literacyapp.authentication.detection;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of reusable Mat buffers, which are kept by size and type.
+ * Every acquired Mat has to be given back with release, afterwards it must not be used anymore.
+ * This avoids allocating native memory for every camera frame, which is only freed when the garbage collector finalizes the Mat.
+ */
+
+public class MatPool {
+
+    private static final int DEFAULT_MAX_BUFFERS_PER_KEY = 3;
+
+    private final int maxBuffersPerKey;
+    private final Map<Long, ArrayDeque<Mat>> freeBuffers = new HashMap<>();
+
+    public MatPool(){
+        this(DEFAULT_MAX_BUFFERS_PER_KEY);
+    }
+
+    /**
+     * @param maxBuffersPerKey - Maximum number of free buffers kept per size and type, further released buffers are freed immediately
+     */
+    public MatPool(int maxBuffersPerKey){
+        this.maxBuffersPerKey = maxBuffersPerKey;
+    }
+
+    /**
+     * Returns a Mat with the given size and type, its content is undefined
+     * @param rows
+     * @param cols
+     * @param type
+     * @return
+     */
+    public synchronized Mat acquire(int rows, int cols, int type){
+        ArrayDeque<Mat> buffers = freeBuffers.get(getKey(rows, cols, type));
+        if ((buffers != null) && !buffers.isEmpty()){
+            return buffers.pop();
+        }
+        return new Mat(rows, cols, type);
+    }
+
+    /**
+     * Returns a pooled copy of the source
+     * @param source
+     * @return
+     */
+    public Mat acquireCopy(Mat source){
+        Mat copy = acquire(source.rows(), source.cols(), source.type());
+        source.copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Give a Mat back to the pool
+     * @param mat
+     */
+    public synchronized void release(Mat mat){
+        if (mat == null){
+            return;
+        }
+        long key = getKey(mat.rows(), mat.cols(), mat.type());
+        ArrayDeque<Mat> buffers = freeBuffers.get(key);
+        if (buffers == null){
+            buffers = new ArrayDeque<>();
+            freeBuffers.put(key, buffers);
+        }
+        if (buffers.size() < maxBuffersPerKey){
+            buffers.push(mat);
+        } else {
+            mat.release();
+        }
+    }
+
+    /**
+     * Free the native memory of all buffers in the pool
+     */
+    public synchronized void clear(){
+        for (ArrayDeque<Mat> buffers : freeBuffers.values()){
+            for (Mat mat : buffers){
+                mat.release();
+            }
+        }
+        freeBuffers.clear();
+    }
+
+    private static long getKey(int rows, int cols, int type){
+        return ((long) rows << 40) | ((long) cols << 16) | type;
+    }
+}
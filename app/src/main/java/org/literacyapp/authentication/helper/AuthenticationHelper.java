@@ -23,6 +23,9 @@ import java.util.List;
 
 public class AuthenticationHelper {
 
+    // Number of StudentImages stored per StudentImageCollectionEvent, i.e. the best and most diverse of the collected images
+    public static final int NUMBER_OF_SELECTED_IMAGES = 10;
+
     private static final double[] countSteps = { 0, 5, 10, 15, 20, 25, 30, 35, 40, 45 };
     private static final double[] exponentialDelayStepsInMinutes = { 30, 60, 120, 240, 480, 960, 1920, 3840, 7680, 15360 };
 
@@ -16,8 +16,6 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import ch.zhaw.facerecognitionlibrary.Helpers.MatOperation;
 
@@ -76,28 +74,25 @@ public class DetectionHelper {
     }
 
     // http://answers.opencv.org/question/24260/how-to-determine-an-image-with-strong-or-weak-illumination-in-opencv/?answer=24342#post-id-24342
-    private static double getImageBrightness(Mat img){
-        Mat temp = new Mat();
-        List<Mat> color = new ArrayList<Mat>(3);
-        Mat lum = new Mat();
-        temp = img;
-
-        Core.split(temp, color);
-
-        if(color.size() > 0){
-            Core.multiply(color.get(0), new Scalar(0.299), color.get(0));
-            Core.multiply(color.get(1), new Scalar(0.587), color.get(1));
-            Core.multiply(color.get(2), new Scalar(0.114), color.get(2));
-
-            Core.add(color.get(0),color.get(1),lum);
-            Core.add(lum, color.get(2), lum);
-
-            Scalar sum = Core.sumElems(lum);
-
-            return sum.val[0]/((1<<8 - 1)*img.rows() * img.cols()) * 2;
+    public static double getImageBrightness(Mat img){
+        Mat lum;
+        if (img.channels() == 1){
+            // Grayscale images already contain the luminance
+            lum = img;
+        } else if ((img.channels() == 3) || (img.channels() == 4)){
+            // Weighted sum 0.299 R + 0.587 G + 0.114 B in a single pass instead of splitting the channels
+            lum = new Mat();
+            Imgproc.cvtColor(img, lum, (img.channels() == 4) ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
         } else {
             return 1;
         }
+
+        Scalar sum = Core.sumElems(lum);
+        if (lum != img){
+            lum.release();
+        }
+
+        return sum.val[0]/((1<<8 - 1)*img.rows() * img.cols()) * 2;
     }
 
     /**
@@ -0,0 +1,33 @@
+package org.literacyapp.authentication.helper;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Converts feature vectors between the float arrays stored in the database and OpenCV Mat objects
+ */
+
+public class FeatureVectorHelper {
+
+    /**
+     * Returns a single column CV_32FC1 Mat, which is the same layout as the one returned by TensorFlow.getFeatureVector
+     * @param featureVector
+     * @return
+     */
+    public static Mat toMat(float[] featureVector){
+        Mat mat = new Mat(featureVector.length, 1, CvType.CV_32FC1);
+        mat.put(0, 0, featureVector);
+        return mat;
+    }
+
+    /**
+     * Returns the values of a CV_32FC1 Mat (row or column vector) as float array
+     * @param mat
+     * @return
+     */
+    public static float[] toFloatArray(Mat mat){
+        float[] featureVector = new float[(int) mat.total()];
+        mat.get(0, 0, featureVector);
+        return featureVector;
+    }
+}
@@ -0,0 +1,287 @@
+package org.literacyapp.authentication.helper;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Packed file containing all face images of one StudentImageCollectionEvent.
+ * Layout: header, fixed-size raw 8-bit crops, index with the offset, collection time and quality of every image.
+ * Header: magic, version, number of images, rows, cols, channels, time of the StudentImageCollectionEvent, offset of the index.
+ * The file is read with a memory mapping, so single images can be accessed without reading the whole file.
+ * A StudentImage inside a container is referenced by an imageFileUrl of the form "path#index".
+ */
+
+public class StudentImageContainer {
+
+    public static final String FILE_EXTENSION = ".sic";
+    private static final String INDEX_SEPARATOR = "#";
+    private static final int MAGIC = 0x4C534943;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * 4 + 2 * 8;
+    private static final int INDEX_ENTRY_SIZE = 2 * 8 + 4;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int numberOfImages;
+    private final int rows;
+    private final int cols;
+    private final int channels;
+    private final long time;
+    private final long indexOffset;
+
+    private StudentImageContainer(File containerFile) throws IOException {
+        file = new RandomAccessFile(containerFile, "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)){
+                throw new IOException(containerFile.getAbsolutePath() + " is not a StudentImageContainer");
+            }
+            numberOfImages = buffer.getInt(8);
+            rows = buffer.getInt(12);
+            cols = buffer.getInt(16);
+            channels = buffer.getInt(20);
+            time = buffer.getLong(24);
+            indexOffset = buffer.getLong(32);
+            if (indexOffset + (long) numberOfImages * INDEX_ENTRY_SIZE > buffer.capacity()){
+                throw new IOException(containerFile.getAbsolutePath() + " is incomplete");
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing container for reading
+     * @param containerFile
+     * @return
+     * @throws IOException
+     */
+    public static StudentImageContainer open(File containerFile) throws IOException {
+        return new StudentImageContainer(containerFile);
+    }
+
+    public static boolean isContainerUrl(String imageFileUrl){
+        return imageFileUrl.contains(INDEX_SEPARATOR);
+    }
+
+    public static String getImageFileUrl(File containerFile, int index){
+        return containerFile.getAbsolutePath() + INDEX_SEPARATOR + index;
+    }
+
+    public static String getContainerPath(String imageFileUrl){
+        return imageFileUrl.substring(0, imageFileUrl.lastIndexOf(INDEX_SEPARATOR));
+    }
+
+    public static int getIndex(String imageFileUrl){
+        return Integer.parseInt(imageFileUrl.substring(imageFileUrl.lastIndexOf(INDEX_SEPARATOR) + 1));
+    }
+
+    public int size(){
+        return numberOfImages;
+    }
+
+    /**
+     * Returns the time of the StudentImageCollectionEvent in milliseconds
+     * @return
+     */
+    public long getTime(){
+        return time;
+    }
+
+    public long getTimeCollected(int index){
+        return buffer.getLong(getIndexEntryOffset(index) + 8);
+    }
+
+    public float getQuality(int index){
+        return buffer.getFloat(getIndexEntryOffset(index) + 16);
+    }
+
+    /**
+     * Returns the image in the same format as it would be loaded by Imgcodecs.imread, i.e. with three channels
+     * @param index
+     * @return
+     */
+    public Mat getImage(int index){
+        byte[] pixels = new byte[rows * cols * channels];
+        ByteBuffer image = buffer.duplicate();
+        image.position((int) buffer.getLong(getIndexEntryOffset(index)));
+        image.get(pixels);
+        Mat img = new Mat(rows, cols, CvType.CV_8UC(channels));
+        img.put(0, 0, pixels);
+        if (channels == 1){
+            Mat colorImg = new Mat();
+            Imgproc.cvtColor(img, colorImg, Imgproc.COLOR_GRAY2BGR);
+            img.release();
+            return colorImg;
+        }
+        return img;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int getIndexEntryOffset(int index){
+        if ((index < 0) || (index >= numberOfImages)){
+            throw new IndexOutOfBoundsException("Index " + index + " of " + numberOfImages + " images");
+        }
+        return (int) (indexOffset + (long) index * INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * Appends images to a new container, the index and the header are written by finish.
+     * Every image is converted to the size and channels of the first image, images with an alpha channel are stored without it.
+     */
+    public static class Writer {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private int rows;
+        private int cols;
+        private int channels;
+        private int numberOfSlots;
+        private long[] timesCollected = new long[0];
+        private float[] qualities = new float[0];
+
+        public Writer(File containerFile) throws IOException {
+            file = new RandomAccessFile(containerFile, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Append an image
+         * @param img
+         * @param timeCollected
+         * @param quality
+         * @return the slot of the image, which is used for finish
+         * @throws IOException
+         */
+        public synchronized int append(Mat img, long timeCollected, float quality) throws IOException {
+            if (numberOfSlots == 0){
+                rows = img.rows();
+                cols = img.cols();
+                channels = (img.channels() == 1) ? 1 : 3;
+            }
+            Mat packedImg = toPackedFormat(img);
+            byte[] pixels = new byte[rows * cols * channels];
+            packedImg.get(0, 0, pixels);
+            if (packedImg != img){
+                packedImg.release();
+            }
+            channel.write(ByteBuffer.wrap(pixels), getSlotOffset(numberOfSlots));
+
+            if (numberOfSlots == timesCollected.length){
+                int capacity = Math.max(16, numberOfSlots * 2);
+                long[] newTimesCollected = new long[capacity];
+                float[] newQualities = new float[capacity];
+                System.arraycopy(timesCollected, 0, newTimesCollected, 0, numberOfSlots);
+                System.arraycopy(qualities, 0, newQualities, 0, numberOfSlots);
+                timesCollected = newTimesCollected;
+                qualities = newQualities;
+            }
+            timesCollected[numberOfSlots] = timeCollected;
+            qualities[numberOfSlots] = quality;
+            return numberOfSlots++;
+        }
+
+        /**
+         * Write the index of the kept images and the header and close the file.
+         * Slots which are not part of the index stay unused in the file.
+         * @param time - Time of the StudentImageCollectionEvent
+         * @param slots - Slots of the kept images, their position is the index of the image in the container
+         * @throws IOException
+         */
+        public synchronized void finish(long time, List<Integer> slots) throws IOException {
+            try {
+                long indexOffset = getSlotOffset(numberOfSlots);
+                ByteBuffer index = ByteBuffer.allocate(slots.size() * INDEX_ENTRY_SIZE);
+                for (int slot : slots){
+                    index.putLong(getSlotOffset(slot));
+                    index.putLong(timesCollected[slot]);
+                    index.putFloat(qualities[slot]);
+                }
+                index.flip();
+                channel.write(index, indexOffset);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(slots.size());
+                header.putInt(rows);
+                header.putInt(cols);
+                header.putInt(channels);
+                header.putLong(time);
+                header.putLong(indexOffset);
+                header.flip();
+                channel.write(header, 0);
+                channel.force(false);
+            } finally {
+                file.close();
+            }
+        }
+
+        /**
+         * Close the file without writing the index, e.g. if the collection has been interrupted
+         * @throws IOException
+         */
+        public synchronized void close() throws IOException {
+            file.close();
+        }
+
+        private long getSlotOffset(int slot){
+            return HEADER_SIZE + (long) slot * rows * cols * channels;
+        }
+
+        private Mat toPackedFormat(Mat img){
+            Mat packedImg = img;
+            if (packedImg.channels() != channels){
+                Mat convertedImg = new Mat();
+                if (channels == 1){
+                    Imgproc.cvtColor(packedImg, convertedImg, (packedImg.channels() == 4) ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+                } else if (packedImg.channels() == 4){
+                    Imgproc.cvtColor(packedImg, convertedImg, Imgproc.COLOR_RGBA2RGB);
+                } else {
+                    Imgproc.cvtColor(packedImg, convertedImg, Imgproc.COLOR_GRAY2RGB);
+                }
+                packedImg = convertedImg;
+            }
+            if ((packedImg.rows() != rows) || (packedImg.cols() != cols)){
+                Mat resizedImg = new Mat();
+                Imgproc.resize(packedImg, resizedImg, new Size(cols, rows));
+                if (packedImg != img){
+                    packedImg.release();
+                }
+                packedImg = resizedImg;
+            }
+            if (packedImg.depth() != CvType.CV_8U){
+                Mat convertedImg = new Mat();
+                packedImg.convertTo(convertedImg, CvType.CV_8U);
+                if (packedImg != img){
+                    packedImg.release();
+                }
+                packedImg = convertedImg;
+            }
+            if (!packedImg.isContinuous()){
+                Mat continuousImg = packedImg.clone();
+                if (packedImg != img){
+                    packedImg.release();
+                }
+                packedImg = continuousImg;
+            }
+            return packedImg;
+        }
+    }
+}
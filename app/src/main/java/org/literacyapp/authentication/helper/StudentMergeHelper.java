@@ -0,0 +1,97 @@
+package org.literacyapp.authentication.helper;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.greenrobot.greendao.database.Database;
+import org.literacyapp.LiteracyApplication;
+import org.literacyapp.authentication.recognition.IncrementalMeanTrainer;
+import org.literacyapp.authentication.recognition.StudentEmbeddingIndex;
+import org.literacyapp.contentprovider.dao.AuthenticationEventDao;
+import org.literacyapp.contentprovider.dao.DaoSession;
+import org.literacyapp.contentprovider.dao.JoinStudentsWithDevicesDao;
+import org.literacyapp.contentprovider.dao.StudentDao;
+import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
+import org.literacyapp.contentprovider.model.Student;
+
+import java.io.File;
+
+/**
+ * Merges two Students which have been found identical.
+ * The Student created first is kept, all rows referencing the other Student are moved to it using set-based UPDATEs in one transaction.
+ */
+
+public class StudentMergeHelper {
+
+    private static final String STUDENT_IMAGE_COLLECTION_EVENT_UPDATE = "UPDATE " + StudentImageCollectionEventDao.TABLENAME
+            + " SET " + StudentImageCollectionEventDao.Properties.StudentId.columnName + " = ?"
+            + " WHERE " + StudentImageCollectionEventDao.Properties.StudentId.columnName + " = ?";
+    private static final String AUTHENTICATION_EVENT_UPDATE = "UPDATE " + AuthenticationEventDao.TABLENAME
+            + " SET " + AuthenticationEventDao.Properties.StudentId.columnName + " = ?"
+            + " WHERE " + AuthenticationEventDao.Properties.StudentId.columnName + " = ?";
+    // Devices which are already joined with the surviving Student are skipped, their rows are deleted afterwards
+    private static final String JOIN_STUDENTS_WITH_DEVICES_UPDATE = "UPDATE " + JoinStudentsWithDevicesDao.TABLENAME
+            + " SET " + JoinStudentsWithDevicesDao.Properties.StudentId.columnName + " = ?"
+            + " WHERE " + JoinStudentsWithDevicesDao.Properties.StudentId.columnName + " = ?"
+            + " AND " + JoinStudentsWithDevicesDao.Properties.DeviceId.columnName + " NOT IN (SELECT " + JoinStudentsWithDevicesDao.Properties.DeviceId.columnName
+            + " FROM " + JoinStudentsWithDevicesDao.TABLENAME + " WHERE " + JoinStudentsWithDevicesDao.Properties.StudentId.columnName + " = ?)";
+    private static final String JOIN_STUDENTS_WITH_DEVICES_DELETE = "DELETE FROM " + JoinStudentsWithDevicesDao.TABLENAME
+            + " WHERE " + JoinStudentsWithDevicesDao.Properties.StudentId.columnName + " = ?";
+
+    private DaoSession daoSession;
+    private StudentEmbeddingIndex studentEmbeddingIndex;
+    private IncrementalMeanTrainer incrementalMeanTrainer;
+
+    public StudentMergeHelper(Context context) {
+        LiteracyApplication literacyApplication = (LiteracyApplication) context.getApplicationContext();
+        daoSession = literacyApplication.getDaoSession();
+        studentEmbeddingIndex = literacyApplication.getStudentEmbeddingIndex();
+        incrementalMeanTrainer = literacyApplication.getIncrementalMeanTrainer();
+    }
+
+    /**
+     * Merge two Students which have been found identical
+     * @param student1
+     * @param student2
+     * @return the Student which has been kept
+     */
+    public synchronized Student mergeStudents(Student student1, Student student2) {
+        final Student survivingStudent = (student1.getId() < student2.getId()) ? student1 : student2;
+        final Student duplicateStudent = (survivingStudent == student1) ? student2 : student1;
+        final long survivingStudentId = survivingStudent.getId();
+        final long duplicateStudentId = duplicateStudent.getId();
+        Log.i(getClass().getName(), "mergeStudents: The student " + duplicateStudent.getUniqueId() + " will be merged into " + survivingStudent.getUniqueId());
+
+        daoSession.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                Database db = daoSession.getDatabase();
+                db.execSQL(STUDENT_IMAGE_COLLECTION_EVENT_UPDATE, new Object[] {survivingStudentId, duplicateStudentId});
+                db.execSQL(AUTHENTICATION_EVENT_UPDATE, new Object[] {survivingStudentId, duplicateStudentId});
+                db.execSQL(JOIN_STUDENTS_WITH_DEVICES_UPDATE, new Object[] {survivingStudentId, duplicateStudentId, survivingStudentId});
+                db.execSQL(JOIN_STUDENTS_WITH_DEVICES_DELETE, new Object[] {duplicateStudentId});
+                daoSession.getStudentDao().deleteByKey(duplicateStudentId);
+            }
+        });
+
+        // Entities cached by greenDAO still reference the duplicate Student
+        daoSession.getStudentImageCollectionEventDao().detachAll();
+        daoSession.getAuthenticationEventDao().detachAll();
+        daoSession.getJoinStudentsWithDevicesDao().detachAll();
+        survivingStudent.resetDevices();
+
+        // The meanFeatureVectors of the StudentImageCollectionEvents don't change, only the in-memory caches have to follow the new studentId
+        studentEmbeddingIndex.reassignStudent(duplicateStudentId, survivingStudentId);
+        incrementalMeanTrainer.mergeStudents(duplicateStudentId, survivingStudentId);
+
+        if ((duplicateStudent.getAvatar() != null) && !duplicateStudent.getAvatar().equals(survivingStudent.getAvatar())) {
+            File avatarFile = new File(duplicateStudent.getAvatar());
+            if (avatarFile.exists() && avatarFile.delete()) {
+                Log.i(getClass().getName(), "Avatar " + avatarFile.getAbsolutePath() + " of the student " + duplicateStudent.getUniqueId() + " has been deleted");
+            }
+        }
+
+        Log.i(getClass().getName(), "mergeStudents: The student " + duplicateStudent.getUniqueId() + " has been merged into " + survivingStudent.getUniqueId());
+        return survivingStudent;
+    }
+}
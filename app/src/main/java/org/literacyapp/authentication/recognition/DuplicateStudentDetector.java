@@ -0,0 +1,148 @@
+package org.literacyapp.authentication.recognition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds Students which are probably the same person by comparing all meanFeatureVectors with each other.
+ * The upper triangle of the similarity matrix is split into square tiles of rows, so that the vectors of both
+ * tiles stay in the CPU cache while all of their pairs are compared. The tiles are processed in parallel on a fork-join pool.
+ */
+
+public class DuplicateStudentDetector {
+
+    // 16 rows of 4096 floats are 256 KB, so a pair of tiles fits into the L2 cache
+    private static final int DEFAULT_TILE_SIZE = 16;
+    // Number of tile pairs, which are processed sequentially by one task
+    private static final int TILE_PAIRS_PER_TASK = 8;
+
+    private final double similarityThreshold;
+    private final int tileSize;
+
+    public DuplicateStudentDetector(double similarityThreshold){
+        this(similarityThreshold, DEFAULT_TILE_SIZE);
+    }
+
+    DuplicateStudentDetector(double similarityThreshold, int tileSize){
+        this.similarityThreshold = similarityThreshold;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns every pair of different Students with an absolute cosine similarity above the threshold,
+     * sorted by descending similarity. If the Students have several similar StudentImageCollectionEvents, the highest similarity is used.
+     * @param snapshot
+     * @return
+     */
+    public List<StudentPair> findCandidatePairs(StudentEmbeddingIndex.Snapshot snapshot){
+        List<StudentPair> studentPairs = new ArrayList<>();
+        if (snapshot.size() < 2){
+            return studentPairs;
+        }
+
+        // Enumerate the tile pairs of the upper triangle including the diagonal
+        int numberOfTiles = (snapshot.size() + tileSize - 1) / tileSize;
+        int numberOfTilePairs = numberOfTiles * (numberOfTiles + 1) / 2;
+        int[] tileRows = new int[numberOfTilePairs];
+        int[] tileColumns = new int[numberOfTilePairs];
+        int tilePair = 0;
+        for (int tileRow = 0; tileRow < numberOfTiles; tileRow++){
+            for (int tileColumn = tileRow; tileColumn < numberOfTiles; tileColumn++){
+                tileRows[tilePair] = tileRow;
+                tileColumns[tilePair] = tileColumn;
+                tilePair++;
+            }
+        }
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            studentPairs = forkJoinPool.invoke(new TileTask(snapshot, tileRows, tileColumns, 0, numberOfTilePairs));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        return keepMostSimilarPairPerStudents(studentPairs);
+    }
+
+    private List<StudentPair> keepMostSimilarPairPerStudents(List<StudentPair> studentPairs){
+        Map<String, StudentPair> mostSimilarPairs = new HashMap<>();
+        for (StudentPair studentPair : studentPairs){
+            String key = studentPair.getStudentId1() + "_" + studentPair.getStudentId2();
+            StudentPair mostSimilarPair = mostSimilarPairs.get(key);
+            if ((mostSimilarPair == null) || (studentPair.getSimilarity() > mostSimilarPair.getSimilarity())){
+                mostSimilarPairs.put(key, studentPair);
+            }
+        }
+        List<StudentPair> result = new ArrayList<>(mostSimilarPairs.values());
+        Collections.sort(result, new Comparator<StudentPair>() {
+            @Override
+            public int compare(StudentPair studentPair1, StudentPair studentPair2) {
+                return Float.compare(studentPair2.getSimilarity(), studentPair1.getSimilarity());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Compares all rows of the tile pairs in the range [from, to), large ranges are split in halves
+     */
+    private class TileTask extends RecursiveTask<List<StudentPair>> {
+
+        private final StudentEmbeddingIndex.Snapshot snapshot;
+        private final int[] tileRows;
+        private final int[] tileColumns;
+        private final int from;
+        private final int to;
+
+        TileTask(StudentEmbeddingIndex.Snapshot snapshot, int[] tileRows, int[] tileColumns, int from, int to){
+            this.snapshot = snapshot;
+            this.tileRows = tileRows;
+            this.tileColumns = tileColumns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<StudentPair> compute() {
+            if (to - from <= TILE_PAIRS_PER_TASK){
+                List<StudentPair> studentPairs = new ArrayList<>();
+                for (int tilePair = from; tilePair < to; tilePair++){
+                    compareTiles(tileRows[tilePair], tileColumns[tilePair], studentPairs);
+                }
+                return studentPairs;
+            }
+            int middle = (from + to) >>> 1;
+            TileTask left = new TileTask(snapshot, tileRows, tileColumns, from, middle);
+            TileTask right = new TileTask(snapshot, tileRows, tileColumns, middle, to);
+            left.fork();
+            List<StudentPair> studentPairs = right.compute();
+            studentPairs.addAll(left.join());
+            return studentPairs;
+        }
+
+        private void compareTiles(int tileRow, int tileColumn, List<StudentPair> studentPairs){
+            int rowEnd = Math.min((tileRow + 1) * tileSize, snapshot.size());
+            int columnEnd = Math.min((tileColumn + 1) * tileSize, snapshot.size());
+            for (int row = tileRow * tileSize; row < rowEnd; row++){
+                long studentId1 = snapshot.getStudentId(row);
+                // On the diagonal tile only the pairs above the diagonal are compared
+                int columnStart = (tileRow == tileColumn) ? row + 1 : tileColumn * tileSize;
+                for (int column = columnStart; column < columnEnd; column++){
+                    long studentId2 = snapshot.getStudentId(column);
+                    if (studentId1 == studentId2){
+                        continue;
+                    }
+                    float absoluteCosineSimilarity = Math.abs(snapshot.dot(row, column));
+                    if (absoluteCosineSimilarity > similarityThreshold){
+                        studentPairs.add(new StudentPair(Math.min(studentId1, studentId2), Math.max(studentId1, studentId2), absoluteCosineSimilarity));
+                    }
+                }
+            }
+        }
+    }
+}
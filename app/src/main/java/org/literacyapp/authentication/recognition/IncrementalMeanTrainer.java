@@ -0,0 +1,161 @@
+package org.literacyapp.authentication.recognition;
+
+import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
+import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps running sums and counts of the featureVectors per StudentImageCollectionEvent and per Student.
+ * Every new featureVector updates the sums in O(d), so a meanFeatureVector never requires rescanning the StudentImages.
+ * The sums of the StudentImageCollectionEvents are persisted with the entity, the sums of the Students are kept in memory
+ * and are derived from the StudentImageCollectionEvents on first use.
+ */
+
+public class IncrementalMeanTrainer {
+
+    private final StudentImageCollectionEventDao studentImageCollectionEventDao;
+
+    private Map<Long, float[]> studentFeatureVectorSums;
+    private Map<Long, Integer> studentFeatureVectorCounts;
+    // Ids of the StudentImageCollectionEvents contained in the sums, so an event which has already been loaded isn't added twice
+    private Set<Long> studentImageCollectionEventIds;
+
+    /**
+     * @param studentImageCollectionEventDao - Used to initialize the sums of the Students, can be null for an initially empty trainer
+     */
+    public IncrementalMeanTrainer(StudentImageCollectionEventDao studentImageCollectionEventDao){
+        this.studentImageCollectionEventDao = studentImageCollectionEventDao;
+    }
+
+    /**
+     * Add a new featureVector to the running sum of its StudentImageCollectionEvent. The caller has to persist the entity.
+     * @param studentImageCollectionEvent
+     * @param featureVector
+     */
+    public static void addFeatureVector(StudentImageCollectionEvent studentImageCollectionEvent, float[] featureVector){
+        studentImageCollectionEvent.setFeatureVectorSum(add(studentImageCollectionEvent.getFeatureVectorSum(), featureVector));
+        studentImageCollectionEvent.setFeatureVectorCount(studentImageCollectionEvent.getFeatureVectorCount() + 1);
+    }
+
+    /**
+     * Returns the meanFeatureVector of a StudentImageCollectionEvent or null if no featureVector has been added yet
+     * @param studentImageCollectionEvent
+     * @return
+     */
+    public static float[] getMeanFeatureVector(StudentImageCollectionEvent studentImageCollectionEvent){
+        return getMean(studentImageCollectionEvent.getFeatureVectorSum(), studentImageCollectionEvent.getFeatureVectorCount());
+    }
+
+    /**
+     * Add the running sum of a trained StudentImageCollectionEvent to the running sum of its Student
+     * @param studentImageCollectionEvent
+     */
+    public synchronized void addStudentImageCollectionEvent(StudentImageCollectionEvent studentImageCollectionEvent){
+        ensureLoaded();
+        if ((studentImageCollectionEvent.getId() != null) && !studentImageCollectionEventIds.add(studentImageCollectionEvent.getId())){
+            // Already loaded from the database, e.g. because it has been persisted before the first call
+            return;
+        }
+        addToStudent(studentImageCollectionEvent.getStudentId(), studentImageCollectionEvent.getFeatureVectorSum(), studentImageCollectionEvent.getFeatureVectorCount());
+    }
+
+    /**
+     * Combine the running sums of two Students, which have been merged
+     * @param oldStudentId - Student which doesn't exist anymore
+     * @param newStudentId - Student which receives the StudentImageCollectionEvents of the other Student
+     */
+    public synchronized void mergeStudents(long oldStudentId, long newStudentId){
+        ensureLoaded();
+        float[] oldFeatureVectorSum = studentFeatureVectorSums.remove(oldStudentId);
+        Integer oldFeatureVectorCount = studentFeatureVectorCounts.remove(oldStudentId);
+        if (oldFeatureVectorCount != null){
+            addToStudent(newStudentId, oldFeatureVectorSum, oldFeatureVectorCount);
+        }
+    }
+
+    /**
+     * Returns the mean of all featureVectors of a Student or null if the Student has no trained StudentImageCollectionEvent
+     * @param studentId
+     * @return
+     */
+    public synchronized float[] getStudentMeanFeatureVector(long studentId){
+        ensureLoaded();
+        Integer count = studentFeatureVectorCounts.get(studentId);
+        if (count == null){
+            return null;
+        }
+        return getMean(studentFeatureVectorSums.get(studentId), count);
+    }
+
+    private void ensureLoaded(){
+        if (studentFeatureVectorSums != null){
+            return;
+        }
+        studentFeatureVectorSums = new HashMap<>();
+        studentFeatureVectorCounts = new HashMap<>();
+        studentImageCollectionEventIds = new HashSet<>();
+        for (StudentImageCollectionEvent studentImageCollectionEvent : loadTrainedStudentImageCollectionEvents()){
+            if (studentImageCollectionEvent.getId() != null){
+                studentImageCollectionEventIds.add(studentImageCollectionEvent.getId());
+            }
+            addToStudent(studentImageCollectionEvent.getStudentId(), studentImageCollectionEvent.getFeatureVectorSum(), studentImageCollectionEvent.getFeatureVectorCount());
+        }
+    }
+
+    /**
+     * Returns the StudentImageCollectionEvents which have already been trained
+     * @return
+     */
+    List<StudentImageCollectionEvent> loadTrainedStudentImageCollectionEvents(){
+        if (studentImageCollectionEventDao == null){
+            return new ArrayList<>();
+        }
+        return studentImageCollectionEventDao.queryBuilder()
+                .where(StudentImageCollectionEventDao.Properties.MeanFeatureVector.isNotNull())
+                .list();
+    }
+
+    private void addToStudent(long studentId, float[] featureVectorSum, int featureVectorCount){
+        if ((studentId == 0) || (featureVectorSum == null) || (featureVectorCount == 0)){
+            return;
+        }
+        studentFeatureVectorSums.put(studentId, add(studentFeatureVectorSums.get(studentId), featureVectorSum));
+        Integer count = studentFeatureVectorCounts.get(studentId);
+        studentFeatureVectorCounts.put(studentId, (count == null ? 0 : count) + featureVectorCount);
+    }
+
+    /**
+     * Adds the values to the sum in place, a new sum is created if sum is null
+     * @param sum
+     * @param values
+     * @return
+     */
+    static float[] add(float[] sum, float[] values){
+        if (sum == null){
+            sum = new float[values.length];
+        } else if (sum.length != values.length){
+            throw new IllegalArgumentException("Dimension " + values.length + " doesn't match the dimension of the sum " + sum.length);
+        }
+        for (int i = 0; i < values.length; i++){
+            sum[i] += values[i];
+        }
+        return sum;
+    }
+
+    static float[] getMean(float[] sum, int count){
+        if ((sum == null) || (count == 0)){
+            return null;
+        }
+        float[] mean = new float[sum.length];
+        for (int i = 0; i < sum.length; i++){
+            mean[i] = sum[i] / count;
+        }
+        return mean;
+    }
+}
@@ -0,0 +1,46 @@
+package org.literacyapp.authentication.recognition;
+
+/**
+ * Decides which Student of a {@link StudentSearchResult} has been recognized.
+ * The most similar Student is accepted if
+ *      a) its similarity is above the similarityThreshold and
+ *      b) its similarity exceeds the one of the second most similar Student by at least the minimumMargin
+ */
+
+public class RecognitionDecisionPolicy {
+
+    private final double similarityThreshold;
+    private final double minimumMargin;
+
+    public RecognitionDecisionPolicy(double similarityThreshold, double minimumMargin){
+        this.similarityThreshold = similarityThreshold;
+        this.minimumMargin = minimumMargin;
+    }
+
+    public double getSimilarityThreshold(){
+        return similarityThreshold;
+    }
+
+    public double getMinimumMargin(){
+        return minimumMargin;
+    }
+
+    /**
+     * Returns the studentId of the recognized Student or 0 if no Student could be recognized unambiguously
+     * @param studentSearchResult
+     * @return
+     */
+    public long getRecognizedStudentId(StudentSearchResult studentSearchResult){
+        if (studentSearchResult.size() == 0){
+            return 0;
+        }
+        float bestScore = studentSearchResult.getScore(0);
+        if (bestScore <= similarityThreshold){
+            return 0;
+        }
+        if ((studentSearchResult.size() > 1) && (bestScore - studentSearchResult.getScore(1) < minimumMargin)){
+            return 0;
+        }
+        return studentSearchResult.getStudentId(0);
+    }
+}
@@ -0,0 +1,41 @@
+package org.literacyapp.authentication.recognition;
+
+import org.literacyapp.contentprovider.model.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a single face recognition
+ */
+
+public class RecognitionResult {
+
+    private final List<Student> recognizedStudents;
+    private final Student identifiedStudent;
+
+    public RecognitionResult(List<Student> recognizedStudents, Student identifiedStudent){
+        this.recognizedStudents = recognizedStudents;
+        this.identifiedStudent = identifiedStudent;
+    }
+
+    public static RecognitionResult empty(){
+        return new RecognitionResult(new ArrayList<Student>(), null);
+    }
+
+    /**
+     * Returns all of the nearest Students, where the cosineSimilarity was above the threshold
+     * @return
+     */
+    public List<Student> getRecognizedStudents(){
+        return recognizedStudents;
+    }
+
+    /**
+     * Returns the Student chosen by the RecognitionDecisionPolicy or null if no Student could be identified unambiguously
+     * @return
+     */
+    public Student getIdentifiedStudent(){
+        return identifiedStudent;
+    }
+}
@@ -0,0 +1,250 @@
+package org.literacyapp.authentication.recognition;
+
+import android.util.Log;
+
+import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
+import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resident index of the meanFeatureVectors of all trained StudentImageCollectionEvents.
+ * The vectors are L2-normalized when they are added and stored row by row in one contiguous float array,
+ * so that the cosine similarity to all Students is a single dot product sweep.
+ * The index is loaded from the database on first access and afterwards kept up to date incrementally via put/remove.
+ */
+
+public class StudentEmbeddingIndex {
+
+    private static final int INITIAL_CAPACITY = 32;
+    private StudentImageCollectionEventDao studentImageCollectionEventDao;
+    private boolean loaded;
+    private int dimension;
+    private float[] normalizedVectors;
+    private long[] studentIds;
+    private long[] studentImageCollectionEventIds;
+    private int size;
+    private float[] normalizedQuery;
+
+    /**
+     * @param studentImageCollectionEventDao - Used to load the index lazily. If null, the index starts empty.
+     */
+    public StudentEmbeddingIndex(StudentImageCollectionEventDao studentImageCollectionEventDao){
+        this.studentImageCollectionEventDao = studentImageCollectionEventDao;
+        loaded = (studentImageCollectionEventDao == null);
+        studentIds = new long[INITIAL_CAPACITY];
+        studentImageCollectionEventIds = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Load all StudentImageCollectionEvents with a meanFeatureVector, if this hasn't been done yet
+     */
+    private void ensureLoaded(){
+        if (!loaded){
+            loaded = true;
+            List<StudentImageCollectionEvent> studentImageCollectionEvents = studentImageCollectionEventDao.queryBuilder().where(StudentImageCollectionEventDao.Properties.MeanFeatureVector.isNotNull()).list();
+            for (StudentImageCollectionEvent studentImageCollectionEvent : studentImageCollectionEvents){
+                putInternal(studentImageCollectionEvent.getId(), studentImageCollectionEvent.getStudentId(), studentImageCollectionEvent.getMeanFeatureVector());
+            }
+            Log.i(getClass().getName(), "StudentEmbeddingIndex has been loaded with " + size + " meanFeatureVectors of dimension " + dimension);
+        }
+    }
+
+    /**
+     * Add or replace the meanFeatureVector of a StudentImageCollectionEvent
+     * @param studentImageCollectionEventId
+     * @param studentId
+     * @param meanFeatureVector
+     */
+    public synchronized void put(long studentImageCollectionEventId, long studentId, float[] meanFeatureVector){
+        ensureLoaded();
+        putInternal(studentImageCollectionEventId, studentId, meanFeatureVector);
+    }
+
+    private void putInternal(long studentImageCollectionEventId, long studentId, float[] meanFeatureVector){
+        if (dimension == 0){
+            dimension = meanFeatureVector.length;
+            normalizedVectors = new float[INITIAL_CAPACITY * dimension];
+        } else if (meanFeatureVector.length != dimension){
+            throw new IllegalArgumentException("meanFeatureVector has dimension " + meanFeatureVector.length + " instead of " + dimension);
+        }
+        int row = indexOf(studentImageCollectionEventId);
+        if (row < 0){
+            ensureCapacity(size + 1);
+            row = size;
+            size++;
+        }
+        studentImageCollectionEventIds[row] = studentImageCollectionEventId;
+        studentIds[row] = studentId;
+        normalize(meanFeatureVector, normalizedVectors, row * dimension);
+    }
+
+    /**
+     * Remove the meanFeatureVector of a StudentImageCollectionEvent
+     * @param studentImageCollectionEventId
+     */
+    public synchronized void remove(long studentImageCollectionEventId){
+        ensureLoaded();
+        int row = indexOf(studentImageCollectionEventId);
+        if (row >= 0){
+            // Move the last row into the gap
+            int last = size - 1;
+            if (row != last){
+                studentImageCollectionEventIds[row] = studentImageCollectionEventIds[last];
+                studentIds[row] = studentIds[last];
+                System.arraycopy(normalizedVectors, last * dimension, normalizedVectors, row * dimension, dimension);
+            }
+            size--;
+        }
+    }
+
+    /**
+     * Assign all rows of a Student to another Student (e.g. after merging two Students)
+     * @param oldStudentId
+     * @param newStudentId
+     */
+    public synchronized void reassignStudent(long oldStudentId, long newStudentId){
+        ensureLoaded();
+        for (int row = 0; row < size; row++){
+            if (studentIds[row] == oldStudentId){
+                studentIds[row] = newStudentId;
+            }
+        }
+    }
+
+    public synchronized int size(){
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Returns a copy of all rows, which can be scanned without blocking the recognition
+     * @return
+     */
+    public synchronized Snapshot snapshot(){
+        ensureLoaded();
+        float[] normalizedVectorsCopy = (normalizedVectors == null) ? new float[0] : Arrays.copyOf(normalizedVectors, size * dimension);
+        return new Snapshot(normalizedVectorsCopy, Arrays.copyOf(studentIds, size), Arrays.copyOf(studentImageCollectionEventIds, size), size, dimension);
+    }
+
+    /**
+     * Find the most similar Students to the featureVector by absolute cosine similarity
+     * @param featureVector
+     * @param excludedStudentId - Rows of this Student are skipped (e.g. the Student itself during merging), use 0 to include all
+     * @param studentSearchResult - Receives the k most similar Students, where k is its capacity
+     */
+    public synchronized void search(float[] featureVector, long excludedStudentId, StudentSearchResult studentSearchResult){
+        ensureLoaded();
+        studentSearchResult.clear();
+        if (size == 0){
+            return;
+        }
+        if (featureVector.length != dimension){
+            throw new IllegalArgumentException("featureVector has dimension " + featureVector.length + " instead of " + dimension);
+        }
+        if (normalizedQuery == null){
+            normalizedQuery = new float[dimension];
+        }
+        normalize(featureVector, normalizedQuery, 0);
+        for (int row = 0; row < size; row++){
+            if (studentIds[row] != excludedStudentId){
+                studentSearchResult.offer(studentIds[row], Math.abs(dot(normalizedQuery, row)));
+            }
+        }
+        studentSearchResult.sortDescending();
+    }
+
+    /**
+     * Dot product between an already normalized vector and the row of the index
+     */
+    private float dot(float[] normalizedFeatureVector, int row){
+        int offset = row * dimension;
+        float dotProduct = 0;
+        for (int i = 0; i < dimension; i++){
+            dotProduct += normalizedFeatureVector[i] * normalizedVectors[offset + i];
+        }
+        return dotProduct;
+    }
+
+    /**
+     * Write the L2-normalized featureVector into target starting at targetOffset
+     */
+    private static void normalize(float[] featureVector, float[] target, int targetOffset){
+        double norm = 0;
+        for (int i = 0; i < featureVector.length; i++){
+            norm += featureVector[i] * featureVector[i];
+        }
+        float scale = (norm > 0) ? (float) (1 / Math.sqrt(norm)) : 0;
+        for (int i = 0; i < featureVector.length; i++){
+            target[targetOffset + i] = featureVector[i] * scale;
+        }
+    }
+
+    /**
+     * Immutable copy of the index, the L2-normalized vectors are stored row by row
+     */
+    public static class Snapshot {
+
+        private final float[] normalizedVectors;
+        private final long[] studentIds;
+        private final long[] studentImageCollectionEventIds;
+        private final int size;
+        private final int dimension;
+
+        Snapshot(float[] normalizedVectors, long[] studentIds, long[] studentImageCollectionEventIds, int size, int dimension){
+            this.normalizedVectors = normalizedVectors;
+            this.studentIds = studentIds;
+            this.studentImageCollectionEventIds = studentImageCollectionEventIds;
+            this.size = size;
+            this.dimension = dimension;
+        }
+
+        public int size(){
+            return size;
+        }
+
+        public int getDimension(){
+            return dimension;
+        }
+
+        public long getStudentId(int row){
+            return studentIds[row];
+        }
+
+        public long getStudentImageCollectionEventId(int row){
+            return studentImageCollectionEventIds[row];
+        }
+
+        /**
+         * Cosine similarity between two rows
+         */
+        public float dot(int row1, int row2){
+            int offset1 = row1 * dimension;
+            int offset2 = row2 * dimension;
+            float dotProduct = 0;
+            for (int i = 0; i < dimension; i++){
+                dotProduct += normalizedVectors[offset1 + i] * normalizedVectors[offset2 + i];
+            }
+            return dotProduct;
+        }
+    }
+
+    private int indexOf(long studentImageCollectionEventId){
+        for (int row = 0; row < size; row++){
+            if (studentImageCollectionEventIds[row] == studentImageCollectionEventId){
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity){
+        if (capacity > studentIds.length){
+            int newCapacity = Math.max(capacity, studentIds.length * 2);
+            studentIds = Arrays.copyOf(studentIds, newCapacity);
+            studentImageCollectionEventIds = Arrays.copyOf(studentImageCollectionEventIds, newCapacity);
+            normalizedVectors = Arrays.copyOf(normalizedVectors, newCapacity * dimension);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.literacyapp.authentication.recognition;
+
+/**
+ * Two different Students whose meanFeatureVectors are similar enough to be the same person
+ */
+
+public class StudentPair {
+
+    private final long studentId1;
+    private final long studentId2;
+    private final float similarity;
+
+    public StudentPair(long studentId1, long studentId2, float similarity){
+        this.studentId1 = studentId1;
+        this.studentId2 = studentId2;
+        this.similarity = similarity;
+    }
+
+    public long getStudentId1(){
+        return studentId1;
+    }
+
+    public long getStudentId2(){
+        return studentId2;
+    }
+
+    /**
+     * Returns the highest absolute cosine similarity between any StudentImageCollectionEvents of both Students
+     * @return
+     */
+    public float getSimilarity(){
+        return similarity;
+    }
+}
@@ -0,0 +1,128 @@
+package org.literacyapp.authentication.recognition;
+
+/**
+ * The k most similar Students of a search in the {@link StudentEmbeddingIndex}.
+ * While searching, the entries are kept in a bounded min-heap on primitive arrays, so that offering a candidate doesn't allocate.
+ * After the search has finished, the entries are sorted by descending similarity (rank 0 is the most similar Student).
+ * Every Student is contained only once with its highest similarity. The object can be reused for multiple searches.
+ */
+
+public class StudentSearchResult {
+
+    private final long[] studentIds;
+    private final float[] scores;
+    private int size;
+
+    public StudentSearchResult(int k){
+        if (k < 1){
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        studentIds = new long[k];
+        scores = new float[k];
+    }
+
+    public int getCapacity(){
+        return studentIds.length;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public long getStudentId(int rank){
+        checkRank(rank);
+        return studentIds[rank];
+    }
+
+    public float getScore(int rank){
+        checkRank(rank);
+        return scores[rank];
+    }
+
+    void clear(){
+        size = 0;
+    }
+
+    /**
+     * Add a candidate to the heap if it is among the k most similar Students seen so far
+     * @param studentId
+     * @param score
+     */
+    void offer(long studentId, float score){
+        for (int i = 0; i < size; i++){
+            if (studentIds[i] == studentId){
+                if (score > scores[i]){
+                    scores[i] = score;
+                    siftDown(i, size);
+                }
+                return;
+            }
+        }
+        if (size < studentIds.length){
+            studentIds[size] = studentId;
+            scores[size] = score;
+            siftUp(size);
+            size++;
+        } else if (score > scores[0]){
+            studentIds[0] = studentId;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Sort the heap in place by descending score. No further candidates can be offered afterwards until clear has been called.
+     */
+    void sortDescending(){
+        for (int end = size - 1; end > 0; end--){
+            // Move the current minimum behind the remaining heap
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftUp(int index){
+        while (index > 0){
+            int parent = (index - 1) / 2;
+            if (scores[index] >= scores[parent]){
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int heapSize){
+        while (true){
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if ((left < heapSize) && (scores[left] < scores[smallest])){
+                smallest = left;
+            }
+            if ((right < heapSize) && (scores[right] < scores[smallest])){
+                smallest = right;
+            }
+            if (smallest == index){
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j){
+        long studentId = studentIds[i];
+        studentIds[i] = studentIds[j];
+        studentIds[j] = studentId;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private void checkRank(int rank){
+        if ((rank < 0) || (rank >= size)){
+            throw new IndexOutOfBoundsException("rank: " + rank + " size: " + size);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.literacyapp.authentication.recognition;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.literacyapp.util.AiHelper;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ch.zhaw.facerecognitionlibrary.Recognition.TensorFlow;
+
+/**
+ * Process-wide holder of the TensorFlow model (vgg_faces.pb) used for the feature extraction.
+ * The model is loaded lazily on the first acquire, warmed up with a dummy inference and then shared by all users.
+ * Every acquire has to be balanced with a release. The model stays loaded while it is unused and is only dropped
+ * via releaseIfUnused (e.g. when the system is running low on memory).
+ * The model is loaded and warmed up outside of the lock, so releaseIfUnused never has to wait for a running load.
+ * Concurrent acquires wait until the load has finished.
+ */
+
+public class TensorFlowModelHolder {
+
+    private static final String MODEL_DOWNLOAD_LINK = "https://drive.google.com/open?id=0B3jQsJcchixPek9lU3BaOHpCUGc";
+    private static final int INPUT_SIZE = 224;
+    private static final int OUTPUT_SIZE = 4096;
+    private static final int IMAGE_MEAN = 128;
+    private static final String INPUT_LAYER = "Placeholder";
+    private static final String OUTPUT_LAYER = "fc7/fc7";
+
+    private final Context context;
+    private final Object inferenceLock = new Object();
+    // Guards tensorFlow, referenceCount and loading
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition loaded = lock.newCondition();
+    private volatile TensorFlow tensorFlow;
+    private int referenceCount;
+    private boolean loading;
+
+    public TensorFlowModelHolder(Context context){
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Acquire a reference to the model and load it if necessary
+     * @return false if the model file is not available, in this case release must not be called
+     */
+    public boolean acquire(){
+        lock.lock();
+        try {
+            while (loading){
+                loaded.awaitUninterruptibly();
+            }
+            if (tensorFlow != null){
+                referenceCount++;
+                Log.i(getClass().getName(), "acquire: referenceCount: " + referenceCount);
+                return true;
+            }
+            loading = true;
+        } finally {
+            lock.unlock();
+        }
+
+        TensorFlow loadedTensorFlow = null;
+        try {
+            loadedTensorFlow = loadTensorFlow();
+        } finally {
+            lock.lock();
+            try {
+                loading = false;
+                tensorFlow = loadedTensorFlow;
+                if (loadedTensorFlow != null){
+                    referenceCount++;
+                    Log.i(getClass().getName(), "acquire: referenceCount: " + referenceCount);
+                }
+                loaded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return loadedTensorFlow != null;
+    }
+
+    public void release(){
+        lock.lock();
+        try {
+            if (referenceCount > 0){
+                referenceCount--;
+            }
+            Log.i(getClass().getName(), "release: referenceCount: " + referenceCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the model if nobody is holding a reference to it. Doesn't block, e.g. when called on the main thread,
+     * and keeps the model if it is being loaded right now.
+     */
+    public void releaseIfUnused(){
+        if (!lock.tryLock()){
+            Log.i(getClass().getName(), "releaseIfUnused: TensorFlow model is in use");
+            return;
+        }
+        try {
+            if (loading){
+                Log.i(getClass().getName(), "releaseIfUnused: TensorFlow model is being loaded");
+            } else if ((referenceCount == 0) && (tensorFlow != null)){
+                tensorFlow = null;
+                Log.i(getClass().getName(), "releaseIfUnused: TensorFlow model has been released");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the featureVector derived from the Neural Network. Inferences are serialized, because the model is shared.
+     * Must only be called while holding a reference.
+     * @param img
+     * @return
+     */
+    public Mat getFeatureVector(Mat img){
+        synchronized (inferenceLock){
+            TensorFlow currentTensorFlow = tensorFlow;
+            if (currentTensorFlow == null){
+                throw new IllegalStateException("TensorFlow model has not been acquired");
+            }
+            return currentTensorFlow.getFeatureVector(img);
+        }
+    }
+
+    /**
+     * Initialize TensorFlow model and run a first inference, so that the first real recognition isn't slowed down
+     * @return
+     */
+    private TensorFlow loadTensorFlow(){
+        File modelFile = new File(AiHelper.getModelDirectory(), "vgg_faces.pb");
+        if (!modelFile.exists()){
+            File modelDownloadFile = createModelDownloadFile(modelFile);
+            String logMessage = "Model file: " + modelFile.getAbsolutePath() + " doesn't exist. Please copy it manually";
+            if (modelDownloadFile != null){
+                logMessage = logMessage + ". Find the download link in the file " + modelDownloadFile.getAbsolutePath();
+
+            } else {
+                logMessage = logMessage + " from " + MODEL_DOWNLOAD_LINK;
+            }
+            Log.e(getClass().getName(), logMessage);
+
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        TensorFlow tensorFlow = new TensorFlow(context, INPUT_SIZE, IMAGE_MEAN, OUTPUT_SIZE, INPUT_LAYER, OUTPUT_LAYER, modelFile.getAbsolutePath());
+        Log.i(getClass().getName(), "TensorFlow model has been loaded in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        startTime = System.currentTimeMillis();
+        synchronized (inferenceLock){
+            tensorFlow.getFeatureVector(new Mat(INPUT_SIZE, INPUT_SIZE, CvType.CV_8UC3, new Scalar(IMAGE_MEAN, IMAGE_MEAN, IMAGE_MEAN)));
+        }
+        Log.i(getClass().getName(), "TensorFlow model has been warmed up in " + (System.currentTimeMillis() - startTime) + " ms");
+        return tensorFlow;
+    }
+
+    /**
+     * Create a text file with the TensorFlow model download linke in case the file doesn't exist
+     * @param modelFile
+     * @return
+     */
+    private File createModelDownloadFile(File modelFile){
+        File modelDownloadFile = new File(AiHelper.getModelDirectory(), "download_link.txt");
+        try {
+            FileWriter fileWriter = new FileWriter(modelDownloadFile, false);
+            fileWriter.append(MODEL_DOWNLOAD_LINK + "\n");
+            fileWriter.append("Copy to: " + modelFile.getAbsolutePath());
+            fileWriter.close();
+            Log.i(getClass().getName(), "Model download file has been created at " + modelDownloadFile.getAbsolutePath() + " with the link " + MODEL_DOWNLOAD_LINK);
+
+        } catch (IOException e) {
+            Log.e(getClass().getName(), null, e);
+        }
+        return modelDownloadFile;
+    }
+}
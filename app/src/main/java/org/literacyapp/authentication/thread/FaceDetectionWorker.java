@@ -0,0 +1,199 @@
+package org.literacyapp.authentication.thread;
+
+import android.util.Log;
+
+import org.literacyapp.authentication.detection.DownscaledFaceDetector;
+import org.literacyapp.authentication.detection.FaceDetectionResult;
+import org.literacyapp.authentication.detection.MatPool;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.List;
+
+import ch.zhaw.facerecognitionlibrary.Helpers.MatOperation;
+import ch.zhaw.facerecognitionlibrary.PreProcessor.PreProcessorFactory;
+
+/**
+ * Runs the face detection and preprocessing (PreProcessorFactory.getCroppedImage) outside of the camera thread.
+ * Frames are passed through a single slot: if the detection is still busy, a waiting frame is replaced by the newer one,
+ * so the camera thread never waits and the detection always works on the latest frame.
+ * The camera thread only hands over a frame if the detection is due, the interval adapts to the measured detection latency.
+ * The frame copies are taken from a MatPool, so no native memory is allocated per frame in the steady state.
+ * If a DownscaledFaceDetector is used, the face is searched on the downscaled luma plane and only cropped from the RGBA frame.
+ */
+
+public class FaceDetectionWorker extends Thread {
+
+    private static final long MIN_DETECTION_INTERVAL = 50;
+    // Leave some of the CPU time for the preview rendering
+    private static final double DETECTION_INTERVAL_FACTOR = 1.5;
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.2;
+
+    private final PreProcessorFactory ppF;
+    private final DownscaledFaceDetector downscaledFaceDetector;
+    private final MatPool matPool = new MatPool();
+    private final Object frameLock = new Object();
+    // Guarded by frameLock
+    private Mat pendingFrame;
+    private Mat pendingGray;
+    private long pendingFrameTime;
+    private volatile FaceDetectionResult latestResult;
+    private volatile double averageDetectionLatency;
+    private volatile boolean stopped;
+    // Only accessed from the camera thread
+    private long lastFrameTime;
+    // Only accessed from the detection thread
+    private long sequenceNumber;
+
+    /**
+     * @param ppF
+     * @param downscaledFaceDetector - Detector for the luma plane, if null the detection runs on the full resolution RGBA frame
+     */
+    public FaceDetectionWorker(PreProcessorFactory ppF, DownscaledFaceDetector downscaledFaceDetector){
+        super("FaceDetectionWorker");
+        this.ppF = ppF;
+        this.downscaledFaceDetector = downscaledFaceDetector;
+        setDaemon(true);
+    }
+
+    /**
+     * Hand over a camera frame if the next detection is due. Must be called from the camera thread.
+     * @param frame - Frame which is copied, the caller keeps the ownership
+     * @param gray - Luma plane of the frame, which is copied if a DownscaledFaceDetector is used
+     * @param currentTime
+     * @return true if the frame has been accepted
+     */
+    public boolean offerFrame(Mat frame, Mat gray, long currentTime){
+        if ((currentTime - lastFrameTime) < getDetectionInterval()){
+            return false;
+        }
+        lastFrameTime = currentTime;
+        Mat frameCopy = matPool.acquireCopy(frame);
+        Mat grayCopy = (downscaledFaceDetector != null) ? matPool.acquireCopy(gray) : null;
+        synchronized (frameLock){
+            if (pendingFrame != null){
+                // The detection didn't pick up the previous frame, only the latest one matters
+                matPool.release(pendingFrame);
+                matPool.release(pendingGray);
+            }
+            pendingFrame = frameCopy;
+            pendingGray = grayCopy;
+            pendingFrameTime = currentTime;
+            frameLock.notify();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the result of the most recently detected frame or null if no frame has been detected yet
+     * @return
+     */
+    public FaceDetectionResult getLatestResult(){
+        return latestResult;
+    }
+
+    /**
+     * Minimum time between two frames handed over to the detection
+     * @return
+     */
+    public long getDetectionInterval(){
+        return Math.max(MIN_DETECTION_INTERVAL, (long) (averageDetectionLatency * DETECTION_INTERVAL_FACTOR));
+    }
+
+    @Override
+    public void run() {
+        while (!stopped){
+            Mat frame;
+            Mat gray;
+            long frameTime;
+            synchronized (frameLock){
+                while ((pendingFrame == null) && !stopped){
+                    try {
+                        frameLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (stopped){
+                    break;
+                }
+                frame = pendingFrame;
+                gray = pendingGray;
+                frameTime = pendingFrameTime;
+                pendingFrame = null;
+                pendingGray = null;
+            }
+
+            long startTime = System.currentTimeMillis();
+            latestResult = detect(frame, gray, frameTime);
+            long detectionLatency = System.currentTimeMillis() - startTime;
+            averageDetectionLatency = (averageDetectionLatency == 0) ? detectionLatency : (LATENCY_SMOOTHING_FACTOR * detectionLatency + (1 - LATENCY_SMOOTHING_FACTOR) * averageDetectionLatency);
+            matPool.release(frame);
+            matPool.release(gray);
+        }
+        synchronized (frameLock){
+            if (pendingFrame != null){
+                matPool.release(pendingFrame);
+                matPool.release(pendingGray);
+                pendingFrame = null;
+                pendingGray = null;
+            }
+        }
+        matPool.clear();
+        if (downscaledFaceDetector != null){
+            downscaledFaceDetector.release();
+        }
+        Log.i(getClass().getName(), "FaceDetectionWorker has been stopped, averageDetectionLatency: " + averageDetectionLatency);
+    }
+
+    /**
+     * Detect and preprocess exactly one face
+     * @param frame
+     * @param gray - Luma plane of the frame or null
+     * @param frameTime
+     * @return
+     */
+    private FaceDetectionResult detect(Mat frame, Mat gray, long frameTime){
+        sequenceNumber++;
+        List<Mat> images;
+        if (downscaledFaceDetector != null){
+            images = downscaledFaceDetector.getCroppedImage(frame, gray);
+        } else {
+            images = ppF.getCroppedImage(frame);
+        }
+        if (images != null && images.size() == 1){
+            Mat img = images.get(0);
+            if (img != null){
+                Rect[] faces = (downscaledFaceDetector != null) ? downscaledFaceDetector.getFacesForRecognition() : ppF.getFacesForRecognition();
+                if (faces != null && faces.length == 1){
+                    faces = MatOperation.rotateFaces(frame, faces, ppF.getAngleForRecognition());
+                    return new FaceDetectionResult(sequenceNumber, frameTime, img, faces[0]);
+                }
+            }
+        }
+        // Free the native memory of unused face images right away instead of waiting for the garbage collector
+        releaseAll(images);
+        return new FaceDetectionResult(sequenceNumber, frameTime, null, null);
+    }
+
+    private static void releaseAll(List<Mat> images){
+        if (images != null){
+            for (Mat image : images){
+                if (image != null){
+                    image.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the detection, a waiting frame is dropped
+     */
+    public void shutdown(){
+        stopped = true;
+        synchronized (frameLock){
+            frameLock.notify();
+        }
+    }
+}
@@ -3,25 +3,28 @@ package org.literacyapp.authentication.thread;
 import android.content.Context;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
 import org.literacyapp.LiteracyApplication;
+import org.literacyapp.authentication.helper.StudentMergeHelper;
+import org.literacyapp.authentication.recognition.DuplicateStudentDetector;
+import org.literacyapp.authentication.recognition.RecognitionResult;
+import org.literacyapp.authentication.recognition.StudentEmbeddingIndex;
+import org.literacyapp.authentication.recognition.StudentPair;
 import org.literacyapp.contentprovider.dao.DaoSession;
 import org.literacyapp.contentprovider.dao.StudentDao;
-import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
 import org.literacyapp.contentprovider.model.Student;
-import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
 import org.literacyapp.service.synchronization.MergeSimilarStudentsJobService;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.utils.Converters;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import ch.zhaw.facerecognitionlibrary.PreProcessor.PreProcessorFactory;
-import ch.zhaw.facerecognitionlibrary.Recognition.TensorFlow;
 
 /**
  * Created by sladomic on 01.01.17.
@@ -29,22 +32,25 @@ import ch.zhaw.facerecognitionlibrary.Recognition.TensorFlow;
 
 public class MergeThread extends Thread {
 
+    private Context context;
     private PreProcessorFactory ppF;
-    private TrainingThread trainingThread;
     private StudentDao studentDao;
-    private StudentImageCollectionEventDao studentImageCollectionEventDao;
-    private Gson gson;
+    private StudentEmbeddingIndex studentEmbeddingIndex;
+    private DuplicateStudentDetector duplicateStudentDetector;
+    private StudentMergeHelper studentMergeHelper;
+    // Merged studentId -> studentId of the Student it has been merged into
+    private Map<Long, Long> mergedStudentIds = new HashMap<>();
     private MergeSimilarStudentsJobService mergeService;
 
     public MergeThread(MergeSimilarStudentsJobService mergeService){
-        Context context = mergeService.getApplicationContext();
-        trainingThread = new TrainingThread(context);
+        context = mergeService.getApplicationContext();
         ppF = new PreProcessorFactory(context);
         LiteracyApplication literacyApplication = (LiteracyApplication) context.getApplicationContext();
         DaoSession daoSession = literacyApplication.getDaoSession();
         studentDao = daoSession.getStudentDao();
-        studentImageCollectionEventDao = daoSession.getStudentImageCollectionEventDao();
-        gson = new Gson();
+        studentEmbeddingIndex = literacyApplication.getStudentEmbeddingIndex();
+        duplicateStudentDetector = new DuplicateStudentDetector(RecognitionWorker.SIMILARITY_THRESHOLD);
+        studentMergeHelper = new StudentMergeHelper(context);
         this.mergeService = mergeService;
     }
 
@@ -61,20 +67,28 @@ public class MergeThread extends Thread {
      */
     public synchronized void findAndMergeSimilarStudents(){
         Log.i(getClass().getName(), "findAndMergeSimilarStudents");
-        TensorFlow tensorFlow = trainingThread.getInitializedTensorFlow();
-        findSimilarStudentsUsingAvatarImages(ppF, tensorFlow);
-        findSimilarStudentsUsingMeanFeatureVector(ppF, tensorFlow);
+        mergedStudentIds.clear();
+        RecognitionWorker recognitionWorker = new RecognitionWorker(context);
+        try {
+            findSimilarStudentsUsingAvatarImages(ppF, recognitionWorker);
+        } finally {
+            recognitionWorker.shutdown();
+        }
+        findSimilarStudentsUsingMeanFeatureVector();
     }
 
     /**
      * Find similar students
      * Case 1: Student was added during fallback but in the meantime the same person has an existing StudentImageCollectionEvent and a new Student entry
      * ---> Use the avatar image as input for the recognition
+     * The face detection of the next avatar image runs while the previous one is still being recognized
      * @param ppF
-     * @param tensorFlow
+     * @param recognitionWorker
      */
-    private synchronized void findSimilarStudentsUsingAvatarImages(PreProcessorFactory ppF, TensorFlow tensorFlow){
+    private synchronized void findSimilarStudentsUsingAvatarImages(PreProcessorFactory ppF, RecognitionWorker recognitionWorker){
         Log.i(getClass().getName(), "findSimilarStudentsUsingAvatarImages");
+        List<Student> studentsToRecognize = new ArrayList<>();
+        List<Future<RecognitionResult>> recognitionFutures = new ArrayList<>();
         // Iterate through all Students
         List<Student> students = studentDao.loadAll();
         for (Student student : students){
@@ -90,72 +104,64 @@ public class MergeThread extends Thread {
                     Rect[] faces = ppF.getFacesForRecognition();
                     if (faces != null && faces.length == 1) {
                         // Proceed if exactly one face rectangle exists
-                        RecognitionThread recognitionThread = new RecognitionThread(tensorFlow, studentImageCollectionEventDao);
-                        recognitionThread.setImg(faceImage);
-                        recognitionThread.setStudent(student);
-                        Log.i(getClass().getName(), "findSimilarStudentsUsingAvatarImages: recognitionThread will be started to recognize student: " + student.getUniqueId());
-                        recognitionThread.start();
-                        try {
-                            recognitionThread.join();
-                            List<Student> recognizedStudents = recognitionThread.getRecognizedStudent();
-                            if (recognizedStudents.size() > 0){
-                                for (Student recognizedStudent : recognizedStudents){
-                                    if (recognizedStudent != null){
-                                        Log.i(getClass().getName(), "findSimilarStudentsUsingAvatarImages: The student " + student.getUniqueId() + " has been recognized as " + recognizedStudent.getUniqueId());
-                                        mergeSimilarStudents(student, recognizedStudent);
-                                    }
-                                }
-                            } else {
-                                Log.i(getClass().getName(), "findSimilarStudentsUsingAvatarImages: The student " + student.getUniqueId() + " was not recognized");
-                            }
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
+                        Log.i(getClass().getName(), "findSimilarStudentsUsingAvatarImages: recognition will be submitted to recognize student: " + student.getUniqueId());
+                        studentsToRecognize.add(student);
+                        recognitionFutures.add(recognitionWorker.submit(faceImage, student));
                     }
                 }
             }
         }
+        mergeRecognizedStudents(studentsToRecognize, recognitionFutures, "findSimilarStudentsUsingAvatarImages");
     }
 
     /**
      * Find similar students
      * Case 2: Student was added regularly but maybe on another tablet or due to some reason the authentication didn't recognize the student correctly in the numberOfTries
-     * ---> Use the meanFeatureVector as input for the cosineSimilarityScore calculation
-     * @param ppF
-     * @param tensorFlow
+     * ---> Compare the meanFeatureVectors of all StudentImageCollectionEvents with each other using the DuplicateStudentDetector
      */
-    private synchronized void findSimilarStudentsUsingMeanFeatureVector(PreProcessorFactory ppF, TensorFlow tensorFlow){
+    private synchronized void findSimilarStudentsUsingMeanFeatureVector(){
         Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector");
-        // Iterate through all StudentImageCollectionEvents, where the Student is not null
-        List<StudentImageCollectionEvent> studentImageCollectionEvents = studentImageCollectionEventDao.queryBuilder().where(StudentImageCollectionEventDao.Properties.StudentId.notEq(0)).list();
-        Log.i(getClass().getName(), "studentImageCollectionEvents.size(): " + studentImageCollectionEvents.size());
-        for (StudentImageCollectionEvent studentImageCollectionEvent : studentImageCollectionEvents){
-            Student student = studentImageCollectionEvent.getStudent();
-            // Take the meanFeatureVector of the StudentImageCollectionEvent
-            List<Float> meanFeatureVectorList = gson.fromJson(studentImageCollectionEvent.getMeanFeatureVector(), new TypeToken<List<Float>>(){}.getType());
-            Mat meanFeatureVector = Converters.vector_float_to_Mat(meanFeatureVectorList);
-            RecognitionThread recognitionThread = new RecognitionThread(tensorFlow, studentImageCollectionEventDao);
-            recognitionThread.setImg(meanFeatureVector);
-            recognitionThread.setStudent(student);
-            // To indicate, that this Mat object contains the already extracted features and therefore this step can be skipped in the RecognitionThread
-            recognitionThread.setFeaturesAlreadyExtracted(true);
-            Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector: recognitionThread will be started to recognize student: " + student.getUniqueId());
-            recognitionThread.start();
+        StudentEmbeddingIndex.Snapshot snapshot = studentEmbeddingIndex.snapshot();
+        Log.i(getClass().getName(), "Number of meanFeatureVectors: " + snapshot.size());
+        long startTime = System.currentTimeMillis();
+        List<StudentPair> studentPairs = duplicateStudentDetector.findCandidatePairs(snapshot);
+        Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector: " + studentPairs.size() + " candidate pairs have been found in " + (System.currentTimeMillis() - startTime) + " ms");
+        for (StudentPair studentPair : studentPairs){
+            Student student1 = studentDao.load(studentPair.getStudentId1());
+            Student student2 = studentDao.load(studentPair.getStudentId2());
+            if ((student1 != null) && (student2 != null)){
+                Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector: The student " + student1.getUniqueId() + " has been recognized as " + student2.getUniqueId() + " with absoluteCosineSimilarity: " + studentPair.getSimilarity());
+                mergeSimilarStudents(student1, student2);
+            }
+        }
+    }
+
+    /**
+     * Wait for the submitted recognitions and merge every student with the students it has been recognized as
+     * @param students
+     * @param recognitionFutures - Recognition for the student at the same index
+     * @param caller - Used for logging
+     */
+    private synchronized void mergeRecognizedStudents(List<Student> students, List<Future<RecognitionResult>> recognitionFutures, String caller){
+        for (int i = 0; i < students.size(); i++){
+            Student student = students.get(i);
             try {
-                recognitionThread.join();
-                List<Student> recognizedStudents = recognitionThread.getRecognizedStudent();
+                List<Student> recognizedStudents = recognitionFutures.get(i).get().getRecognizedStudents();
                 if (recognizedStudents.size() > 0){
                     for (Student recognizedStudent : recognizedStudents){
                         if (recognizedStudent != null){
-                            Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector: The student " + student.getUniqueId() + " has been recognized as " + recognizedStudent.getUniqueId());
+                            Log.i(getClass().getName(), caller + ": The student " + student.getUniqueId() + " has been recognized as " + recognizedStudent.getUniqueId());
                             mergeSimilarStudents(student, recognizedStudent);
                         }
                     }
                 } else {
-                    Log.i(getClass().getName(), "findSimilarStudentsUsingMeanFeatureVector: The student " + student.getUniqueId() + " was not recognized");
+                    Log.i(getClass().getName(), caller + ": The student " + student.getUniqueId() + " was not recognized");
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
             }
         }
     }
@@ -167,6 +173,27 @@ public class MergeThread extends Thread {
      */
     private synchronized void mergeSimilarStudents(Student student1, Student student2){
         Log.i(getClass().getName(), "mergeSimilarStudents: student1: " + student1.getUniqueId() + " student2: " + student2.getUniqueId());
-        // TODO Implement merging of students (maybe in another class like StudentMergeHelper)
+        // One of the students might have been merged already with a third student
+        Student survivingStudent1 = getSurvivingStudent(student1.getId());
+        Student survivingStudent2 = getSurvivingStudent(student2.getId());
+        if ((survivingStudent1 == null) || (survivingStudent2 == null) || survivingStudent1.getId().equals(survivingStudent2.getId())){
+            Log.i(getClass().getName(), "mergeSimilarStudents: The students have already been merged");
+            return;
+        }
+        Student survivingStudent = studentMergeHelper.mergeStudents(survivingStudent1, survivingStudent2);
+        Student duplicateStudent = (survivingStudent == survivingStudent1) ? survivingStudent2 : survivingStudent1;
+        mergedStudentIds.put(duplicateStudent.getId(), survivingStudent.getId());
+    }
+
+    /**
+     * Returns the Student which is left after all merges of this run
+     * @param studentId
+     * @return
+     */
+    private Student getSurvivingStudent(Long studentId){
+        while (mergedStudentIds.containsKey(studentId)){
+            studentId = mergedStudentIds.get(studentId);
+        }
+        return studentDao.load(studentId);
     }
 }
@@ -0,0 +1,222 @@
+package org.literacyapp.authentication.thread;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.literacyapp.LiteracyApplication;
+import org.literacyapp.authentication.helper.FeatureVectorHelper;
+import org.literacyapp.authentication.recognition.RecognitionDecisionPolicy;
+import org.literacyapp.authentication.recognition.RecognitionResult;
+import org.literacyapp.authentication.recognition.StudentEmbeddingIndex;
+import org.literacyapp.authentication.recognition.StudentSearchResult;
+import org.literacyapp.authentication.recognition.TensorFlowModelHolder;
+import org.literacyapp.contentprovider.dao.StudentDao;
+import org.literacyapp.contentprovider.model.Student;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived worker for face recognitions, which replaces starting a new Thread for every recognition attempt.
+ * Recognitions are processed in two pipelined stages, each running on its own thread with a bounded queue:
+ *      1. Feature extraction: holds a reference to the shared TensorFlow model and extracts the featureVector of a face image
+ *      2. Scoring: searches the nearest Students in the StudentEmbeddingIndex and applies the RecognitionDecisionPolicy
+ * While a featureVector is being scored, the next face image can already be passed through the Neural Network.
+ * If a queue is full, submitting blocks until there is space again.
+ */
+
+public class RecognitionWorker {
+
+    static final double SIMILARITY_THRESHOLD = 0.5;
+    // Minimum difference between the similarity of the most and the second most similar Student
+    private static final double SIMILARITY_MARGIN = 0.05;
+    private static final int NUMBER_OF_NEAREST_STUDENTS = 5;
+    private static final RecognitionDecisionPolicy DECISION_POLICY = new RecognitionDecisionPolicy(SIMILARITY_THRESHOLD, SIMILARITY_MARGIN);
+    private static final int QUEUE_CAPACITY = 8;
+
+    private final ThreadPoolExecutor extractionExecutor;
+    private final ThreadPoolExecutor scoringExecutor;
+    private final TensorFlowModelHolder tensorFlowModelHolder;
+    private final Future<Boolean> tensorFlowFuture;
+    // Guarded by this
+    private boolean tensorFlowAcquired;
+    private boolean shutdown;
+    private final StudentEmbeddingIndex studentEmbeddingIndex;
+    private final StudentDao studentDao;
+    // Only accessed from the scoring thread
+    private final StudentSearchResult studentSearchResult;
+
+    public RecognitionWorker(Context context){
+        LiteracyApplication literacyApplication = (LiteracyApplication) context.getApplicationContext();
+        studentEmbeddingIndex = literacyApplication.getStudentEmbeddingIndex();
+        studentDao = literacyApplication.getDaoSession().getStudentDao();
+        tensorFlowModelHolder = literacyApplication.getTensorFlowModelHolder();
+        studentSearchResult = new StudentSearchResult(NUMBER_OF_NEAREST_STUDENTS);
+        extractionExecutor = createExecutor("RecognitionWorker-Extraction");
+        scoringExecutor = createExecutor("RecognitionWorker-Scoring");
+
+        // Acquire the shared TensorFlow model as the first task of the extraction thread, it is only loaded if no other user holds it yet
+        tensorFlowFuture = extractionExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return acquireTensorFlow();
+            }
+        });
+    }
+
+    /**
+     * Returns true as soon as the TensorFlow model has been acquired
+     * @return
+     */
+    public boolean isReady(){
+        return tensorFlowFuture.isDone();
+    }
+
+    /**
+     * Recognize the Student of a face image
+     * @param img - Preprocessed face image
+     * @param student - Student which should be skipped during the recognition (e.g. during merging) or null
+     * @return
+     */
+    public Future<RecognitionResult> submit(final Mat img, Student student){
+        Future<float[]> featureVectorFuture = extractionExecutor.submit(new Callable<float[]>() {
+            @Override
+            public float[] call() throws Exception {
+                if (!tensorFlowFuture.get()){
+                    return null;
+                }
+                return FeatureVectorHelper.toFloatArray(tensorFlowModelHolder.getFeatureVector(img));
+            }
+        });
+        return submitScoring(featureVectorFuture, null, student);
+    }
+
+    /**
+     * Recognize the Student of an already extracted featureVector (e.g. a meanFeatureVector)
+     * @param featureVector
+     * @param student - Student which should be skipped during the recognition (e.g. during merging) or null
+     * @return
+     */
+    public Future<RecognitionResult> submitFeatureVector(float[] featureVector, Student student){
+        return submitScoring(null, featureVector, student);
+    }
+
+    private Future<RecognitionResult> submitScoring(final Future<float[]> featureVectorFuture, final float[] featureVector, final Student student){
+        return scoringExecutor.submit(new Callable<RecognitionResult>() {
+            @Override
+            public RecognitionResult call() throws Exception {
+                float[] featureVectorToRecognize = featureVector;
+                if (featureVectorFuture != null){
+                    featureVectorToRecognize = featureVectorFuture.get();
+                }
+                if (featureVectorToRecognize == null){
+                    Log.w(getClass().getName(), "No featureVector available for the recognition");
+                    return RecognitionResult.empty();
+                }
+                return getMostSimilarStudentsIfInThreshold(featureVectorToRecognize, student);
+            }
+        });
+    }
+
+    /**
+     * Returns the nearest Students if the cosineSimilarity was above the threshold
+     * Additionally the identifiedStudent is set using the RecognitionDecisionPolicy
+     * @param featureVectorToRecognize
+     * @param student
+     * @return
+     */
+    private RecognitionResult getMostSimilarStudentsIfInThreshold(float[] featureVectorToRecognize, Student student){
+        long excludedStudentId = 0;
+        if ((student != null) && (student.getId() != null)){
+            // Skip if the students are identical
+            excludedStudentId = student.getId();
+        }
+        studentEmbeddingIndex.search(featureVectorToRecognize, excludedStudentId, studentSearchResult);
+        List<Student> studentsInThreshold = new ArrayList<>();
+        for (int rank = 0; rank < studentSearchResult.size(); rank++){
+            float absoluteCosineSimilarity = studentSearchResult.getScore(rank);
+            Log.i(getClass().getName(), "getMostSimilarStudentsIfInThreshold: absoluteCosineSimilarity: " + absoluteCosineSimilarity + " with studentId: " + studentSearchResult.getStudentId(rank));
+            if (absoluteCosineSimilarity > SIMILARITY_THRESHOLD){
+                Student currentStudent = studentDao.load(studentSearchResult.getStudentId(rank));
+                if (currentStudent != null){
+                    studentsInThreshold.add(currentStudent);
+                }
+            }
+        }
+        Student identifiedStudent = null;
+        long identifiedStudentId = DECISION_POLICY.getRecognizedStudentId(studentSearchResult);
+        if (identifiedStudentId != 0){
+            identifiedStudent = studentDao.load(identifiedStudentId);
+        }
+        return new RecognitionResult(studentsInThreshold, identifiedStudent);
+    }
+
+    private boolean acquireTensorFlow(){
+        boolean acquired = tensorFlowModelHolder.acquire();
+        synchronized (this){
+            if (acquired && shutdown){
+                // The worker has been shut down while the model was loading
+                tensorFlowModelHolder.release();
+                return false;
+            }
+            tensorFlowAcquired = acquired;
+        }
+        return acquired;
+    }
+
+    /**
+     * Stop both stages, pending recognitions are cancelled and the reference to the TensorFlow model is released
+     */
+    public void shutdown(){
+        Log.i(getClass().getName(), "shutdown");
+        synchronized (this){
+            shutdown = true;
+            if (tensorFlowAcquired){
+                tensorFlowAcquired = false;
+                tensorFlowModelHolder.release();
+            }
+        }
+        extractionExecutor.shutdownNow();
+        scoringExecutor.shutdownNow();
+    }
+
+    public boolean isShutdown(){
+        return extractionExecutor.isShutdown();
+    }
+
+    private static ThreadPoolExecutor createExecutor(final String threadName){
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()){
+                    throw new RejectedExecutionException(threadName + " has been shut down");
+                }
+                // Block the submitting thread until there is space in the queue
+                try {
+                    executor.getQueue().put(runnable);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+            }
+        });
+        return executor;
+    }
+}
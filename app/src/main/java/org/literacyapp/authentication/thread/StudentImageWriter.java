@@ -0,0 +1,463 @@
+package org.literacyapp.authentication.thread;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.literacyapp.LiteracyApplication;
+import org.literacyapp.authentication.helper.FeatureVectorHelper;
+import org.literacyapp.authentication.helper.StudentImageContainer;
+import org.literacyapp.authentication.recognition.IncrementalMeanTrainer;
+import org.literacyapp.authentication.recognition.TensorFlowModelHolder;
+import org.literacyapp.contentprovider.dao.DaoSession;
+import org.literacyapp.contentprovider.model.Device;
+import org.literacyapp.contentprovider.model.StudentImage;
+import org.literacyapp.contentprovider.model.StudentImageFeature;
+import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
+import org.literacyapp.receiver.BootReceiver;
+import org.literacyapp.util.StudentHelper;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.zhaw.facerecognitionlibrary.Helpers.FileHelper;
+import ch.zhaw.facerecognitionlibrary.Helpers.MatName;
+
+/**
+ * Write-behind stage for the images of one StudentImageCollectionEvent.
+ * Every accepted image is encoded and stored in a pending folder as soon as it has been captured, so it doesn't have to be kept in memory.
+ * The StudentImageCollectionEvent and its StudentImages are inserted in one transaction when the collection is committed.
+ * All tasks run in order on a single background thread with a bounded queue, the caller blocks if the queue is full.
+ * Optionally the featureVectors are extracted on a second background thread while the images are collected, so the StudentImageFeatures
+ * are inserted together with the StudentImages and the TrainingThread doesn't have to read and decode the images again.
+ * Optionally all images of the StudentImageCollectionEvent are packed into one StudentImageContainer instead of one PNG file per image.
+ */
+
+public class StudentImageWriter {
+
+    private static final int MAX_PENDING_TASKS = 4;
+    private static final String PENDING_FOLDER_PREFIX = "pending_";
+
+    private final Context context;
+    private final DaoSession daoSession;
+    private final Device device;
+    private final File pendingFolder;
+    private final File pendingContainerFile;
+    private StudentImageContainer.Writer containerWriter;
+    // Slots of the written images in the StudentImageContainer, only used on the background thread
+    private final Map<String, Integer> containerSlots = new HashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final TensorFlowModelHolder tensorFlowModelHolder;
+    private final ExecutorService extractionExecutor;
+    private final Future<Boolean> modelAcquired;
+    private final Map<String, FeatureVectorExtraction> featureVectors = new ConcurrentHashMap<>();
+    private int numberOfImages;
+
+    /**
+     * @param context
+     * @param device
+     * @param extractFeatures - Extract the featureVectors during the collection instead of the TrainingThread
+     * @param packImages - Store the images in one StudentImageContainer instead of PNG files
+     */
+    public StudentImageWriter(Context context, Device device, boolean extractFeatures, boolean packImages){
+        this.context = context.getApplicationContext();
+        LiteracyApplication literacyApplication = (LiteracyApplication) this.context;
+        daoSession = literacyApplication.getDaoSession();
+        this.device = device;
+        if (extractFeatures){
+            tensorFlowModelHolder = literacyApplication.getTensorFlowModelHolder();
+            extractionExecutor = Executors.newSingleThreadExecutor();
+            // Load the model while the first images are being collected
+            modelAcquired = extractionExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return tensorFlowModelHolder.acquire();
+                }
+            });
+        } else {
+            tensorFlowModelHolder = null;
+            extractionExecutor = null;
+            modelAcquired = null;
+        }
+        pendingFolder = new File(StudentHelper.getStudentImageDirectory() + "/" + device.getDeviceId() + "/" + PENDING_FOLDER_PREFIX + System.currentTimeMillis());
+        pendingContainerFile = packImages ? new File(pendingFolder.getAbsolutePath() + StudentImageContainer.FILE_EXTENSION) : null;
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_TASKS), new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()){
+                    throw new RejectedExecutionException("StudentImageWriter has already been committed or aborted");
+                }
+                // Block instead of running the task on the caller, so the order of the tasks is kept
+                try {
+                    executor.getQueue().put(runnable);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Store the image in the background, it is released afterwards and must not be used by the caller anymore
+     * @param img
+     * @param quality - Quality of the image, which is stored in the StudentImageContainer
+     * @return the name of the image, which is used for commit and discard
+     */
+    public String write(final Mat img, final double quality){
+        final long timeCollected = System.currentTimeMillis();
+        final String imageName = Integer.toString(numberOfImages++);
+        // The image is released by the last of the two tasks using it
+        final AtomicInteger imageUsers = new AtomicInteger(extractionExecutor != null ? 2 : 1);
+        if (extractionExecutor != null){
+            FeatureVectorExtraction featureVectorExtraction = new FeatureVectorExtraction(img, imageUsers);
+            featureVectorExtraction.future = extractionExecutor.submit(featureVectorExtraction);
+            featureVectors.put(imageName, featureVectorExtraction);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingContainerFile != null){
+                    appendToContainer(imageName, img, timeCollected, quality);
+                } else {
+                    pendingFolder.mkdirs();
+                    MatName matName = new MatName(imageName, img);
+                    new FileHelper().saveMatToImage(matName, pendingFolder.getAbsolutePath() + "/");
+                }
+                releaseImage(img, imageUsers);
+            }
+        });
+        return imageName;
+    }
+
+    private static void releaseImage(Mat img, AtomicInteger imageUsers){
+        if (imageUsers.decrementAndGet() == 0){
+            img.release();
+        }
+    }
+
+    /**
+     * Extraction of the featureVector of one image, which can be cancelled if the image is discarded before it has been started
+     */
+    private class FeatureVectorExtraction implements Callable<float[]> {
+
+        private final Mat img;
+        private final AtomicInteger imageUsers;
+        // Set by the extraction or the cancellation, whichever comes first, so the image is released exactly once
+        private final AtomicBoolean started = new AtomicBoolean();
+        private Future<float[]> future;
+
+        FeatureVectorExtraction(Mat img, AtomicInteger imageUsers){
+            this.img = img;
+            this.imageUsers = imageUsers;
+        }
+
+        @Override
+        public float[] call() throws Exception {
+            if (!started.compareAndSet(false, true)){
+                // Has been cancelled
+                return null;
+            }
+            try {
+                return extractFeatureVector(img);
+            } finally {
+                releaseImage(img, imageUsers);
+            }
+        }
+
+        /**
+         * Skip the extraction if it hasn't been started yet, a running extraction is finished
+         */
+        void cancel(){
+            future.cancel(false);
+            if (started.compareAndSet(false, true)){
+                releaseImage(img, imageUsers);
+            }
+        }
+    }
+
+    private void appendToContainer(String imageName, Mat img, long timeCollected, double quality){
+        try {
+            if (containerWriter == null){
+                pendingContainerFile.getParentFile().mkdirs();
+                containerWriter = new StudentImageContainer.Writer(pendingContainerFile);
+            }
+            containerSlots.put(imageName, containerWriter.append(img, timeCollected, (float) quality));
+        } catch (IOException e) {
+            Log.e(getClass().getName(), "appendToContainer", e);
+        }
+    }
+
+    /**
+     * Returns the featureVector of the image or null if the model is not available
+     * @param img
+     * @return
+     */
+    private float[] extractFeatureVector(Mat img) throws InterruptedException, ExecutionException {
+        if (!modelAcquired.get()){
+            return null;
+        }
+        // Same three channels as the image loaded from the PNG file by the TrainingThread
+        Mat colorImg = img;
+        if (img.channels() == 4){
+            colorImg = new Mat();
+            Imgproc.cvtColor(img, colorImg, Imgproc.COLOR_RGBA2RGB);
+        } else if (img.channels() == 1){
+            colorImg = new Mat();
+            Imgproc.cvtColor(img, colorImg, Imgproc.COLOR_GRAY2RGB);
+        }
+        float[] featureVector = FeatureVectorHelper.toFloatArray(tensorFlowModelHolder.getFeatureVector(colorImg));
+        if (colorImg != img){
+            colorImg.release();
+        }
+        return ((featureVector != null) && (featureVector.length > 0)) ? featureVector : null;
+    }
+
+    /**
+     * Returns the extracted featureVector of the image or null if it isn't available
+     * @param imageName
+     * @return
+     */
+    private float[] getFeatureVector(String imageName){
+        FeatureVectorExtraction featureVectorExtraction = featureVectors.get(imageName);
+        if (featureVectorExtraction == null){
+            return null;
+        }
+        try {
+            return featureVectorExtraction.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(getClass().getName(), null, e);
+        }
+        return null;
+    }
+
+    /**
+     * Stop the feature extraction after the already submitted images and give the model back
+     */
+    private void shutdownExtraction(){
+        if (extractionExecutor == null){
+            return;
+        }
+        extractionExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (modelAcquired.get()){
+                        tensorFlowModelHolder.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(getClass().getName(), null, e);
+                }
+            }
+        });
+        extractionExecutor.shutdown();
+    }
+
+    /**
+     * Delete an already written image, which won't be part of the StudentImageCollectionEvent
+     * @param imageName
+     */
+    public void discard(final String imageName){
+        // Cancel the extraction right away, so the CPU isn't spent on an image which won't be stored
+        FeatureVectorExtraction featureVectorExtraction = featureVectors.remove(imageName);
+        if (featureVectorExtraction != null){
+            featureVectorExtraction.cancel();
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingContainerFile != null){
+                    // The slot stays unused in the StudentImageContainer
+                    containerSlots.remove(imageName);
+                    return;
+                }
+                File imageFile = getImageFile(pendingFolder, imageName);
+                if (imageFile.exists() && !imageFile.delete()){
+                    Log.w(getClass().getName(), "discard: " + imageFile.getAbsolutePath() + " couldn't be deleted");
+                }
+            }
+        });
+    }
+
+    /**
+     * Insert the StudentImageCollectionEvent with the given images in one transaction after all images have been written.
+     * Returns immediately, afterwards no more images can be written.
+     * @param imageNames
+     */
+    public void commit(final List<String> imageNames){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final StudentImageCollectionEvent studentImageCollectionEvent = new StudentImageCollectionEvent();
+                studentImageCollectionEvent.setTime(Calendar.getInstance());
+                studentImageCollectionEvent.setDevice(device);
+                final List<StudentImage> studentImages = new ArrayList<>();
+                // Images which couldn't be written are left out
+                final List<String> storedImageNames = new ArrayList<>();
+                if (pendingContainerFile != null){
+                    List<Integer> slots = new ArrayList<>();
+                    for (String imageName : imageNames){
+                        Integer slot = containerSlots.get(imageName);
+                        if (slot != null){
+                            slots.add(slot);
+                            storedImageNames.add(imageName);
+                        }
+                    }
+                    if (!finishContainer(studentImageCollectionEvent.getTime().getTimeInMillis(), slots)){
+                        storedImageNames.clear();
+                    }
+                } else {
+                    storedImageNames.addAll(imageNames);
+                }
+                if (storedImageNames.isEmpty()){
+                    Log.w(getClass().getName(), "commit: No StudentImages have been stored.");
+                    return;
+                }
+                // Wait for the featureVectors outside of the transaction
+                final List<float[]> studentImageFeatureVectors = new ArrayList<>();
+                for (String imageName : storedImageNames){
+                    studentImageFeatureVectors.add(getFeatureVector(imageName));
+                }
+                daoSession.runInTx(new Runnable() {
+                    @Override
+                    public void run() {
+                        Long studentImageCollectionEventId = daoSession.getStudentImageCollectionEventDao().insert(studentImageCollectionEvent);
+                        // Use the id of the StudentImageCollectionEvent as folder or file name like before
+                        File pendingFile = (pendingContainerFile != null) ? pendingContainerFile : pendingFolder;
+                        File file = new File(pendingFile.getParentFile(), studentImageCollectionEventId + ((pendingContainerFile != null) ? StudentImageContainer.FILE_EXTENSION : ""));
+                        if (!pendingFile.renameTo(file)){
+                            Log.w(getClass().getName(), "commit: " + pendingFile.getAbsolutePath() + " couldn't be renamed");
+                            file = pendingFile;
+                        }
+                        for (int i = 0; i < storedImageNames.size(); i++){
+                            StudentImage studentImage = new StudentImage();
+                            studentImage.setTimeCollected(Calendar.getInstance());
+                            if (pendingContainerFile != null){
+                                studentImage.setImageFileUrl(StudentImageContainer.getImageFileUrl(file, i));
+                            } else {
+                                studentImage.setImageFileUrl(getImageFile(file, storedImageNames.get(i)).getAbsolutePath());
+                            }
+                            studentImage.setStudentImageCollectionEvent(studentImageCollectionEvent);
+                            studentImages.add(studentImage);
+                        }
+                        daoSession.getStudentImageDao().insertInTx(studentImages);
+
+                        // StudentImages without a featureVector are extracted later by the TrainingThread
+                        int numberOfStudentImageFeatures = 0;
+                        for (int i = 0; i < studentImages.size(); i++){
+                            float[] featureVector = studentImageFeatureVectors.get(i);
+                            if (featureVector != null){
+                                StudentImage studentImage = studentImages.get(i);
+                                StudentImageFeature studentImageFeature = new StudentImageFeature(studentImage.getId(), Calendar.getInstance(), featureVector);
+                                daoSession.getStudentImageFeatureDao().insert(studentImageFeature);
+                                studentImage.setStudentImageFeature(studentImageFeature);
+                                IncrementalMeanTrainer.addFeatureVector(studentImageCollectionEvent, featureVector);
+                                numberOfStudentImageFeatures++;
+                            }
+                        }
+                        if (numberOfStudentImageFeatures > 0){
+                            daoSession.getStudentImageDao().updateInTx(studentImages);
+                            daoSession.getStudentImageCollectionEventDao().update(studentImageCollectionEvent);
+                        }
+                        Log.i(getClass().getName(), "commit: " + numberOfStudentImageFeatures + " StudentImageFeatures have been extracted during the collection.");
+                    }
+                });
+                Log.i(getClass().getName(), "commit: " + studentImages.size() + " StudentImages have been stored.");
+
+                // Initiate background job for face recognition training
+                BootReceiver.scheduleFaceRecognitionTranining(context);
+            }
+        });
+        executor.shutdown();
+        shutdownExtraction();
+    }
+
+    /**
+     * Delete all written images without inserting a StudentImageCollectionEvent, e.g. if the collection has been interrupted
+     */
+    public void abort(){
+        if (executor.isShutdown()){
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingContainerFile != null){
+                    closeContainer();
+                    pendingContainerFile.delete();
+                }
+                File[] files = pendingFolder.listFiles();
+                if (files != null){
+                    for (File file : files){
+                        file.delete();
+                    }
+                }
+                pendingFolder.delete();
+                Log.i(getClass().getName(), "abort: The pending StudentImages have been deleted.");
+            }
+        });
+        executor.shutdown();
+        shutdownExtraction();
+    }
+
+    /**
+     * Write the index and the header of the StudentImageContainer
+     * @param time
+     * @param slots
+     * @return true if the StudentImageContainer is complete
+     */
+    private boolean finishContainer(long time, List<Integer> slots){
+        if (containerWriter == null){
+            return false;
+        }
+        try {
+            containerWriter.finish(time, slots);
+            return true;
+        } catch (IOException e) {
+            Log.e(getClass().getName(), "finishContainer", e);
+            pendingContainerFile.delete();
+            return false;
+        } finally {
+            containerWriter = null;
+        }
+    }
+
+    private void closeContainer(){
+        if (containerWriter == null){
+            return;
+        }
+        try {
+            containerWriter.close();
+        } catch (IOException e) {
+            Log.e(getClass().getName(), "closeContainer", e);
+        }
+        containerWriter = null;
+    }
+
+    private static File getImageFile(File folder, String imageName){
+        return new File(folder, imageName + ".png");
+    }
+}
@@ -1,14 +1,16 @@
 package org.literacyapp.authentication.thread;
 
 import android.content.Context;
-import android.text.TextUtils;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
 import org.literacyapp.LiteracyApplication;
+import org.literacyapp.authentication.helper.AuthenticationHelper;
 import org.literacyapp.authentication.helper.AuthenticationInstructionHelper;
+import org.literacyapp.authentication.helper.FeatureVectorHelper;
+import org.literacyapp.authentication.helper.StudentImageContainer;
+import org.literacyapp.authentication.recognition.IncrementalMeanTrainer;
+import org.literacyapp.authentication.recognition.StudentEmbeddingIndex;
+import org.literacyapp.authentication.recognition.TensorFlowModelHolder;
 import org.literacyapp.contentprovider.dao.DaoSession;
 import org.literacyapp.contentprovider.dao.StudentDao;
 import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
@@ -19,39 +21,49 @@ import org.literacyapp.contentprovider.model.StudentImage;
 import org.literacyapp.contentprovider.model.StudentImageFeature;
 import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
 import org.literacyapp.service.FaceRecognitionTrainingJobService;
-import org.literacyapp.util.AiHelper;
 import org.literacyapp.util.StudentHelper;
 import org.opencv.android.OpenCVLoader;
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.utils.Converters;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-
-import ch.zhaw.facerecognitionlibrary.Recognition.TensorFlow;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TrainingThread extends Thread {
 
-    private static final String MODEL_DOWNLOAD_LINK = "https://drive.google.com/open?id=0B3jQsJcchixPek9lU3BaOHpCUGc";
+    // One StudentImageCollectionEvent consists of the StudentImages selected during the collection
+    private static final int FEATURE_EXTRACTION_BATCH_SIZE = AuthenticationHelper.NUMBER_OF_SELECTED_IMAGES;
+    private static final int NUMBER_OF_DECODER_THREADS = 2;
     private Context context;
     private DaoSession daoSession;
     private StudentImageDao studentImageDao;
     private StudentImageFeatureDao studentImageFeatureDao;
     private StudentImageCollectionEventDao studentImageCollectionEventDao;
     private StudentDao studentDao;
-    private Gson gson;
+    private StudentEmbeddingIndex studentEmbeddingIndex;
+    private TensorFlowModelHolder tensorFlowModelHolder;
+    private IncrementalMeanTrainer incrementalMeanTrainer;
     private FaceRecognitionTrainingJobService trainingJobService;
+    // Opened StudentImageContainers, guarded by itself because the decoder threads can't use the lock of the TrainingThread
+    private final Map<String, StudentImageContainer> studentImageContainers = new HashMap<>();
 
     static {
         if (!OpenCVLoader.initDebug()) {
@@ -81,12 +93,15 @@ public class TrainingThread extends Thread {
         studentImageFeatureDao = daoSession.getStudentImageFeatureDao();
         studentImageCollectionEventDao = daoSession.getStudentImageCollectionEventDao();
         studentDao = daoSession.getStudentDao();
-        gson = new Gson();
+        studentEmbeddingIndex = literacyApplication.getStudentEmbeddingIndex();
+        tensorFlowModelHolder = literacyApplication.getTensorFlowModelHolder();
+        incrementalMeanTrainer = literacyApplication.getIncrementalMeanTrainer();
     }
 
     /**
      * Get all the StudentImages where the features haven't been extracted yet
      * Extract features for every StudentImage and store them as StudentImageFeature
+     * The StudentImages are processed in batches, while the features of one batch are extracted, the next batch is already being decoded
      */
     public synchronized void extractFeatures(){
         List<StudentImage> studentImageList = studentImageDao.queryBuilder()
@@ -94,82 +109,196 @@ public class TrainingThread extends Thread {
                 .list();
         Log.i(getClass().getName(), "Number of StudentImages, where the features haven't been extracted yet: " + studentImageList.size());
         if (studentImageList.size() > 0){
-            TensorFlow tensorFlow = getInitializedTensorFlow();
-            if (tensorFlow != null){
-                for(StudentImage studentImage : studentImageList){
-                    if (isStudentImageValid(studentImage)){
-                        String featureVectorString = getFeatureVectorString(tensorFlow, studentImage);
-                        if (!TextUtils.isEmpty(featureVectorString)){
-                            storeStudentImageFeature(studentImage, featureVectorString);
-                        } else {
-                            Log.w(getClass().getName(), "StudentImageCollectionEvent with the id " + studentImage.getStudentImageCollectionEventId() + " will be deleted recursively because the feature extraction failed.");
-                            deleteStudentImagesRecursive(studentImage, "the feature extraction failed.");
+            if (tensorFlowModelHolder.acquire()){
+                ExecutorService decoderExecutor = Executors.newFixedThreadPool(NUMBER_OF_DECODER_THREADS);
+                try {
+                    Iterator<StudentImage> studentImageIterator = studentImageList.iterator();
+                    List<StudentImage> currentBatch = getNextBatch(studentImageIterator);
+                    List<Future<Mat>> currentImages = decodeBatch(decoderExecutor, currentBatch);
+                    while (!currentBatch.isEmpty()){
+                        // Decode the next batch while the features of the current batch are extracted
+                        List<StudentImage> nextBatch = getNextBatch(studentImageIterator);
+                        List<Future<Mat>> nextImages = decodeBatch(decoderExecutor, nextBatch);
+
+                        List<float[]> featureVectors = getFeatureVectors(currentBatch, currentImages);
+                        if (Thread.currentThread().isInterrupted()){
+                            Log.w(getClass().getName(), "extractFeatures has been interrupted");
+                            break;
                         }
+                        storeStudentImageFeatures(currentBatch, featureVectors);
+                        for (int i = 0; i < currentBatch.size(); i++){
+                            StudentImage studentImage = currentBatch.get(i);
+                            if ((featureVectors.get(i) == null) && (studentImageDao.load(studentImage.getId()) != null)){
+                                Log.w(getClass().getName(), "StudentImageCollectionEvent with the id " + studentImage.getStudentImageCollectionEventId() + " will be deleted recursively because the feature extraction failed.");
+                                deleteStudentImagesRecursive(studentImage, "the feature extraction failed.");
+                            }
+                        }
+
+                        currentBatch = nextBatch;
+                        currentImages = nextImages;
                     }
+                } finally {
+                    decoderExecutor.shutdownNow();
+                    closeStudentImageContainers();
+                    tensorFlowModelHolder.release();
                 }
             }
         }
     }
 
     /**
-     * Stores a StudentImageFeature to the database
-     * @param studentImage - StudentImage
-     * @param featureVectorString - Extracted feature vector serialized to a string
+     * Returns the next valid StudentImages, at most FEATURE_EXTRACTION_BATCH_SIZE
+     * @param studentImageIterator
+     * @return
      */
-    private synchronized void storeStudentImageFeature(StudentImage studentImage, String featureVectorString){
-        StudentImageFeature studentImageFeature = new StudentImageFeature(studentImage.getId(), Calendar.getInstance(), featureVectorString);
-        studentImage.setStudentImageFeature(studentImageFeature);
-        studentImageFeatureDao.insert(studentImageFeature);
-        studentImageDao.update(studentImage);
-        Log.i(getClass().getName(), "StudentImageFeature with Id " + studentImageFeature.getId() + " for StudentImage with Id " + studentImage.getId() + " has been extracted and stored.");
+    private synchronized List<StudentImage> getNextBatch(Iterator<StudentImage> studentImageIterator){
+        List<StudentImage> batch = new ArrayList<>();
+        while ((batch.size() < FEATURE_EXTRACTION_BATCH_SIZE) && studentImageIterator.hasNext()){
+            StudentImage studentImage = studentImageIterator.next();
+            // The StudentImage might have been deleted already together with its StudentImageCollectionEvent
+            if ((studentImageDao.load(studentImage.getId()) != null) && isStudentImageValid(studentImage)){
+                batch.add(studentImage);
+            }
+        }
+        return batch;
     }
 
     /**
-     * Load image into OpenCV Mat object
-     * Extract features from TensorFlow model
-     * @param tensorFlow
-     * @param studentImage
+     * Load the images of a batch into OpenCV Mat objects on the decoder threads
+     * @param decoderExecutor
+     * @param batch
      * @return
      */
-    private synchronized String getFeatureVectorString(TensorFlow tensorFlow, StudentImage studentImage){
-        // Load image into OpenCV Mat object
-        Mat img = Imgcodecs.imread(studentImage.getImageFileUrl());
-        Log.i(getClass().getName(), "StudentImage has been loaded from file " + studentImage.getImageFileUrl());
-        // Extract features from TensorFlow model
-        Mat featureVector = tensorFlow.getFeatureVector(img);
-        List<Float> featureVectorList = new ArrayList<>();
-        Converters.Mat_to_vector_float(featureVector, featureVectorList);
-        String serializedFeatureVector = gson.toJson(featureVectorList);
-        Log.i(getClass().getName(), "Feature vector has been extracted for StudentImage: " + studentImage.getId());
-        return serializedFeatureVector;
+    private List<Future<Mat>> decodeBatch(ExecutorService decoderExecutor, List<StudentImage> batch){
+        List<Future<Mat>> images = new ArrayList<>();
+        for (final StudentImage studentImage : batch){
+            images.add(decoderExecutor.submit(new Callable<Mat>() {
+                @Override
+                public Mat call() throws Exception {
+                    Mat img = loadStudentImage(studentImage);
+                    Log.i(getClass().getName(), "StudentImage has been loaded from file " + studentImage.getImageFileUrl());
+                    return img;
+                }
+            }));
+        }
+        return images;
     }
 
     /**
-     * Initialize TensorFlow model
+     * Load the image of a StudentImage, which is either a PNG file or part of a StudentImageContainer
+     * @param studentImage
      * @return
+     * @throws IOException
      */
-    public synchronized TensorFlow getInitializedTensorFlow(){
-        File modelFile = new File(AiHelper.getModelDirectory(), "vgg_faces.pb");
-        if (!modelFile.exists()){
-            File modelDownloadFile = createModelDownloadFile(modelFile);
-            String logMessage = "Model file: " + modelFile.getAbsolutePath() + " doesn't exist. Please copy it manually";
-            if (modelDownloadFile != null){
-                logMessage = logMessage + ". Find the download link in the file " + modelDownloadFile.getAbsolutePath();
+    private Mat loadStudentImage(StudentImage studentImage) throws IOException {
+        String imageFileUrl = studentImage.getImageFileUrl();
+        if (!StudentImageContainer.isContainerUrl(imageFileUrl)){
+            return Imgcodecs.imread(imageFileUrl);
+        }
+        String containerPath = StudentImageContainer.getContainerPath(imageFileUrl);
+        StudentImageContainer studentImageContainer;
+        synchronized (studentImageContainers){
+            studentImageContainer = studentImageContainers.get(containerPath);
+            if (studentImageContainer == null){
+                studentImageContainer = StudentImageContainer.open(new File(containerPath));
+                studentImageContainers.put(containerPath, studentImageContainer);
+            }
+        }
+        return studentImageContainer.getImage(StudentImageContainer.getIndex(imageFileUrl));
+    }
 
-            } else {
-                logMessage = logMessage + " from " + MODEL_DOWNLOAD_LINK;
+    private void closeStudentImageContainers(){
+        synchronized (studentImageContainers){
+            for (StudentImageContainer studentImageContainer : studentImageContainers.values()){
+                try {
+                    studentImageContainer.close();
+                } catch (IOException e) {
+                    Log.e(getClass().getName(), null, e);
+                }
             }
-            Log.e(getClass().getName(), logMessage);
+            studentImageContainers.clear();
+        }
+    }
 
-            return null;
+    /**
+     * Returns the file of a StudentImage, for StudentImages in a StudentImageContainer this is the container file
+     * @param studentImage
+     * @return
+     */
+    private static File getStudentImageFile(StudentImage studentImage){
+        String imageFileUrl = studentImage.getImageFileUrl();
+        if (StudentImageContainer.isContainerUrl(imageFileUrl)){
+            return new File(StudentImageContainer.getContainerPath(imageFileUrl));
         }
-        int inputSize = 224;
-        int outputSize = 4096;
-        int imageMean = 128;
-        String inputLayer = "Placeholder";
-        String outputLayer = "fc7/fc7";
-        TensorFlow tensorFlow = new TensorFlow(context, inputSize, imageMean, outputSize, inputLayer, outputLayer, modelFile.getAbsolutePath());
-        return tensorFlow;
+        return new File(imageFileUrl);
+    }
+
+    /**
+     * Extract features from the shared TensorFlow model for every decoded image of a batch
+     * @param batch
+     * @param images
+     * @return featureVectors in the order of the batch, null if the extraction failed
+     */
+    private synchronized List<float[]> getFeatureVectors(List<StudentImage> batch, List<Future<Mat>> images){
+        List<float[]> featureVectors = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++){
+            float[] featureVector = null;
+            try {
+                Mat img = images.get(i).get();
+                if (!img.empty()){
+                    featureVector = FeatureVectorHelper.toFloatArray(tensorFlowModelHolder.getFeatureVector(img));
+                    Log.i(getClass().getName(), "Feature vector has been extracted for StudentImage: " + batch.get(i).getId());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(getClass().getName(), null, e);
+            }
+            if ((featureVector != null) && (featureVector.length == 0)){
+                featureVector = null;
+            }
+            featureVectors.add(featureVector);
+        }
+        return featureVectors;
+    }
+
+    /**
+     * Stores the StudentImageFeatures of a batch to the database in a single transaction
+     * The running sums of the affected StudentImageCollectionEvents are updated in the same transaction
+     * @param batch
+     * @param featureVectors - Extracted feature vectors, StudentImages without a feature vector are skipped
+     */
+    private synchronized void storeStudentImageFeatures(final List<StudentImage> batch, final List<float[]> featureVectors){
+        daoSession.runInTx(new Runnable() {
+            @Override
+            public void run() {
+                Set<StudentImageCollectionEvent> updatedStudentImageCollectionEvents = new HashSet<>();
+                for (int i = 0; i < batch.size(); i++){
+                    if (featureVectors.get(i) != null){
+                        StudentImage studentImage = batch.get(i);
+                        storeStudentImageFeature(studentImage, featureVectors.get(i));
+                        StudentImageCollectionEvent studentImageCollectionEvent = studentImage.getStudentImageCollectionEvent();
+                        IncrementalMeanTrainer.addFeatureVector(studentImageCollectionEvent, featureVectors.get(i));
+                        updatedStudentImageCollectionEvents.add(studentImageCollectionEvent);
+                    }
+                }
+                studentImageCollectionEventDao.updateInTx(updatedStudentImageCollectionEvents);
+            }
+        });
+    }
+
+    /**
+     * Stores a StudentImageFeature to the database
+     * @param studentImage - StudentImage
+     * @param featureVector - Extracted feature vector
+     */
+    private synchronized void storeStudentImageFeature(StudentImage studentImage, float[] featureVector){
+        StudentImageFeature studentImageFeature = new StudentImageFeature(studentImage.getId(), Calendar.getInstance(), featureVector);
+        studentImage.setStudentImageFeature(studentImageFeature);
+        studentImageFeatureDao.insert(studentImageFeature);
+        studentImageDao.update(studentImage);
+        Log.i(getClass().getName(), "StudentImageFeature with Id " + studentImageFeature.getId() + " for StudentImage with Id " + studentImage.getId() + " has been extracted and stored.");
     }
 
     /**
@@ -182,7 +311,7 @@ public class TrainingThread extends Thread {
      */
     private synchronized boolean isStudentImageValid(StudentImage studentImage){
         boolean valid = true;
-        File studentImageFile = new File(studentImage.getImageFileUrl());
+        File studentImageFile = getStudentImageFile(studentImage);
         if (studentImage.getStudentImageCollectionEvent() == null){
             studentImageDao.delete(studentImage);
             Log.i(getClass().getName(), "StudentImage with the id " + studentImage.getId() + " has been deleted.");
@@ -217,7 +346,7 @@ public class TrainingThread extends Thread {
     }
 
     /**
-     * Calculate the meanFeatureVector for each StudentImageCollectionEvent using the extracted featureVectors
+     * Calculate the meanFeatureVector for each StudentImageCollectionEvent using the running sum of the extracted featureVectors
      */
     public synchronized void trainClassifier(){
         Log.i(getClass().getName(), "trainClassifier");
@@ -231,26 +360,15 @@ public class TrainingThread extends Thread {
                         .where(StudentImageDao.Properties.StudentImageFeatureId.eq(0))
                         .count();
                 // Skip calculation of meanFeatureVector if not all features have been extracted yet
-                if (studentImagesWithoutExtractedFeatures == 0){
-                    Mat allFeatureVectors = new Mat();
-                    List<StudentImage> studentImages = studentImageCollectionEvent.getStudentImages();
-                    for (StudentImage studentImage : studentImages){
-                        List<Float> featureVectorList = gson.fromJson(studentImage.getStudentImageFeature().getFeatureVector(), new TypeToken<List<Float>>(){}.getType());
-                        Mat featureVector = Converters.vector_float_to_Mat(featureVectorList);
-                        allFeatureVectors.push_back(featureVector.reshape(1, 1));
-                    }
+                if ((studentImagesWithoutExtractedFeatures == 0) && (studentImageCollectionEvent.getFeatureVectorCount() > 0)){
+                    studentImageCollectionEvent.setMeanFeatureVector(IncrementalMeanTrainer.getMeanFeatureVector(studentImageCollectionEvent));
 
-                    Mat meanFeatureVector = new Mat();
-                    Core.reduce(allFeatureVectors, meanFeatureVector, 0, Core.REDUCE_AVG);
-                    List<Float> meanFeatureVectorList = new ArrayList<>();
-                    Converters.Mat_to_vector_float(meanFeatureVector.reshape(1, meanFeatureVector.cols()), meanFeatureVectorList);
-                    String meanFeatureVectorString = gson.toJson(meanFeatureVectorList);
-                    studentImageCollectionEvent.setMeanFeatureVector(meanFeatureVectorString);
-
-                    Student student = createStudent(studentImages);
+                    Student student = createStudent(studentImageCollectionEvent.getStudentImages());
 
                     studentImageCollectionEvent.setStudent(student);
                     studentImageCollectionEventDao.update(studentImageCollectionEvent);
+                    incrementalMeanTrainer.addStudentImageCollectionEvent(studentImageCollectionEvent);
+                    studentEmbeddingIndex.put(studentImageCollectionEvent.getId(), student.getId(), studentImageCollectionEvent.getMeanFeatureVector());
                     Log.i(getClass().getName(), "StudentImageCollectionEvent with Id " + studentImageCollectionEvent.getId() + " has been trained in classifier");
                 } else {
                     Log.i(getClass().getName(), "trainClassifier: Calculation of meanFeatureVector has been skipped for the StudentImageCollectionEvent: " + studentImageCollectionEvent.getId() + " studentImagesWithoutExtractedFeatures: " + studentImagesWithoutExtractedFeatures);
@@ -284,26 +402,6 @@ public class TrainingThread extends Thread {
         return student;
     }
 
-    /**
-     * Create a text file with the TensorFlow model download linke in case the file doesn't exist
-     * @param modelFile
-     * @return
-     */
-    private File createModelDownloadFile(File modelFile){
-        File modelDownloadFile = new File(AiHelper.getModelDirectory(), "download_link.txt");
-        try {
-            FileWriter fileWriter = new FileWriter(modelDownloadFile, false);
-            fileWriter.append(MODEL_DOWNLOAD_LINK + "\n");
-            fileWriter.append("Copy to: " + modelFile.getAbsolutePath());
-            fileWriter.close();
-            Log.i(getClass().getName(), "Model download file has been created at " + modelDownloadFile.getAbsolutePath() + " with the link " + MODEL_DOWNLOAD_LINK);
-
-        } catch (IOException e) {
-            Log.e(getClass().getName(), null, e);
-        }
-        return modelDownloadFile;
-    }
-
     /**
      * Create the Avatar file for a Student using a StudentImage
      * @param studentImage
@@ -312,6 +410,23 @@ public class TrainingThread extends Thread {
     private File createAvatarFileFromStudentImage(StudentImage studentImage, Student student){
         String imageFilePath = StudentHelper.getStudentAvatarDirectory() + "/" + student.getUniqueId() + ".png";
         File avatarFile = new File(imageFilePath);
+        if (StudentImageContainer.isContainerUrl(studentImage.getImageFileUrl())){
+            // StudentImages in a StudentImageContainer are stored raw, so the image has to be encoded as PNG
+            try {
+                StudentImageContainer studentImageContainer = StudentImageContainer.open(getStudentImageFile(studentImage));
+                try {
+                    Mat img = studentImageContainer.getImage(StudentImageContainer.getIndex(studentImage.getImageFileUrl()));
+                    Imgcodecs.imwrite(avatarFile.getAbsolutePath(), img);
+                    img.release();
+                    Log.i(getClass().getName(), "createAvatarFileFromStudentImage: The StudentImage has been encoded from the StudentImageContainer " + studentImage.getImageFileUrl());
+                } finally {
+                    studentImageContainer.close();
+                }
+            } catch (IOException e) {
+                Log.e(getClass().getName(), null, e);
+            }
+            return avatarFile;
+        }
         try {
             Log.i(getClass().getName(), "createAvatarFileFromStudentImage: Preparing InputStream and OutputStream to copy the StudentImage into the Avatar directory");
             Log.i(getClass().getName(), "createAvatarFileFromStudentImage: InputStream with the file: " + studentImage.getImageFileUrl());
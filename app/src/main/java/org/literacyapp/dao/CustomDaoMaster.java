@@ -10,6 +10,8 @@ import org.literacyapp.contentprovider.dao.DaoMaster;
 import org.literacyapp.contentprovider.dao.JoinNumbersWithWordsDao;
 import org.literacyapp.contentprovider.dao.LetterDao;
 import org.literacyapp.contentprovider.dao.StoryBookDao;
+import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
+import org.literacyapp.contentprovider.dao.StudentImageFeatureDao;
 import org.literacyapp.contentprovider.dao.WordDao;
 import org.literacyapp.contentprovider.model.JoinNumbersWithWords;
 
@@ -78,6 +80,26 @@ public class CustomDaoMaster extends DaoMaster {
                 );
             }
 
+            if (oldVersion < 2000008) {
+                // The NOT NULL column "featureVectorCount" of the current schema has to exist before the data is restored
+                addFeatureVectorSumColumns(db);
+                // Add new tables and/or columns automatically (include only the DAO classes that have been modified)
+                DbMigrationHelper.migrate(db,
+                        StudentImageFeatureDao.class, // Changed "featureVector" from TEXT to BLOB
+                        StudentImageCollectionEventDao.class // Changed "meanFeatureVector" from TEXT to BLOB
+                );
+                // Convert the existing JSON feature vectors into the binary format
+                DbMigrationHelper.convertJsonFloatArraysToBlob(db, StudentImageFeatureDao.TABLENAME, StudentImageFeatureDao.Properties.FeatureVector.columnName);
+                DbMigrationHelper.convertJsonFloatArraysToBlob(db, StudentImageCollectionEventDao.TABLENAME, StudentImageCollectionEventDao.Properties.MeanFeatureVector.columnName);
+            }
+
+            if (oldVersion < 2000009) {
+                // Added "featureVectorSum" and "featureVectorCount", they already exist if the table has been migrated above
+                addFeatureVectorSumColumns(db);
+                // Initialize the running sums from the featureVectors which have already been extracted
+                DbMigrationHelper.initializeFeatureVectorSums(db);
+            }
+
 //            if (oldVersion < ???) {
 //                // Add new tables and/or columns automatically (include only the DAO classes that have been modified)
 //                DbMigrationHelper.migrate(db,
@@ -88,5 +110,10 @@ public class CustomDaoMaster extends DaoMaster {
             // If tables and/or columns have been renamed, add custom script.
 //            db.execSQL("...");
         }
+
+        private static void addFeatureVectorSumColumns(Database db) {
+            DbMigrationHelper.addColumnIfNotExists(db, StudentImageCollectionEventDao.TABLENAME, StudentImageCollectionEventDao.Properties.FeatureVectorSum.columnName, "BLOB");
+            DbMigrationHelper.addColumnIfNotExists(db, StudentImageCollectionEventDao.TABLENAME, StudentImageCollectionEventDao.Properties.FeatureVectorCount.columnName, "INTEGER NOT NULL DEFAULT 0");
+        }
     }
 }
@@ -5,9 +5,17 @@ import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
 import org.greenrobot.greendao.AbstractDao;
 import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.DatabaseStatement;
 import org.greenrobot.greendao.internal.DaoConfig;
+import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
+import org.literacyapp.contentprovider.dao.StudentImageDao;
+import org.literacyapp.contentprovider.dao.StudentImageFeatureDao;
+import org.literacyapp.contentprovider.dao.converter.FloatArrayConverter;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -120,6 +128,120 @@ public final class DbMigrationHelper {
         }
     }
 
+    /**
+     * Adds the column unless the table already contains it, e.g. because the table has been recreated by migrate
+     * with the current schema.
+     */
+    public static void addColumnIfNotExists(Database db, String tableName, String columnName, String columnDefinition) {
+        Log.i(DbMigrationHelper.class.getName(), "addColumnIfNotExists");
+
+        List<String> columns = getColumns(db, tableName);
+        if (columns.isEmpty()) {
+            // The table doesn't exist yet and will be created with all columns
+            Log.i(DbMigrationHelper.class.getName(), "Table " + tableName + " doesn't exist");
+            return;
+        }
+        if (columns.contains(columnName)) {
+            Log.i(DbMigrationHelper.class.getName(), "Column " + columnName + " already exists in " + tableName);
+            return;
+        }
+        db.execSQL("ALTER TABLE " + tableName + " ADD COLUMN `" + columnName + "` " + columnDefinition + ";");
+    }
+
+    /**
+     * Converts float arrays which have been stored as JSON strings (e.g. "[0.1,0.2]") into the
+     * binary format of {@link FloatArrayConverter}. Rows already containing a BLOB are skipped.
+     */
+    public static void convertJsonFloatArraysToBlob(Database db, String tableName, String columnName) {
+        Log.i(DbMigrationHelper.class.getName(), "convertJsonFloatArraysToBlob: " + tableName + "." + columnName);
+
+        Gson gson = new Gson();
+        DatabaseStatement updateStatement = db.compileStatement("UPDATE " + tableName + " SET " + columnName + " = ? WHERE _id = ?");
+        Cursor cursor = null;
+        int convertedRows = 0;
+        try {
+            cursor = db.rawQuery("SELECT _id, " + columnName + " FROM " + tableName + " WHERE typeof(" + columnName + ") = 'text'", null);
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                List<Float> floatList = gson.fromJson(cursor.getString(1), new TypeToken<List<Float>>(){}.getType());
+                float[] floatArray = new float[floatList.size()];
+                for (int i = 0; i < floatArray.length; i++) {
+                    floatArray[i] = floatList.get(i);
+                }
+                updateStatement.clearBindings();
+                updateStatement.bindBlob(1, FloatArrayConverter.toByteArray(floatArray));
+                updateStatement.bindLong(2, id);
+                updateStatement.execute();
+                convertedRows++;
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            updateStatement.close();
+        }
+        Log.i(DbMigrationHelper.class.getName(), "convertedRows: " + convertedRows);
+    }
+
+    /**
+     * Calculates the running sum and count of the extracted featureVectors for every
+     * StudentImageCollectionEvent. Only needed once for the StudentImages stored before the running sums existed.
+     */
+    public static void initializeFeatureVectorSums(Database db) {
+        Log.i(DbMigrationHelper.class.getName(), "initializeFeatureVectorSums");
+
+        DatabaseStatement updateStatement = db.compileStatement("UPDATE " + StudentImageCollectionEventDao.TABLENAME
+                + " SET " + StudentImageCollectionEventDao.Properties.FeatureVectorSum.columnName + " = ?, "
+                + StudentImageCollectionEventDao.Properties.FeatureVectorCount.columnName + " = ? WHERE _id = ?");
+        Cursor cursor = null;
+        int updatedRows = 0;
+        try {
+            cursor = db.rawQuery("SELECT i." + StudentImageDao.Properties.StudentImageCollectionEventId.columnName + ", f." + StudentImageFeatureDao.Properties.FeatureVector.columnName
+                    + " FROM " + StudentImageDao.TABLENAME + " i JOIN " + StudentImageFeatureDao.TABLENAME + " f"
+                    + " ON i." + StudentImageDao.Properties.StudentImageFeatureId.columnName + " = f._id"
+                    + " ORDER BY i." + StudentImageDao.Properties.StudentImageCollectionEventId.columnName, null);
+            long currentEventId = 0;
+            float[] featureVectorSum = null;
+            int featureVectorCount = 0;
+            while (cursor.moveToNext()) {
+                long eventId = cursor.getLong(0);
+                if ((eventId != currentEventId) && (featureVectorSum != null)) {
+                    updateFeatureVectorSum(updateStatement, currentEventId, featureVectorSum, featureVectorCount);
+                    updatedRows++;
+                    featureVectorSum = null;
+                    featureVectorCount = 0;
+                }
+                currentEventId = eventId;
+                float[] featureVector = FloatArrayConverter.toFloatArray(cursor.getBlob(1));
+                if (featureVectorSum == null) {
+                    featureVectorSum = new float[featureVector.length];
+                }
+                for (int i = 0; i < featureVectorSum.length; i++) {
+                    featureVectorSum[i] += featureVector[i];
+                }
+                featureVectorCount++;
+            }
+            if (featureVectorSum != null) {
+                updateFeatureVectorSum(updateStatement, currentEventId, featureVectorSum, featureVectorCount);
+                updatedRows++;
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            updateStatement.close();
+        }
+        Log.i(DbMigrationHelper.class.getName(), "updatedRows: " + updatedRows);
+    }
+
+    private static void updateFeatureVectorSum(DatabaseStatement updateStatement, long eventId, float[] featureVectorSum, int featureVectorCount) {
+        updateStatement.clearBindings();
+        updateStatement.bindBlob(1, FloatArrayConverter.toByteArray(featureVectorSum));
+        updateStatement.bindLong(2, featureVectorCount);
+        updateStatement.bindLong(3, eventId);
+        updateStatement.execute();
+    }
+
     private static List<String> getColumns(Database db, String tableName) {
         Log.i(DbMigrationHelper.class.getName(), "getColumns");
 
@@ -0,0 +1,73 @@
+package org.literacyapp.service.synchronization;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.literacyapp.util.DeviceInfoHelper;
+
+/**
+ * High-water mark of the downloaded content per entity type and locale, i.e. the latest timeLastUpdate and the highest revisionNumber.
+ * It is sent as since parameter, so the server only has to return the entities which have been changed afterwards and the ids of the deleted ones.
+ * Without a stored mark, or if the server ignores the parameter, the full list is downloaded like before.
+ */
+public class ContentSyncCursor {
+
+    // Set to false to download the full lists on every synchronization
+    private static final boolean DELTA_SYNC_ENABLED = true;
+
+    private static final String PREF_SINCE = "pref_content_sync_since_";
+    private static final String PREF_SINCE_REVISION = "pref_content_sync_since_revision_";
+
+    private SharedPreferences sharedPreferences;
+    private String locale;
+
+    public ContentSyncCursor(Context context) {
+        this(PreferenceManager.getDefaultSharedPreferences(context), String.valueOf(DeviceInfoHelper.getLocale(context)));
+    }
+
+    ContentSyncCursor(SharedPreferences sharedPreferences, String locale) {
+        this.sharedPreferences = sharedPreferences;
+        this.locale = locale;
+    }
+
+    /**
+     * Append the high-water mark of the entity type to the list url
+     * @param url - List url which already contains query parameters
+     * @param entityType - e.g. "allophone"
+     * @return
+     */
+    public String getUrl(String url, String entityType) {
+        long since = sharedPreferences.getLong(getKey(PREF_SINCE, entityType), 0);
+        if (!DELTA_SYNC_ENABLED || (since == 0)) {
+            Log.i(getClass().getName(), "Full download of " + entityType);
+            return url;
+        }
+        int sinceRevision = sharedPreferences.getInt(getKey(PREF_SINCE_REVISION, entityType), 0);
+        Log.i(getClass().getName(), "Delta download of " + entityType + " since " + since + " (revision " + sinceRevision + ")");
+        return url + "&since=" + since + "&sinceRevision=" + sinceRevision;
+    }
+
+    /**
+     * Move the high-water mark after the entities of the ContentUpserter have been applied
+     * @param entityType
+     * @param contentUpserter
+     */
+    public void update(String entityType, ContentUpserter<?> contentUpserter) {
+        if (!contentUpserter.isComplete()) {
+            Log.w(getClass().getName(), "Not all " + entityType + " entities have been stored, the high-water mark is kept");
+            return;
+        }
+        long since = Math.max(sharedPreferences.getLong(getKey(PREF_SINCE, entityType), 0), contentUpserter.getMaxTimeLastUpdate());
+        int sinceRevision = Math.max(sharedPreferences.getInt(getKey(PREF_SINCE_REVISION, entityType), 0), contentUpserter.getMaxRevisionNumber());
+        sharedPreferences.edit()
+                .putLong(getKey(PREF_SINCE, entityType), since)
+                .putInt(getKey(PREF_SINCE_REVISION, entityType), sinceRevision)
+                .commit();
+    }
+
+    private String getKey(String prefix, String entityType) {
+        return prefix + entityType + "_" + locale;
+    }
+}
@@ -0,0 +1,242 @@
+package org.literacyapp.service.synchronization;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import org.greenrobot.greendao.AbstractDao;
+import org.greenrobot.greendao.Property;
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.DatabaseStatement;
+import org.literacyapp.util.JsonLoader;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Bulk upsert of downloaded content entities of one type.
+ * The ids and revisionNumbers of the existing entities are loaded with a single query, the downloaded entities are sorted into
+ * the ones which have to be inserted and the ones which have a newer revisionNumber, and both are written in a single transaction.
+ * Entities which have been deleted on the server are received as ids and deleted in the same transaction, together with
+ * the rows of the join tables referencing them.
+ * The latest timeLastUpdate and the highest revisionNumber of the received entities are kept for the ContentSyncCursor.
+ * @param <T> - Content entity with an id and a revisionNumber
+ */
+
+public abstract class ContentUpserter<T> {
+
+    public enum Operation {
+        INSERT,
+        UPDATE,
+        NONE
+    }
+
+    private final AbstractDao<T, Long> dao;
+    private final LongIntMap existingRevisionNumbers;
+    private final List<T> entitiesToInsert = new ArrayList<>();
+    private final List<T> entitiesToUpdate = new ArrayList<>();
+    private final List<Long> idsToDelete = new ArrayList<>();
+    private final List<AbstractDao<?, ?>> joinDaos = new ArrayList<>();
+    private final List<String> joinTableDeleteStatements = new ArrayList<>();
+    private long maxTimeLastUpdate;
+    private int maxRevisionNumber;
+    private boolean complete = true;
+
+    /**
+     * Loads the ids and revisionNumbers of all existing entities
+     * @param dao
+     * @param revisionNumberProperty
+     */
+    public ContentUpserter(AbstractDao<T, Long> dao, Property revisionNumberProperty){
+        this(dao, loadRevisionNumbers(dao, revisionNumberProperty));
+        Log.i(getClass().getName(), "Number of existing entities in " + dao.getTablename() + ": " + existingRevisionNumbers.size());
+    }
+
+    /**
+     * @param dao
+     * @param existingRevisionNumbers - revisionNumbers of the existing entities by id
+     */
+    ContentUpserter(AbstractDao<T, Long> dao, LongIntMap existingRevisionNumbers){
+        this.dao = dao;
+        this.existingRevisionNumbers = existingRevisionNumbers;
+    }
+
+    private static LongIntMap loadRevisionNumbers(AbstractDao<?, Long> dao, Property revisionNumberProperty){
+        Cursor cursor = dao.getDatabase().rawQuery("SELECT " + dao.getPkProperty().columnName + ", " + revisionNumberProperty.columnName + " FROM " + dao.getTablename(), null);
+        try {
+            LongIntMap revisionNumbers = new LongIntMap(cursor.getCount());
+            while (cursor.moveToNext()){
+                revisionNumbers.put(cursor.getLong(0), cursor.getInt(1));
+            }
+            return revisionNumbers;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    protected abstract long getId(T entity);
+
+    protected abstract int getRevisionNumber(T entity);
+
+    protected abstract Calendar getTimeLastUpdate(T entity);
+
+    /**
+     * Decide if the downloaded entity has to be inserted or updated, it is only written by apply
+     * @param entity
+     * @return
+     */
+    public Operation add(T entity){
+        long id = getId(entity);
+        int revisionNumber = getRevisionNumber(entity);
+        maxRevisionNumber = Math.max(maxRevisionNumber, revisionNumber);
+        Calendar timeLastUpdate = getTimeLastUpdate(entity);
+        if (timeLastUpdate != null){
+            maxTimeLastUpdate = Math.max(maxTimeLastUpdate, timeLastUpdate.getTimeInMillis());
+        }
+        if (!existingRevisionNumbers.containsKey(id)){
+            entitiesToInsert.add(entity);
+            // The same entity might be contained twice in the download
+            existingRevisionNumbers.put(id, revisionNumber);
+            return Operation.INSERT;
+        } else if (existingRevisionNumbers.get(id, Integer.MAX_VALUE) < revisionNumber){
+            entitiesToUpdate.add(entity);
+            existingRevisionNumbers.put(id, revisionNumber);
+            return Operation.UPDATE;
+        } else {
+            return Operation.NONE;
+        }
+    }
+
+    /**
+     * Register a join table which references the entities, its rows are deleted together with the entities
+     * @param joinDao
+     * @param idProperty - Column of the join table which contains the id of the entity
+     * @return
+     */
+    public ContentUpserter<T> addJoinTable(AbstractDao<?, ?> joinDao, Property idProperty){
+        joinDaos.add(joinDao);
+        joinTableDeleteStatements.add("DELETE FROM " + joinDao.getTablename() + " WHERE " + idProperty.columnName + " = ?");
+        return this;
+    }
+
+    /**
+     * Called after the transaction for every entity which has been deleted, e.g. to delete its files
+     * @param entity
+     */
+    protected void onDeleted(T entity){
+    }
+
+    public int getExistingRevisionNumber(long id){
+        return existingRevisionNumbers.get(id, 0);
+    }
+
+    /**
+     * Delete the entity with the id if it exists, it is only deleted by apply
+     * @param id
+     * @return true if the entity exists and will be deleted
+     */
+    public boolean delete(long id){
+        if (existingRevisionNumbers.containsKey(id)){
+            idsToDelete.add(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a callback for the ids of the entities which have been deleted on the server
+     * @return
+     */
+    public JsonLoader.JsonArrayCallback<Long> getDeletedIdCallback(){
+        return new JsonLoader.JsonArrayCallback<Long>() {
+            @Override
+            public void onItem(Long id) {
+                delete(id);
+            }
+        };
+    }
+
+    /**
+     * Has to be called if a received entity couldn't be added, e.g. because its file couldn't be downloaded,
+     * so the ContentSyncCursor isn't moved past it
+     */
+    public void markIncomplete(){
+        complete = false;
+    }
+
+    public boolean isComplete(){
+        return complete;
+    }
+
+    /**
+     * Returns the latest timeLastUpdate of the received entities in milliseconds or 0 if none has been received
+     * @return
+     */
+    public long getMaxTimeLastUpdate(){
+        return maxTimeLastUpdate;
+    }
+
+    public int getMaxRevisionNumber(){
+        return maxRevisionNumber;
+    }
+
+    /**
+     * Insert, update and delete the added entities in a single transaction
+     * @param inSameTransaction - Additional writes, e.g. of join entities, which have to be done in the same transaction, or null
+     */
+    public void apply(final Runnable inSameTransaction){
+        final List<T> deletedEntities = new ArrayList<>();
+        dao.getSession().runInTx(new Runnable() {
+            @Override
+            public void run() {
+                if (!entitiesToInsert.isEmpty()){
+                    dao.insertInTx(entitiesToInsert);
+                }
+                if (!entitiesToUpdate.isEmpty()){
+                    dao.updateInTx(entitiesToUpdate);
+                }
+                if (!idsToDelete.isEmpty()){
+                    for (Long id : idsToDelete){
+                        T entity = dao.load(id);
+                        if (entity != null){
+                            deletedEntities.add(entity);
+                        }
+                    }
+                    deleteJoinTableRows();
+                    dao.deleteByKeyInTx(idsToDelete);
+                }
+                if (inSameTransaction != null){
+                    inSameTransaction.run();
+                }
+            }
+        });
+        if (!deletedEntities.isEmpty()){
+            // Join entities cached by greenDAO might still reference the deleted entities
+            for (AbstractDao<?, ?> joinDao : joinDaos){
+                joinDao.detachAll();
+            }
+        }
+        for (T entity : deletedEntities){
+            onDeleted(entity);
+        }
+        Log.i(getClass().getName(), "Entities in " + dao.getTablename() + " inserted: " + entitiesToInsert.size() + ", updated: " + entitiesToUpdate.size() + ", deleted: " + idsToDelete.size());
+        entitiesToInsert.clear();
+        entitiesToUpdate.clear();
+        idsToDelete.clear();
+    }
+
+    private void deleteJoinTableRows(){
+        Database db = dao.getDatabase();
+        for (String joinTableDeleteStatement : joinTableDeleteStatements){
+            DatabaseStatement deleteStatement = db.compileStatement(joinTableDeleteStatement);
+            try {
+                for (Long id : idsToDelete){
+                    deleteStatement.bindLong(1, id);
+                    deleteStatement.execute();
+                }
+            } finally {
+                deleteStatement.close();
+            }
+        }
+    }
+}
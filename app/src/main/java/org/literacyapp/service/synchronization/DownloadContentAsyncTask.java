@@ -4,13 +4,6 @@ import android.content.Context;
 import android.os.AsyncTask;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import org.apache.commons.io.IOUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.literacyapp.LiteracyApplication;
 import org.literacyapp.contentprovider.dao.AllophoneDao;
 import org.literacyapp.contentprovider.dao.AudioDao;
@@ -23,6 +16,7 @@ import org.literacyapp.contentprovider.dao.JoinImagesWithLettersDao;
 import org.literacyapp.contentprovider.dao.JoinImagesWithNumbersDao;
 import org.literacyapp.contentprovider.dao.JoinImagesWithWordsDao;
 import org.literacyapp.contentprovider.dao.JoinLettersWithAllophonesDao;
+import org.literacyapp.contentprovider.dao.JoinNumbersWithWordsDao;
 import org.literacyapp.contentprovider.dao.JoinVideosWithLettersDao;
 import org.literacyapp.contentprovider.dao.JoinVideosWithNumbersDao;
 import org.literacyapp.contentprovider.dao.JoinVideosWithWordsDao;
@@ -62,13 +56,12 @@ import org.literacyapp.util.DeviceInfoHelper;
 import org.literacyapp.util.EnvironmentSettings;
 import org.literacyapp.util.JsonLoader;
 import org.literacyapp.contentprovider.util.MultimediaHelper;
-import org.literacyapp.util.MultimediaDownloader;
+import org.literacyapp.util.MultimediaDownloadManager;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
 
 public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
 
@@ -84,6 +77,7 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
     private VideoDao videoDao;
 
     private JoinLettersWithAllophonesDao joinLettersWithAllophonesDao;
+    private JoinNumbersWithWordsDao joinNumbersWithWordsDao;
     
     private JoinVideosWithLettersDao joinVideosWithLettersDao;
     private JoinVideosWithNumbersDao joinVideosWithNumbersDao;
@@ -111,6 +105,7 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         videoDao = literacyApplication.getDaoSession().getVideoDao();
 
         joinLettersWithAllophonesDao = literacyApplication.getDaoSession().getJoinLettersWithAllophonesDao();
+        joinNumbersWithWordsDao = literacyApplication.getDaoSession().getJoinNumbersWithWordsDao();
         
         joinVideosWithLettersDao = literacyApplication.getDaoSession().getJoinVideosWithLettersDao();
         joinVideosWithNumbersDao = literacyApplication.getDaoSession().getJoinVideosWithNumbersDao();
@@ -129,39 +124,51 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
     protected String doInBackground(Void... voids) {
         Log.i(getClass().getName(), "doInBackground");
 
+        ContentSyncCursor contentSyncCursor = new ContentSyncCursor(context);
+        final MultimediaDownloadManager multimediaDownloadManager = new MultimediaDownloadManager();
 
         publishProgress("Downloading Allophones");
         String url = EnvironmentSettings.getRestUrl() + "/content/allophone/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        String jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArrayAllophones = jsonObject.getJSONArray("allophones");
-                for (int i = 0; i < jsonArrayAllophones.length(); i++) {
-                    Type type = new TypeToken<AllophoneGson>(){}.getType();
-                    AllophoneGson allophoneGson = new Gson().fromJson(jsonArrayAllophones.getString(i), type);
-                    Allophone allophone = GsonToGreenDaoConverter.getAllophone(allophoneGson);
-                    Allophone existingAllophone = allophoneDao.queryBuilder()
-                            .where(AllophoneDao.Properties.Id.eq(allophone.getId()))
-                            .unique();
-                    if (existingAllophone == null) {
-                        Log.i(getClass().getName(), "Storing Allophone, id: " + allophone.getId() + ", valueIpa: /" + allophone.getValueIpa() + "/, valueSampa: \"" + allophone.getValueSampa() + "\", revisionNumber: " + allophone.getRevisionNumber());
-                        allophoneDao.insert(allophone);
-                    } else if (existingAllophone.getRevisionNumber() < allophone.getRevisionNumber()) {
-                        Log.i(getClass().getName(), "Updating Allophone with id " + existingAllophone.getId() + " from revisionNumber " + existingAllophone.getRevisionNumber() + " to revisionNumber " + allophone.getRevisionNumber());
-                        allophoneDao.update(allophone);
-                    } else {
-                        Log.i(getClass().getName(), "Allophone /" + allophone.getValueIpa() + "/ already exists in database with id " + allophone.getId() + " (revision " + allophone.getRevisionNumber() + ")");
-                    }
+        url = contentSyncCursor.getUrl(url, "allophone");
+        final ContentUpserter<Allophone> allophoneUpserter = new ContentUpserter<Allophone>(allophoneDao, AllophoneDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Allophone allophone) {
+                return allophone.getId();
+            }
+
+            @Override
+            protected int getRevisionNumber(Allophone allophone) {
+                return allophone.getRevisionNumber();
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(Allophone allophone) {
+                return allophone.getTimeLastUpdate();
+            }
+        };
+        allophoneUpserter.addJoinTable(joinLettersWithAllophonesDao, JoinLettersWithAllophonesDao.Properties.AllophoneId);
+        boolean success = JsonLoader.loadJsonArray(url, "allophones", AllophoneGson.class, new JsonLoader.JsonArrayCallback<AllophoneGson>() {
+            @Override
+            public void onItem(AllophoneGson allophoneGson) {
+                Allophone allophone = GsonToGreenDaoConverter.getAllophone(allophoneGson);
+                int existingRevisionNumber = allophoneUpserter.getExistingRevisionNumber(allophone.getId());
+                ContentUpserter.Operation operation = allophoneUpserter.add(allophone);
+                if (operation == ContentUpserter.Operation.INSERT) {
+                    Log.i(getClass().getName(), "Storing Allophone, id: " + allophone.getId() + ", valueIpa: /" + allophone.getValueIpa() + "/, valueSampa: \"" + allophone.getValueSampa() + "\", revisionNumber: " + allophone.getRevisionNumber());
+                } else if (operation == ContentUpserter.Operation.UPDATE) {
+                    Log.i(getClass().getName(), "Updating Allophone with id " + allophone.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + allophone.getRevisionNumber());
+                } else {
+                    Log.i(getClass().getName(), "Allophone /" + allophone.getValueIpa() + "/ already exists in database with id " + allophone.getId() + " (revision " + allophone.getRevisionNumber() + ")");
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, allophoneUpserter.getDeletedIdCallback());
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            allophoneUpserter.apply(null);
+            contentSyncCursor.update("allophone", allophoneUpserter);
         }
 
 
@@ -169,51 +176,70 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/letter/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("letters");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<LetterGson>(){}.getType();
-                    LetterGson letterGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Letter letter = GsonToGreenDaoConverter.getLetter(letterGson);
-                    Letter existingLetter = letterDao.queryBuilder()
-                            .where(LetterDao.Properties.Id.eq(letter.getId()))
-                            .unique();
-                    if (existingLetter == null) {
-                        Log.i(getClass().getName(), "Storing Letter, id: " + letter.getId() + ", text: \"" + letter.getText() + "\", revisionNumber: " + letter.getRevisionNumber());
-                        letterDao.insert(letter);
-
-                        for (AllophoneGson allophoneGson : letterGson.getAllophones()) {
-                            Allophone allophone = allophoneDao.queryBuilder()
-                                    .where(
-                                            AllophoneDao.Properties.Locale.eq(allophoneGson.getLocale()),
-                                            AllophoneDao.Properties.ValueSampa.eq(allophoneGson.getValueSampa())
-                                    )
-                                    .unique();
-                            Log.i(getClass().getName(), "Storing Allophone, id: " + allophone.getId() + ", valueIpa: /" + allophone.getValueIpa() + "/, valueSampa: \"" + allophone.getValueSampa() + "\", for letter '" + letter.getText() + "'");
-
-                            JoinLettersWithAllophones joinLettersWithAllophones = new JoinLettersWithAllophones();
-                            joinLettersWithAllophones.setLetterId(letter.getId());
-                            joinLettersWithAllophones.setAllophoneId(allophone.getId());
-                            joinLettersWithAllophonesDao.insert(joinLettersWithAllophones);
-                        }
-                    } else if (existingLetter.getRevisionNumber() < letter.getRevisionNumber()) {
-                        Log.i(getClass().getName(), "Updating Letter with id " + existingLetter.getId() + " from revisionNumber " + existingLetter.getRevisionNumber() + " to revisionNumber " + letter.getRevisionNumber());
-                        letterDao.update(letter);
+        url = contentSyncCursor.getUrl(url, "letter");
+        final ContentUpserter<Letter> letterUpserter = new ContentUpserter<Letter>(letterDao, LetterDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Letter letter) {
+                return letter.getId();
+            }
 
-                        // TODO: update JoinLettersWithAllophones
-                    } else {
-                        Log.i(getClass().getName(), "Letter \"" + letter.getText() + "\" already exists in database with id " + letter.getId() + " (revision " + letter.getRevisionNumber() + ")");
+            @Override
+            protected int getRevisionNumber(Letter letter) {
+                return letter.getRevisionNumber();
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(Letter letter) {
+                return letter.getTimeLastUpdate();
+            }
+        };
+        letterUpserter.addJoinTable(joinLettersWithAllophonesDao, JoinLettersWithAllophonesDao.Properties.LetterId);
+        letterUpserter.addJoinTable(joinAudiosWithLettersDao, JoinAudiosWithLettersDao.Properties.LetterId);
+        letterUpserter.addJoinTable(joinImagesWithLettersDao, JoinImagesWithLettersDao.Properties.LetterId);
+        letterUpserter.addJoinTable(joinVideosWithLettersDao, JoinVideosWithLettersDao.Properties.LetterId);
+        final List<JoinLettersWithAllophones> joinLettersWithAllophonesList = new ArrayList<>();
+        success = JsonLoader.loadJsonArray(url, "letters", LetterGson.class, new JsonLoader.JsonArrayCallback<LetterGson>() {
+            @Override
+            public void onItem(LetterGson letterGson) {
+                Letter letter = GsonToGreenDaoConverter.getLetter(letterGson);
+                int existingRevisionNumber = letterUpserter.getExistingRevisionNumber(letter.getId());
+                ContentUpserter.Operation operation = letterUpserter.add(letter);
+                if (operation == ContentUpserter.Operation.INSERT) {
+                    Log.i(getClass().getName(), "Storing Letter, id: " + letter.getId() + ", text: \"" + letter.getText() + "\", revisionNumber: " + letter.getRevisionNumber());
+
+                    for (AllophoneGson allophoneGson : letterGson.getAllophones()) {
+                        Allophone allophone = allophoneDao.queryBuilder()
+                                .where(
+                                        AllophoneDao.Properties.Locale.eq(allophoneGson.getLocale()),
+                                        AllophoneDao.Properties.ValueSampa.eq(allophoneGson.getValueSampa())
+                                )
+                                .unique();
+                        Log.i(getClass().getName(), "Storing Allophone, id: " + allophone.getId() + ", valueIpa: /" + allophone.getValueIpa() + "/, valueSampa: \"" + allophone.getValueSampa() + "\", for letter '" + letter.getText() + "'");
+
+                        JoinLettersWithAllophones joinLettersWithAllophones = new JoinLettersWithAllophones();
+                        joinLettersWithAllophones.setLetterId(letter.getId());
+                        joinLettersWithAllophones.setAllophoneId(allophone.getId());
+                        joinLettersWithAllophonesList.add(joinLettersWithAllophones);
                     }
+                } else if (operation == ContentUpserter.Operation.UPDATE) {
+                    Log.i(getClass().getName(), "Updating Letter with id " + letter.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + letter.getRevisionNumber());
+
+                    // TODO: update JoinLettersWithAllophones
+                } else {
+                    Log.i(getClass().getName(), "Letter \"" + letter.getText() + "\" already exists in database with id " + letter.getId() + " (revision " + letter.getRevisionNumber() + ")");
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, letterUpserter.getDeletedIdCallback());
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            letterUpserter.apply(new Runnable() {
+                @Override
+                public void run() {
+                    joinLettersWithAllophonesDao.insertInTx(joinLettersWithAllophonesList);
+                }
+            });
+            contentSyncCursor.update("letter", letterUpserter);
         }
 
 
@@ -221,34 +247,47 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/number/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("numbers");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<NumberGson>(){}.getType();
-                    NumberGson numberGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Number number = GsonToGreenDaoConverter.getNumber(numberGson);
-                    Number existingNumber = numberDao.queryBuilder()
-                            .where(NumberDao.Properties.Id.eq(number.getId()))
-                            .unique();
-                    if (existingNumber == null) {
-                        Log.i(getClass().getName(), "Storing Number, id: " + number.getId() + ", value: \"" + number.getValue() + "\", revisionNumber: " + number.getRevisionNumber());
-                        numberDao.insert(number);
-                    } else if (existingNumber.getRevisionNumber() < number.getRevisionNumber()) {
-                        Log.i(getClass().getName(), "Updating Number with id " + existingNumber.getId() + " from revisionNumber " + existingNumber.getRevisionNumber() + " to revisionNumber " + number.getRevisionNumber());
-                        numberDao.update(number);
-                    } else {
-                        Log.i(getClass().getName(), "Number \"" + number.getValue() + "\" already exists in database with id " + number.getId() + " (revision " + number.getRevisionNumber() + ")");
-                    }
+        url = contentSyncCursor.getUrl(url, "number");
+        final ContentUpserter<Number> numberUpserter = new ContentUpserter<Number>(numberDao, NumberDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Number number) {
+                return number.getId();
+            }
+
+            @Override
+            protected int getRevisionNumber(Number number) {
+                return number.getRevisionNumber();
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(Number number) {
+                return number.getTimeLastUpdate();
+            }
+        };
+        numberUpserter.addJoinTable(joinNumbersWithWordsDao, JoinNumbersWithWordsDao.Properties.NumberId);
+        numberUpserter.addJoinTable(joinAudiosWithNumbersDao, JoinAudiosWithNumbersDao.Properties.NumberId);
+        numberUpserter.addJoinTable(joinImagesWithNumbersDao, JoinImagesWithNumbersDao.Properties.NumberId);
+        numberUpserter.addJoinTable(joinVideosWithNumbersDao, JoinVideosWithNumbersDao.Properties.NumberId);
+        success = JsonLoader.loadJsonArray(url, "numbers", NumberGson.class, new JsonLoader.JsonArrayCallback<NumberGson>() {
+            @Override
+            public void onItem(NumberGson numberGson) {
+                Number number = GsonToGreenDaoConverter.getNumber(numberGson);
+                int existingRevisionNumber = numberUpserter.getExistingRevisionNumber(number.getId());
+                ContentUpserter.Operation operation = numberUpserter.add(number);
+                if (operation == ContentUpserter.Operation.INSERT) {
+                    Log.i(getClass().getName(), "Storing Number, id: " + number.getId() + ", value: \"" + number.getValue() + "\", revisionNumber: " + number.getRevisionNumber());
+                } else if (operation == ContentUpserter.Operation.UPDATE) {
+                    Log.i(getClass().getName(), "Updating Number with id " + number.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + number.getRevisionNumber());
+                } else {
+                    Log.i(getClass().getName(), "Number \"" + number.getValue() + "\" already exists in database with id " + number.getId() + " (revision " + number.getRevisionNumber() + ")");
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, numberUpserter.getDeletedIdCallback());
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            numberUpserter.apply(null);
+            contentSyncCursor.update("number", numberUpserter);
         }
 
 
@@ -256,34 +295,26 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/syllable/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("syllables");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<SyllableGson>(){}.getType();
-                    SyllableGson syllableGson = new Gson().fromJson(jsonArray.getString(i), type);
-//                    Syllable syllable = GsonToGreenDaoConverter.getSyllable(syllableGson);
-//                    Syllable existingSyllable = syllableDao.queryBuilder()
-//                            .where(SyllableDao.Properties.Id.eq(syllable.getId()))
-//                            .unique();
-//                    if (existingSyllable == null) {
-//                        Log.i(getClass().getName(), "Storing Syllable, id: " + syllable.getId() + ", text: \"" + syllable.getText() + "\", revisionNumber: " + syllable.getRevisionNumber());
-//                        syllableDao.insert(syllable);
-//                    } else if (existingSyllable.getRevisionNumber() < syllable.getRevisionNumber()) {
-//                        Log.i(getClass().getName(), "Updating Syllable with id " + existingSyllable.getId() + " from revisionNumber " + existingSyllable.getRevisionNumber() + " to revisionNumber " + syllable.getRevisionNumber());
-//                        syllableDao.update(syllable);
-//                    } else {
-//                        Log.i(getClass().getName(), "Syllable \"" + syllable.getText() + "\" already exists in database with id " + syllable.getId() + " (revision " + syllable.getRevisionNumber() + ")");
-//                    }
-                }
+        success = JsonLoader.loadJsonArray(url, "syllables", SyllableGson.class, new JsonLoader.JsonArrayCallback<SyllableGson>() {
+            @Override
+            public void onItem(SyllableGson syllableGson) {
+//                Syllable syllable = GsonToGreenDaoConverter.getSyllable(syllableGson);
+//                Syllable existingSyllable = syllableDao.queryBuilder()
+//                        .where(SyllableDao.Properties.Id.eq(syllable.getId()))
+//                        .unique();
+//                if (existingSyllable == null) {
+//                    Log.i(getClass().getName(), "Storing Syllable, id: " + syllable.getId() + ", text: \"" + syllable.getText() + "\", revisionNumber: " + syllable.getRevisionNumber());
+//                    syllableDao.insert(syllable);
+//                } else if (existingSyllable.getRevisionNumber() < syllable.getRevisionNumber()) {
+//                    Log.i(getClass().getName(), "Updating Syllable with id " + existingSyllable.getId() + " from revisionNumber " + existingSyllable.getRevisionNumber() + " to revisionNumber " + syllable.getRevisionNumber());
+//                    syllableDao.update(syllable);
+//                } else {
+//                    Log.i(getClass().getName(), "Syllable \"" + syllable.getText() + "\" already exists in database with id " + syllable.getId() + " (revision " + syllable.getRevisionNumber() + ")");
+//                }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        });
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
         }
 
 
@@ -291,34 +322,47 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/word/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("words");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<WordGson>(){}.getType();
-                    WordGson wordGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Word word = GsonToGreenDaoConverter.getWord(wordGson);
-                    Word existingWord = wordDao.queryBuilder()
-                            .where(WordDao.Properties.Id.eq(word.getId()))
-                            .unique();
-                    if (existingWord == null) {
-                        Log.i(getClass().getName(), "Storing Word, id: " + word.getId() + ", text: \"" + word.getText() + "\", revisionNumber: " + word.getRevisionNumber());
-                        wordDao.insert(word);
-                    } else if (existingWord.getRevisionNumber() < word.getRevisionNumber()) {
-                        Log.i(getClass().getName(), "Updating Word with id " + existingWord.getId() + " from revisionNumber " + existingWord.getRevisionNumber() + " to revisionNumber " + word.getRevisionNumber());
-                        wordDao.update(word);
-                    } else {
-                        Log.i(getClass().getName(), "Word \"" + word.getText() + "\" already exists in database with id " + word.getId() + " (revision " + word.getRevisionNumber() + ")");
-                    }
+        url = contentSyncCursor.getUrl(url, "word");
+        final ContentUpserter<Word> wordUpserter = new ContentUpserter<Word>(wordDao, WordDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Word word) {
+                return word.getId();
+            }
+
+            @Override
+            protected int getRevisionNumber(Word word) {
+                return word.getRevisionNumber();
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(Word word) {
+                return word.getTimeLastUpdate();
+            }
+        };
+        wordUpserter.addJoinTable(joinNumbersWithWordsDao, JoinNumbersWithWordsDao.Properties.WordId);
+        wordUpserter.addJoinTable(joinAudiosWithWordsDao, JoinAudiosWithWordsDao.Properties.WordId);
+        wordUpserter.addJoinTable(joinImagesWithWordsDao, JoinImagesWithWordsDao.Properties.WordId);
+        wordUpserter.addJoinTable(joinVideosWithWordsDao, JoinVideosWithWordsDao.Properties.WordId);
+        success = JsonLoader.loadJsonArray(url, "words", WordGson.class, new JsonLoader.JsonArrayCallback<WordGson>() {
+            @Override
+            public void onItem(WordGson wordGson) {
+                Word word = GsonToGreenDaoConverter.getWord(wordGson);
+                int existingRevisionNumber = wordUpserter.getExistingRevisionNumber(word.getId());
+                ContentUpserter.Operation operation = wordUpserter.add(word);
+                if (operation == ContentUpserter.Operation.INSERT) {
+                    Log.i(getClass().getName(), "Storing Word, id: " + word.getId() + ", text: \"" + word.getText() + "\", revisionNumber: " + word.getRevisionNumber());
+                } else if (operation == ContentUpserter.Operation.UPDATE) {
+                    Log.i(getClass().getName(), "Updating Word with id " + word.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + word.getRevisionNumber());
+                } else {
+                    Log.i(getClass().getName(), "Word \"" + word.getText() + "\" already exists in database with id " + word.getId() + " (revision " + word.getRevisionNumber() + ")");
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, wordUpserter.getDeletedIdCallback());
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            wordUpserter.apply(null);
+            contentSyncCursor.update("word", wordUpserter);
         }
 
 
@@ -326,34 +370,43 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/storybook/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("storyBooks");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<StoryBookGson>(){}.getType();
-                    StoryBookGson storyBookGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    StoryBook storyBook = GsonToGreenDaoConverter.getStoryBook(storyBookGson);
-                    StoryBook existingStoryBook = storyBookDao.queryBuilder()
-                            .where(StoryBookDao.Properties.Id.eq(storyBook.getId()))
-                            .unique();
-                    if (existingStoryBook == null) {
-                        Log.i(getClass().getName(), "Storing StoryBook, id: " + storyBook.getId() + ", title: \"" + storyBook.getTitle() + "\", revisionNumber: " + storyBook.getRevisionNumber());
-                        storyBookDao.insert(storyBook);
-                    } else if (existingStoryBook.getRevisionNumber() < storyBook.getRevisionNumber()) {
-                        Log.i(getClass().getName(), "Updating StoryBook with id " + existingStoryBook.getId() + " from revisionNumber " + existingStoryBook.getRevisionNumber() + " to revisionNumber " + storyBook.getRevisionNumber());
-                        storyBookDao.update(storyBook);
-                    } else {
-                        Log.i(getClass().getName(), "StoryBook \"" + storyBook.getTitle() + "\" already exists in database with id " + storyBook.getId() + " (revision " + storyBook.getRevisionNumber() + ")");
-                    }
+        url = contentSyncCursor.getUrl(url, "storybook");
+        final ContentUpserter<StoryBook> storyBookUpserter = new ContentUpserter<StoryBook>(storyBookDao, StoryBookDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(StoryBook storyBook) {
+                return storyBook.getId();
+            }
+
+            @Override
+            protected int getRevisionNumber(StoryBook storyBook) {
+                return storyBook.getRevisionNumber();
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(StoryBook storyBook) {
+                return storyBook.getTimeLastUpdate();
+            }
+        };
+        success = JsonLoader.loadJsonArray(url, "storyBooks", StoryBookGson.class, new JsonLoader.JsonArrayCallback<StoryBookGson>() {
+            @Override
+            public void onItem(StoryBookGson storyBookGson) {
+                StoryBook storyBook = GsonToGreenDaoConverter.getStoryBook(storyBookGson);
+                int existingRevisionNumber = storyBookUpserter.getExistingRevisionNumber(storyBook.getId());
+                ContentUpserter.Operation operation = storyBookUpserter.add(storyBook);
+                if (operation == ContentUpserter.Operation.INSERT) {
+                    Log.i(getClass().getName(), "Storing StoryBook, id: " + storyBook.getId() + ", title: \"" + storyBook.getTitle() + "\", revisionNumber: " + storyBook.getRevisionNumber());
+                } else if (operation == ContentUpserter.Operation.UPDATE) {
+                    Log.i(getClass().getName(), "Updating StoryBook with id " + storyBook.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + storyBook.getRevisionNumber());
+                } else {
+                    Log.i(getClass().getName(), "StoryBook \"" + storyBook.getTitle() + "\" already exists in database with id " + storyBook.getId() + " (revision " + storyBook.getRevisionNumber() + ")");
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, storyBookUpserter.getDeletedIdCallback());
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            storyBookUpserter.apply(null);
+            contentSyncCursor.update("storybook", storyBookUpserter);
         }
 
 
@@ -362,87 +415,121 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/multimedia/audio/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("audios");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<AudioGson>(){}.getType();
-                    AudioGson audioGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Audio audio = GsonToGreenDaoConverter.getAudio(audioGson);
-
-                    File audioFile = MultimediaHelper.getFile(audio);
-                    Log.i(getClass().getName(), "audioFile: " + audioFile);
-                    if (!audioFile.exists()) {
-                        // Download bytes
-                        byte[] bytes = MultimediaDownloader.downloadMultimedia(EnvironmentSettings.getBaseUrl() + audioGson.getDownloadUrl());
-                        Log.i(getClass().getName(), "bytes.length: " + bytes.length);
-                        try {
-                            FileOutputStream fileOutputStream = new FileOutputStream(audioFile);
-                            IOUtils.write(bytes, fileOutputStream);
-                            fileOutputStream.close();
-                            Log.i(getClass().getName(), "Stored Audio file at " + audioFile.getAbsolutePath());
-                        } catch (FileNotFoundException e) {
-                            Log.e(getClass().getName(), null, e);
-                        } catch (IOException e) {
-                            Log.e(getClass().getName(), null, e);
-                        }
-                    }
+        url = contentSyncCursor.getUrl(url, "audio");
+        final ContentUpserter<Audio> audioUpserter = new ContentUpserter<Audio>(audioDao, AudioDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Audio audio) {
+                return audio.getId();
+            }
 
-                    if (audioFile.exists()) {
-                        Audio existingAudio = audioDao.queryBuilder()
-                                .where(AudioDao.Properties.Id.eq(audio.getId()))
-                                .unique();
-                        if (existingAudio == null) {
-                            Log.i(getClass().getName(), "Storing Audio. id: " + audio.getId() + ", transcription: \"" + audio.getTranscription() + "\", revisionNumber: " + audio.getRevisionNumber());
-                            audioDao.insert(audio);
-
-                            // Store Letters
-                            if (audioGson.getLetters() != null) {
-                                for (LetterGson letterGson : audioGson.getLetters()) {
-                                    JoinAudiosWithLetters joinAudiosWithLetters = new JoinAudiosWithLetters();
-                                    joinAudiosWithLetters.setAudioId(audio.getId());
-                                    joinAudiosWithLetters.setLetterId(letterGson.getId());
-                                    joinAudiosWithLettersDao.insert(joinAudiosWithLetters);
-                                }
-                            }
+            @Override
+            protected int getRevisionNumber(Audio audio) {
+                return audio.getRevisionNumber();
+            }
 
-                            // Store Numbers
-                            if (audioGson.getNumbers() != null) {
-                                for (NumberGson numberGson : audioGson.getNumbers()) {
-                                    JoinAudiosWithNumbers joinAudiosWithNumbers = new JoinAudiosWithNumbers();
-                                    joinAudiosWithNumbers.setAudioId(audio.getId());
-                                    joinAudiosWithNumbers.setNumberId(numberGson.getId());
-                                    joinAudiosWithNumbersDao.insert(joinAudiosWithNumbers);
-                                }
+            @Override
+            protected Calendar getTimeLastUpdate(Audio audio) {
+                return audio.getTimeLastUpdate();
+            }
+
+            @Override
+            protected void onDeleted(Audio audio) {
+                deleteFile(MultimediaHelper.getFile(audio));
+            }
+        };
+        audioUpserter.addJoinTable(joinAudiosWithLettersDao, JoinAudiosWithLettersDao.Properties.AudioId);
+        audioUpserter.addJoinTable(joinAudiosWithNumbersDao, JoinAudiosWithNumbersDao.Properties.AudioId);
+        audioUpserter.addJoinTable(joinAudiosWithWordsDao, JoinAudiosWithWordsDao.Properties.AudioId);
+        final List<JoinAudiosWithLetters> joinAudiosWithLettersList = new ArrayList<>();
+        final List<JoinAudiosWithNumbers> joinAudiosWithNumbersList = new ArrayList<>();
+        final List<JoinAudiosWithWords> joinAudiosWithWordsList = new ArrayList<>();
+        final JsonLoader.JsonArrayCallback<AudioGson> audioStorer = new JsonLoader.JsonArrayCallback<AudioGson>() {
+            @Override
+            public void onItem(AudioGson audioGson) {
+                Audio audio = GsonToGreenDaoConverter.getAudio(audioGson);
+
+                File audioFile = MultimediaHelper.getFile(audio);
+
+                if (audioFile.exists()) {
+                    int existingRevisionNumber = audioUpserter.getExistingRevisionNumber(audio.getId());
+                    ContentUpserter.Operation operation = audioUpserter.add(audio);
+                    if (operation == ContentUpserter.Operation.INSERT) {
+                        Log.i(getClass().getName(), "Storing Audio. id: " + audio.getId() + ", transcription: \"" + audio.getTranscription() + "\", revisionNumber: " + audio.getRevisionNumber());
+
+                        // Store Letters
+                        if (audioGson.getLetters() != null) {
+                            for (LetterGson letterGson : audioGson.getLetters()) {
+                                JoinAudiosWithLetters joinAudiosWithLetters = new JoinAudiosWithLetters();
+                                joinAudiosWithLetters.setAudioId(audio.getId());
+                                joinAudiosWithLetters.setLetterId(letterGson.getId());
+                                joinAudiosWithLettersList.add(joinAudiosWithLetters);
                             }
+                        }
 
-                            // Store Words
-                            if (audioGson.getWords() != null) {
-                                for (WordGson wordGson : audioGson.getWords()) {
-                                    JoinAudiosWithWords joinAudiosWithWords = new JoinAudiosWithWords();
-                                    joinAudiosWithWords.setAudioId(audio.getId());
-                                    joinAudiosWithWords.setWordId(wordGson.getId());
-                                    joinAudiosWithWordsDao.insert(joinAudiosWithWords);
-                                }
+                        // Store Numbers
+                        if (audioGson.getNumbers() != null) {
+                            for (NumberGson numberGson : audioGson.getNumbers()) {
+                                JoinAudiosWithNumbers joinAudiosWithNumbers = new JoinAudiosWithNumbers();
+                                joinAudiosWithNumbers.setAudioId(audio.getId());
+                                joinAudiosWithNumbers.setNumberId(numberGson.getId());
+                                joinAudiosWithNumbersList.add(joinAudiosWithNumbers);
                             }
-                        } else if (existingAudio.getRevisionNumber() < audio.getRevisionNumber()) {
-                            Log.i(getClass().getName(), "Updating Audio with id " + existingAudio.getId() + " from revisionNumber " + existingAudio.getRevisionNumber() + " to revisionNumber " + audio.getRevisionNumber());
-                            audioDao.update(audio);
+                        }
 
-                            // TODO: update JoinAudiosWithWords
-                        } else {
-                            Log.i(getClass().getName(), "Audio \"" + audio.getTranscription() + "\" already exists in database with id " + audio.getId() + " (revision " + audio.getRevisionNumber() + ")");
+                        // Store Words
+                        if (audioGson.getWords() != null) {
+                            for (WordGson wordGson : audioGson.getWords()) {
+                                JoinAudiosWithWords joinAudiosWithWords = new JoinAudiosWithWords();
+                                joinAudiosWithWords.setAudioId(audio.getId());
+                                joinAudiosWithWords.setWordId(wordGson.getId());
+                                joinAudiosWithWordsList.add(joinAudiosWithWords);
+                            }
                         }
+                    } else if (operation == ContentUpserter.Operation.UPDATE) {
+                        Log.i(getClass().getName(), "Updating Audio with id " + audio.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + audio.getRevisionNumber());
+
+                        // TODO: update JoinAudiosWithWords
+                    } else {
+                        Log.i(getClass().getName(), "Audio \"" + audio.getTranscription() + "\" already exists in database with id " + audio.getId() + " (revision " + audio.getRevisionNumber() + ")");
                     }
+                } else {
+                    audioUpserter.markIncomplete();
+                }
+            }
+        };
+        final List<AudioGson> downloadedAudioGsons = new ArrayList<>();
+        success = JsonLoader.loadJsonArray(url, "audios", AudioGson.class, new JsonLoader.JsonArrayCallback<AudioGson>() {
+            @Override
+            public void onItem(AudioGson audioGson) {
+                Audio audio = GsonToGreenDaoConverter.getAudio(audioGson);
+
+                File audioFile = MultimediaHelper.getFile(audio);
+                Log.i(getClass().getName(), "audioFile: " + audioFile);
+                if (audioFile.exists()) {
+                    audioStorer.onItem(audioGson);
+                } else {
+                    // Stored once the download has finished
+                    multimediaDownloadManager.download(EnvironmentSettings.getBaseUrl() + audioGson.getDownloadUrl(), audioFile);
+                    downloadedAudioGsons.add(audioGson);
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, audioUpserter.getDeletedIdCallback());
+        multimediaDownloadManager.awaitAll();
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            for (AudioGson audioGson : downloadedAudioGsons) {
+                audioStorer.onItem(audioGson);
+            }
+            audioUpserter.apply(new Runnable() {
+                @Override
+                public void run() {
+                    joinAudiosWithLettersDao.insertInTx(joinAudiosWithLettersList);
+                    joinAudiosWithNumbersDao.insertInTx(joinAudiosWithNumbersList);
+                    joinAudiosWithWordsDao.insertInTx(joinAudiosWithWordsList);
+                }
+            });
+            contentSyncCursor.update("audio", audioUpserter);
         }
 
 
@@ -450,87 +537,121 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/multimedia/image/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("images");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<ImageGson>(){}.getType();
-                    ImageGson imageGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Image image = GsonToGreenDaoConverter.getImage(imageGson);
-
-                    File imageFile = MultimediaHelper.getFile(image);
-                    Log.i(getClass().getName(), "imageFile: " + imageFile);
-                    if (!imageFile.exists()) {
-                        // Download bytes
-                        byte[] bytes = MultimediaDownloader.downloadMultimedia(EnvironmentSettings.getBaseUrl() + imageGson.getDownloadUrl());
-                        Log.i(getClass().getName(), "bytes.length: " + bytes.length);
-                        try {
-                            FileOutputStream fileOutputStream = new FileOutputStream(imageFile);
-                            IOUtils.write(bytes, fileOutputStream);
-                            fileOutputStream.close();
-                            Log.i(getClass().getName(), "Stored Image file at " + imageFile.getAbsolutePath());
-                        } catch (FileNotFoundException e) {
-                            Log.e(getClass().getName(), null, e);
-                        } catch (IOException e) {
-                            Log.e(getClass().getName(), null, e);
-                        }
-                    }
+        url = contentSyncCursor.getUrl(url, "image");
+        final ContentUpserter<Image> imageUpserter = new ContentUpserter<Image>(imageDao, ImageDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Image image) {
+                return image.getId();
+            }
 
-                    if (imageFile.exists()) {
-                        Image existingImage = imageDao.queryBuilder()
-                                .where(ImageDao.Properties.Id.eq(image.getId()))
-                                .unique();
-                        if (existingImage == null) {
-                            Log.i(getClass().getName(), "Storing Image. id: " + image.getId() + ", title: \"" + image.getTitle() + "\", revisionNumber: " + image.getRevisionNumber());
-                            imageDao.insert(image);
-
-                            // Store Letters
-                            if (imageGson.getLetters() != null) {
-                                for (LetterGson letterGson : imageGson.getLetters()) {
-                                    JoinImagesWithLetters joinImagesWithLetters = new JoinImagesWithLetters();
-                                    joinImagesWithLetters.setImageId(image.getId());
-                                    joinImagesWithLetters.setLetterId(letterGson.getId());
-                                    joinImagesWithLettersDao.insert(joinImagesWithLetters);
-                                }
-                            }
+            @Override
+            protected int getRevisionNumber(Image image) {
+                return image.getRevisionNumber();
+            }
 
-                            // Store Numbers
-                            if (imageGson.getNumbers() != null) {
-                                for (NumberGson numberGson : imageGson.getNumbers()) {
-                                    JoinImagesWithNumbers joinImagesWithNumbers = new JoinImagesWithNumbers();
-                                    joinImagesWithNumbers.setImageId(image.getId());
-                                    joinImagesWithNumbers.setNumberId(numberGson.getId());
-                                    joinImagesWithNumbersDao.insert(joinImagesWithNumbers);
-                                }
+            @Override
+            protected Calendar getTimeLastUpdate(Image image) {
+                return image.getTimeLastUpdate();
+            }
+
+            @Override
+            protected void onDeleted(Image image) {
+                deleteFile(MultimediaHelper.getFile(image));
+            }
+        };
+        imageUpserter.addJoinTable(joinImagesWithLettersDao, JoinImagesWithLettersDao.Properties.ImageId);
+        imageUpserter.addJoinTable(joinImagesWithNumbersDao, JoinImagesWithNumbersDao.Properties.ImageId);
+        imageUpserter.addJoinTable(joinImagesWithWordsDao, JoinImagesWithWordsDao.Properties.ImageId);
+        final List<JoinImagesWithLetters> joinImagesWithLettersList = new ArrayList<>();
+        final List<JoinImagesWithNumbers> joinImagesWithNumbersList = new ArrayList<>();
+        final List<JoinImagesWithWords> joinImagesWithWordsList = new ArrayList<>();
+        final JsonLoader.JsonArrayCallback<ImageGson> imageStorer = new JsonLoader.JsonArrayCallback<ImageGson>() {
+            @Override
+            public void onItem(ImageGson imageGson) {
+                Image image = GsonToGreenDaoConverter.getImage(imageGson);
+
+                File imageFile = MultimediaHelper.getFile(image);
+
+                if (imageFile.exists()) {
+                    int existingRevisionNumber = imageUpserter.getExistingRevisionNumber(image.getId());
+                    ContentUpserter.Operation operation = imageUpserter.add(image);
+                    if (operation == ContentUpserter.Operation.INSERT) {
+                        Log.i(getClass().getName(), "Storing Image. id: " + image.getId() + ", title: \"" + image.getTitle() + "\", revisionNumber: " + image.getRevisionNumber());
+
+                        // Store Letters
+                        if (imageGson.getLetters() != null) {
+                            for (LetterGson letterGson : imageGson.getLetters()) {
+                                JoinImagesWithLetters joinImagesWithLetters = new JoinImagesWithLetters();
+                                joinImagesWithLetters.setImageId(image.getId());
+                                joinImagesWithLetters.setLetterId(letterGson.getId());
+                                joinImagesWithLettersList.add(joinImagesWithLetters);
                             }
+                        }
 
-                            // Store Words
-                            if (imageGson.getWords() != null) {
-                                for (WordGson wordGson : imageGson.getWords()) {
-                                    JoinImagesWithWords joinImagesWithWords = new JoinImagesWithWords();
-                                    joinImagesWithWords.setImageId(image.getId());
-                                    joinImagesWithWords.setWordId(wordGson.getId());
-                                    joinImagesWithWordsDao.insert(joinImagesWithWords);
-                                }
+                        // Store Numbers
+                        if (imageGson.getNumbers() != null) {
+                            for (NumberGson numberGson : imageGson.getNumbers()) {
+                                JoinImagesWithNumbers joinImagesWithNumbers = new JoinImagesWithNumbers();
+                                joinImagesWithNumbers.setImageId(image.getId());
+                                joinImagesWithNumbers.setNumberId(numberGson.getId());
+                                joinImagesWithNumbersList.add(joinImagesWithNumbers);
                             }
-                        } else if (existingImage.getRevisionNumber() < image.getRevisionNumber()) {
-                            Log.i(getClass().getName(), "Updating Image with id " + existingImage.getId() + " from revisionNumber " + existingImage.getRevisionNumber() + " to revisionNumber " + image.getRevisionNumber());
-                            imageDao.update(image);
+                        }
 
-                            // TODO: update JoinImagesWithWords
-                        } else {
-                            Log.i(getClass().getName(), "Image \"" + image.getTitle() + "\" already exists in database with id " + image.getId() + " (revision " + image.getRevisionNumber() + ")");
+                        // Store Words
+                        if (imageGson.getWords() != null) {
+                            for (WordGson wordGson : imageGson.getWords()) {
+                                JoinImagesWithWords joinImagesWithWords = new JoinImagesWithWords();
+                                joinImagesWithWords.setImageId(image.getId());
+                                joinImagesWithWords.setWordId(wordGson.getId());
+                                joinImagesWithWordsList.add(joinImagesWithWords);
+                            }
                         }
+                    } else if (operation == ContentUpserter.Operation.UPDATE) {
+                        Log.i(getClass().getName(), "Updating Image with id " + image.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + image.getRevisionNumber());
+
+                        // TODO: update JoinImagesWithWords
+                    } else {
+                        Log.i(getClass().getName(), "Image \"" + image.getTitle() + "\" already exists in database with id " + image.getId() + " (revision " + image.getRevisionNumber() + ")");
                     }
+                } else {
+                    imageUpserter.markIncomplete();
+                }
+            }
+        };
+        final List<ImageGson> downloadedImageGsons = new ArrayList<>();
+        success = JsonLoader.loadJsonArray(url, "images", ImageGson.class, new JsonLoader.JsonArrayCallback<ImageGson>() {
+            @Override
+            public void onItem(ImageGson imageGson) {
+                Image image = GsonToGreenDaoConverter.getImage(imageGson);
+
+                File imageFile = MultimediaHelper.getFile(image);
+                Log.i(getClass().getName(), "imageFile: " + imageFile);
+                if (imageFile.exists()) {
+                    imageStorer.onItem(imageGson);
+                } else {
+                    // Stored once the download has finished
+                    multimediaDownloadManager.download(EnvironmentSettings.getBaseUrl() + imageGson.getDownloadUrl(), imageFile);
+                    downloadedImageGsons.add(imageGson);
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, imageUpserter.getDeletedIdCallback());
+        multimediaDownloadManager.awaitAll();
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            for (ImageGson imageGson : downloadedImageGsons) {
+                imageStorer.onItem(imageGson);
+            }
+            imageUpserter.apply(new Runnable() {
+                @Override
+                public void run() {
+                    joinImagesWithLettersDao.insertInTx(joinImagesWithLettersList);
+                    joinImagesWithNumbersDao.insertInTx(joinImagesWithNumbersList);
+                    joinImagesWithWordsDao.insertInTx(joinImagesWithWordsList);
+                }
+            });
+            contentSyncCursor.update("image", imageUpserter);
         }
 
 
@@ -538,112 +659,148 @@ public class DownloadContentAsyncTask extends AsyncTask<Void, String, String> {
         url = EnvironmentSettings.getRestUrl() + "/content/multimedia/video/list" +
                 "?deviceId=" + DeviceInfoHelper.getDeviceId(context) +
                 "&locale=" + DeviceInfoHelper.getLocale(context);
-        jsonResponse = JsonLoader.loadJson(url);
-        Log.i(getClass().getName(), "jsonResponse: " + jsonResponse);
-        try {
-            JSONObject jsonObject = new JSONObject(jsonResponse);
-            if (!"success".equals(jsonObject.getString("result"))) {
-                Log.w(getClass().getName(), "Download failed");
-            } else {
-                JSONArray jsonArray = jsonObject.getJSONArray("videos");
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    Type type = new TypeToken<VideoGson>(){}.getType();
-                    VideoGson videoGson = new Gson().fromJson(jsonArray.getString(i), type);
-                    Video video = GsonToGreenDaoConverter.getVideo(videoGson);
-
-                    File videoFile = MultimediaHelper.getFile(video);
-                    Log.i(getClass().getName(), "videoFile: " + videoFile);
-                    if (!videoFile.exists()) {
-                        // Download bytes
-                        byte[] bytes = MultimediaDownloader.downloadMultimedia(EnvironmentSettings.getBaseUrl() + videoGson.getDownloadUrl());
-                        Log.i(getClass().getName(), "bytes.length: " + bytes.length);
-                        try {
-                            FileOutputStream fileOutputStream = new FileOutputStream(videoFile);
-                            IOUtils.write(bytes, fileOutputStream);
-                            fileOutputStream.close();
-                            Log.i(getClass().getName(), "Stored Video file at " + videoFile.getAbsolutePath());
-                        } catch (FileNotFoundException e) {
-                            Log.e(getClass().getName(), null, e);
-                        } catch (IOException e) {
-                            Log.e(getClass().getName(), null, e);
-                        }
-                    }
+        url = contentSyncCursor.getUrl(url, "video");
+        final ContentUpserter<Video> videoUpserter = new ContentUpserter<Video>(videoDao, VideoDao.Properties.RevisionNumber) {
+            @Override
+            protected long getId(Video video) {
+                return video.getId();
+            }
 
-                    File thumbnailFile = MultimediaHelper.getVideoThumbnail(video);
-                    Log.i(getClass().getName(), "thumbnailFile: " + thumbnailFile);
-                    if (!thumbnailFile.exists()) {
-                        // Download bytes
-                        byte[] thumbnailBytes = MultimediaDownloader.downloadMultimedia(EnvironmentSettings.getBaseUrl() + videoGson.getThumbnailDownloadUrl());
-                        Log.i(getClass().getName(), "thumbnailBytes.length: " + thumbnailBytes.length);
-                        try {
-                            FileOutputStream fileOutputStream = new FileOutputStream(thumbnailFile);
-                            IOUtils.write(thumbnailBytes, fileOutputStream);
-                            fileOutputStream.close();
-                            Log.i(getClass().getName(), "Stored Video thumbnail at " + thumbnailFile.getAbsolutePath());
-                        } catch (FileNotFoundException e) {
-                            Log.e(getClass().getName(), null, e);
-                        } catch (IOException e) {
-                            Log.e(getClass().getName(), null, e);
-                        }
-                    }
-                    
-                    if (videoFile.exists() && thumbnailFile.exists()) {
-                        Video existingVideo = videoDao.queryBuilder()
-                                .where(VideoDao.Properties.Id.eq(video.getId()))
-                                .unique();
-                        if (existingVideo == null) {
-                            Log.i(getClass().getName(), "Storing Video. id: " + video.getId() + ", title: \"" + video.getTitle() + "\", revisionNumber: " + video.getRevisionNumber());
-                            videoDao.insert(video);
-
-                            // Store Letters
-                            if (videoGson.getLetters() != null) {
-                                for (LetterGson letterGson : videoGson.getLetters()) {
-                                    JoinVideosWithLetters joinVideosWithLetters = new JoinVideosWithLetters();
-                                    joinVideosWithLetters.setVideoId(video.getId());
-                                    joinVideosWithLetters.setLetterId(letterGson.getId());
-                                    joinVideosWithLettersDao.insert(joinVideosWithLetters);
-                                }
-                            }
+            @Override
+            protected int getRevisionNumber(Video video) {
+                return video.getRevisionNumber();
+            }
 
-                            // Store Numbers
-                            if (videoGson.getNumbers() != null) {
-                                for (NumberGson numberGson : videoGson.getNumbers()) {
-                                    JoinVideosWithNumbers joinVideosWithNumbers = new JoinVideosWithNumbers();
-                                    joinVideosWithNumbers.setVideoId(video.getId());
-                                    joinVideosWithNumbers.setNumberId(numberGson.getId());
-                                    joinVideosWithNumbersDao.insert(joinVideosWithNumbers);
-                                }
+            @Override
+            protected Calendar getTimeLastUpdate(Video video) {
+                return video.getTimeLastUpdate();
+            }
+
+            @Override
+            protected void onDeleted(Video video) {
+                deleteFile(MultimediaHelper.getFile(video));
+                deleteFile(MultimediaHelper.getVideoThumbnail(video));
+            }
+        };
+        videoUpserter.addJoinTable(joinVideosWithLettersDao, JoinVideosWithLettersDao.Properties.VideoId);
+        videoUpserter.addJoinTable(joinVideosWithNumbersDao, JoinVideosWithNumbersDao.Properties.VideoId);
+        videoUpserter.addJoinTable(joinVideosWithWordsDao, JoinVideosWithWordsDao.Properties.VideoId);
+        final List<JoinVideosWithLetters> joinVideosWithLettersList = new ArrayList<>();
+        final List<JoinVideosWithNumbers> joinVideosWithNumbersList = new ArrayList<>();
+        final List<JoinVideosWithWords> joinVideosWithWordsList = new ArrayList<>();
+        final JsonLoader.JsonArrayCallback<VideoGson> videoStorer = new JsonLoader.JsonArrayCallback<VideoGson>() {
+            @Override
+            public void onItem(VideoGson videoGson) {
+                Video video = GsonToGreenDaoConverter.getVideo(videoGson);
+
+                File videoFile = MultimediaHelper.getFile(video);
+                File thumbnailFile = MultimediaHelper.getVideoThumbnail(video);
+                if (videoFile.exists() && thumbnailFile.exists()) {
+                    int existingRevisionNumber = videoUpserter.getExistingRevisionNumber(video.getId());
+                    ContentUpserter.Operation operation = videoUpserter.add(video);
+                    if (operation == ContentUpserter.Operation.INSERT) {
+                        Log.i(getClass().getName(), "Storing Video. id: " + video.getId() + ", title: \"" + video.getTitle() + "\", revisionNumber: " + video.getRevisionNumber());
+
+                        // Store Letters
+                        if (videoGson.getLetters() != null) {
+                            for (LetterGson letterGson : videoGson.getLetters()) {
+                                JoinVideosWithLetters joinVideosWithLetters = new JoinVideosWithLetters();
+                                joinVideosWithLetters.setVideoId(video.getId());
+                                joinVideosWithLetters.setLetterId(letterGson.getId());
+                                joinVideosWithLettersList.add(joinVideosWithLetters);
                             }
+                        }
 
-                            // Store Words
-                            if (videoGson.getWords() != null) {
-                                for (WordGson wordGson : videoGson.getWords()) {
-                                    JoinVideosWithWords joinVideosWithWords = new JoinVideosWithWords();
-                                    joinVideosWithWords.setVideoId(video.getId());
-                                    joinVideosWithWords.setWordId(wordGson.getId());
-                                    joinVideosWithWordsDao.insert(joinVideosWithWords);
-                                }
+                        // Store Numbers
+                        if (videoGson.getNumbers() != null) {
+                            for (NumberGson numberGson : videoGson.getNumbers()) {
+                                JoinVideosWithNumbers joinVideosWithNumbers = new JoinVideosWithNumbers();
+                                joinVideosWithNumbers.setVideoId(video.getId());
+                                joinVideosWithNumbers.setNumberId(numberGson.getId());
+                                joinVideosWithNumbersList.add(joinVideosWithNumbers);
                             }
-                        } else if (existingVideo.getRevisionNumber() < video.getRevisionNumber()) {
-                            Log.i(getClass().getName(), "Updating Video with id " + existingVideo.getId() + " from revisionNumber " + existingVideo.getRevisionNumber() + " to revisionNumber " + video.getRevisionNumber());
-                            videoDao.update(video);
+                        }
 
-                            // TODO: update JoinVideosWithWords
-                        } else {
-                            Log.i(getClass().getName(), "Video \"" + video.getTitle() + "\" already exists in database with id " + video.getId() + " (revision " + video.getRevisionNumber() + ")");
+                        // Store Words
+                        if (videoGson.getWords() != null) {
+                            for (WordGson wordGson : videoGson.getWords()) {
+                                JoinVideosWithWords joinVideosWithWords = new JoinVideosWithWords();
+                                joinVideosWithWords.setVideoId(video.getId());
+                                joinVideosWithWords.setWordId(wordGson.getId());
+                                joinVideosWithWordsList.add(joinVideosWithWords);
+                            }
                         }
+                    } else if (operation == ContentUpserter.Operation.UPDATE) {
+                        Log.i(getClass().getName(), "Updating Video with id " + video.getId() + " from revisionNumber " + existingRevisionNumber + " to revisionNumber " + video.getRevisionNumber());
+
+                        // TODO: update JoinVideosWithWords
+                    } else {
+                        Log.i(getClass().getName(), "Video \"" + video.getTitle() + "\" already exists in database with id " + video.getId() + " (revision " + video.getRevisionNumber() + ")");
+                    }
+                } else {
+                    videoUpserter.markIncomplete();
+                }
+            }
+        };
+        final List<VideoGson> downloadedVideoGsons = new ArrayList<>();
+        success = JsonLoader.loadJsonArray(url, "videos", VideoGson.class, new JsonLoader.JsonArrayCallback<VideoGson>() {
+            @Override
+            public void onItem(VideoGson videoGson) {
+                Video video = GsonToGreenDaoConverter.getVideo(videoGson);
+
+                File videoFile = MultimediaHelper.getFile(video);
+                Log.i(getClass().getName(), "videoFile: " + videoFile);
+                File thumbnailFile = MultimediaHelper.getVideoThumbnail(video);
+                Log.i(getClass().getName(), "thumbnailFile: " + thumbnailFile);
+                if (videoFile.exists() && thumbnailFile.exists()) {
+                    videoStorer.onItem(videoGson);
+                } else {
+                    // Stored once the download has finished
+                    if (!videoFile.exists()) {
+                        multimediaDownloadManager.download(EnvironmentSettings.getBaseUrl() + videoGson.getDownloadUrl(), videoFile);
+                    }
+                    if (!thumbnailFile.exists()) {
+                        multimediaDownloadManager.download(EnvironmentSettings.getBaseUrl() + videoGson.getThumbnailDownloadUrl(), thumbnailFile);
                     }
+                    downloadedVideoGsons.add(videoGson);
                 }
             }
-        } catch (JSONException e) {
-            Log.e(getClass().getName(), null, e);
+        }, videoUpserter.getDeletedIdCallback());
+        multimediaDownloadManager.awaitAll();
+        if (!success) {
+            Log.w(getClass().getName(), "Download failed");
+        } else {
+            for (VideoGson videoGson : downloadedVideoGsons) {
+                videoStorer.onItem(videoGson);
+            }
+            videoUpserter.apply(new Runnable() {
+                @Override
+                public void run() {
+                    joinVideosWithLettersDao.insertInTx(joinVideosWithLettersList);
+                    joinVideosWithNumbersDao.insertInTx(joinVideosWithNumbersList);
+                    joinVideosWithWordsDao.insertInTx(joinVideosWithWordsList);
+                }
+            });
+            contentSyncCursor.update("video", videoUpserter);
         }
 
 
+        multimediaDownloadManager.shutdown();
+
         String result = "Content download complete. Please restart the application.";
         return result;
     }
 
+    /**
+     * Delete the file of a multimedia entity which has been deleted on the server
+     * @param file
+     */
+    private void deleteFile(File file) {
+        if (file.exists() && file.delete()) {
+            Log.i(getClass().getName(), "Deleted file " + file.getAbsolutePath());
+        }
+    }
+
     @Override
     protected void onProgressUpdate(String... values) {
         Log.i(getClass().getName(), "onProgressUpdate");
@@ -0,0 +1,96 @@
+package org.literacyapp.service.synchronization;
+
+/**
+ * Map from long keys to int values with open addressing, so neither the keys nor the values are boxed.
+ */
+
+public class LongIntMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    public LongIntMap(){
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize - Number of entries which can be put without resizing
+     */
+    public LongIntMap(int expectedSize){
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < expectedSize * 2){
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    public void put(long key, int value){
+        if ((size + 1) * 2 > keys.length){
+            resize(keys.length << 1);
+        }
+        int slot = findSlot(keys, used, key);
+        if (!used[slot]){
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Returns the value of the key or the defaultValue if the key doesn't exist
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public int get(long key, int defaultValue){
+        int slot = findSlot(keys, used, key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key){
+        return used[findSlot(keys, used, key)];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++){
+            if (oldUsed[i]){
+                int slot = findSlot(keys, used, oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the key or the free slot where it would be stored
+     */
+    private static int findSlot(long[] keys, boolean[] used, long key){
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (used[slot] && (keys[slot] != key)){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,110 @@
+package org.literacyapp.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared OkHttpClient for the communication with the server.
+ * Connections are kept alive and reused between requests, responses are requested with gzip and decompressed transparently,
+ * and JSON responses with an ETag are cached, so they are revalidated with If-None-Match instead of being downloaded again.
+ */
+public class HttpClientHelper {
+
+    public static final int CONNECT_TIMEOUT_SECONDS = 15;
+    public static final int READ_TIMEOUT_SECONDS = 30;
+    public static final int WRITE_TIMEOUT_SECONDS = 30;
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+    private static final long CACHE_SIZE = 10 * 1024 * 1024;
+
+    // Always ask the server if the cached response is still valid
+    private static final CacheControl REVALIDATE = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+    // Multimedia files are large and already compressed, they would only displace the JSON responses from the cache
+    private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+
+    private static OkHttpClient okHttpClient;
+
+    /**
+     * Enable the response cache, has to be called before the first request
+     * @param context
+     */
+    public static synchronized void init(Context context) {
+        Log.i(HttpClientHelper.class.getName(), "init");
+
+        OkHttpClient okHttpClient = getOkHttpClient();
+        if (okHttpClient.getCache() == null) {
+            File cacheDirectory = new File(context.getCacheDir(), "http");
+            okHttpClient.setCache(new Cache(cacheDirectory, CACHE_SIZE));
+        }
+    }
+
+    public static synchronized OkHttpClient getOkHttpClient() {
+        if (okHttpClient == null) {
+            okHttpClient = new OkHttpClient();
+            okHttpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            okHttpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            okHttpClient.setWriteTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            okHttpClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        }
+        return okHttpClient;
+    }
+
+    /**
+     * Returns a GET request for JSON, which is answered from the cache if the server replies 304 Not Modified
+     * @param url
+     * @return
+     */
+    public static Request getJsonRequest(String url) {
+        return new Request.Builder()
+                .url(url)
+                .cacheControl(REVALIDATE)
+                .build();
+    }
+
+    /**
+     * Returns a GET request for a multimedia file, which bypasses the cache
+     * @param url
+     * @param offset - Number of bytes which have already been downloaded, they are skipped with a Range header
+     * @param ifRange - ETag or Last-Modified of the response the downloaded bytes belong to. It is sent as If-Range header,
+     *                so the server returns the complete file instead of the range if the file has been changed meanwhile.
+     * @return
+     */
+    public static Request getMultimediaRequest(String url, long offset, String ifRange) {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .cacheControl(NO_STORE)
+                // Without transparent gzip the Content-Length and Content-Range refer to the bytes of the file
+                .header("Accept-Encoding", "identity");
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+            builder.header("If-Range", ifRange);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Log if the response has been read from the network or has been revalidated
+     * @param response
+     */
+    public static void logResponse(Response response) {
+        Response networkResponse = response.networkResponse();
+        if (networkResponse == null) {
+            Log.i(HttpClientHelper.class.getName(), "responseCode: " + response.code() + " (cache)");
+        } else if (networkResponse.code() == 304) {
+            Log.i(HttpClientHelper.class.getName(), "responseCode: " + response.code() + " (not modified)");
+        } else {
+            Log.i(HttpClientHelper.class.getName(), "responseCode: " + response.code());
+        }
+    }
+}
@@ -2,17 +2,28 @@ package org.literacyapp.util;
 
 import android.util.Log;
 
-import java.io.BufferedReader;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
 
 public class JsonLoader {
 
+    private static final Gson GSON = new Gson();
+    private static final String DELETED_IDS = "deletedIds";
+
+    /**
+     * Receives the elements of a JSON array one at a time while the response is still being read
+     * @param <T>
+     */
+    public interface JsonArrayCallback<T> {
+        void onItem(T item);
+    }
+
     public static String loadJson(String urlValue) {
         Log.i(JsonLoader.class.getName(), "loadJson");
 
@@ -21,33 +32,13 @@ public class JsonLoader {
         String jsonResponse = null;
 
         try {
-            URL url = new URL(urlValue);
-
-            HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
-            httpURLConnection.setRequestMethod("GET");
-            httpURLConnection.connect();
-
-            int responseCode = httpURLConnection.getResponseCode();
-            Log.i(JsonLoader.class.getName(), "responseCode: " + responseCode);
-            InputStream inputStream = null;
-            if (responseCode == 200) {
-                inputStream = httpURLConnection.getInputStream();
-            } else {
-                inputStream = httpURLConnection.getErrorStream();
-            }
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (jsonResponse == null) {
-                    jsonResponse = "";
-                }
-                jsonResponse += line;
-            }
-        } catch (MalformedURLException e) {
-            Log.e(JsonLoader.class.getName(), "MalformedURLException", e);
-            e.printStackTrace();
-        } catch (ProtocolException e) {
-            Log.e(JsonLoader.class.getName(), "ProtocolException", e);
+            Request request = HttpClientHelper.getJsonRequest(urlValue);
+            Response response = HttpClientHelper.getOkHttpClient().newCall(request).execute();
+            HttpClientHelper.logResponse(response);
+            // The body of error responses is returned as well
+            jsonResponse = response.body().string();
+        } catch (IllegalArgumentException e) {
+            Log.e(JsonLoader.class.getName(), "IllegalArgumentException", e);
             e.printStackTrace();
         } catch (IOException e) {
             Log.e(JsonLoader.class.getName(), "IOException", e);
@@ -56,4 +47,96 @@ public class JsonLoader {
 
         return jsonResponse;
     }
+
+    /**
+     * Read a response of the form {"result": "success", "arrayName": [...]} directly from the connection,
+     * every element of the array is deserialized and handed over to the callback without keeping the whole response in memory
+     * @param urlValue
+     * @param arrayName
+     * @param type - Type of the array elements
+     * @param callback
+     * @return true if the result of the response is "success"
+     */
+    public static <T> boolean loadJsonArray(String urlValue, String arrayName, Class<T> type, JsonArrayCallback<T> callback) {
+        return loadJsonArray(urlValue, arrayName, type, callback, null);
+    }
+
+    /**
+     * Same as loadJsonArray, additionally the ids of the optional array "deletedIds" are handed over to the deletedIdCallback
+     * @param urlValue
+     * @param arrayName
+     * @param type - Type of the array elements
+     * @param callback
+     * @param deletedIdCallback - Receives the ids of deleted elements or null if they should be ignored
+     * @return true if the result of the response is "success"
+     */
+    public static <T> boolean loadJsonArray(String urlValue, String arrayName, Class<T> type, JsonArrayCallback<T> callback, JsonArrayCallback<Long> deletedIdCallback) {
+        Log.i(JsonLoader.class.getName(), "loadJsonArray");
+
+        Log.i(JsonLoader.class.getName(), "Downloading from " + urlValue + "...");
+
+        String result = null;
+        int numberOfItems = 0;
+
+        ResponseBody responseBody = null;
+        try {
+            Request request = HttpClientHelper.getJsonRequest(urlValue);
+            Response response = HttpClientHelper.getOkHttpClient().newCall(request).execute();
+            HttpClientHelper.logResponse(response);
+            responseBody = response.body();
+            JsonReader jsonReader = new JsonReader(responseBody.charStream());
+            try {
+                jsonReader.beginObject();
+                while (jsonReader.hasNext()) {
+                    String name = jsonReader.nextName();
+                    if ("result".equals(name)) {
+                        result = jsonReader.nextString();
+                    } else if (arrayName.equals(name)) {
+                        jsonReader.beginArray();
+                        while (jsonReader.hasNext()) {
+                            T item = GSON.fromJson(jsonReader, type);
+                            callback.onItem(item);
+                            numberOfItems++;
+                        }
+                        jsonReader.endArray();
+                    } else if ((deletedIdCallback != null) && DELETED_IDS.equals(name)) {
+                        jsonReader.beginArray();
+                        while (jsonReader.hasNext()) {
+                            deletedIdCallback.onItem(jsonReader.nextLong());
+                        }
+                        jsonReader.endArray();
+                    } else {
+                        jsonReader.skipValue();
+                    }
+                }
+                jsonReader.endObject();
+            } finally {
+                jsonReader.close();
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(JsonLoader.class.getName(), "IllegalArgumentException", e);
+            return false;
+        } catch (IOException e) {
+            Log.e(JsonLoader.class.getName(), "IOException", e);
+            return false;
+        } catch (JsonParseException e) {
+            Log.e(JsonLoader.class.getName(), "JsonParseException", e);
+            return false;
+        } catch (IllegalStateException e) {
+            // Thrown by the JsonReader if the response doesn't have the expected structure
+            Log.e(JsonLoader.class.getName(), "IllegalStateException", e);
+            return false;
+        } finally {
+            if (responseBody != null) {
+                try {
+                    responseBody.close();
+                } catch (IOException e) {
+                    Log.e(JsonLoader.class.getName(), "IOException", e);
+                }
+            }
+        }
+
+        Log.i(JsonLoader.class.getName(), "result: " + result + ", numberOfItems: " + numberOfItems);
+        return "success".equals(result);
+    }
 }
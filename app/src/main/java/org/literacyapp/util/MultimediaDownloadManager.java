@@ -0,0 +1,87 @@
+package org.literacyapp.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Downloads multimedia files with a fixed number of worker threads, so several small files are transferred at the same time
+ * while the memory usage stays independent of the file sizes (see MultimediaDownloader).
+ */
+public class MultimediaDownloadManager {
+
+    private static final int NUMBER_OF_DOWNLOAD_THREADS = 3;
+
+    private final ExecutorService executor;
+    // Pending downloads by target file path, so a file which is contained twice is only downloaded once
+    private final Map<String, Future<Boolean>> downloads = new HashMap<>();
+
+    public MultimediaDownloadManager() {
+        executor = Executors.newFixedThreadPool(NUMBER_OF_DOWNLOAD_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MultimediaDownloadManager");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue the download of the file, it is stored at its final path once it is complete
+     * @param urlValue
+     * @param file
+     */
+    public synchronized void download(final String urlValue, final File file) {
+        if (downloads.containsKey(file.getPath())) {
+            return;
+        }
+        downloads.put(file.getPath(), executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return MultimediaDownloader.downloadMultimedia(urlValue, file);
+            }
+        }));
+    }
+
+    /**
+     * Wait until all queued downloads have finished
+     * @return true if all files have been downloaded
+     */
+    public boolean awaitAll() {
+        List<Future<Boolean>> futures;
+        synchronized (this) {
+            futures = new ArrayList<>(downloads.values());
+            downloads.clear();
+        }
+        boolean success = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                success &= future.get();
+            } catch (InterruptedException e) {
+                Log.e(getClass().getName(), null, e);
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                Log.e(getClass().getName(), null, e);
+                success = false;
+            }
+        }
+        Log.i(getClass().getName(), "Downloads finished: " + futures.size() + ", success: " + success);
+        return success;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
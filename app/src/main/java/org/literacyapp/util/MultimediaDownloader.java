@@ -1,61 +1,275 @@
 package org.literacyapp.util;
 
+import android.util.Base64;
 import android.util.Log;
 
-import org.apache.commons.io.IOUtils;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class MultimediaDownloader {
 
-    public static byte[] downloadMultimedia(String urlValue) {
-        Log.i(MultimediaDownloader.class.getName(), "downloadMultimedia");
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String PART_FILE_SUFFIX = ".part";
+    private static final String VALIDATOR_FILE_SUFFIX = ".validator";
 
-        Log.i(MultimediaDownloader.class.getName(), "Downloading from " + urlValue + "...");
+    /**
+     * Stream the file directly to disk instead of keeping it in memory.
+     * The bytes are written to a .part file next to the target file, which is renamed once the download is complete,
+     * so the target file either doesn't exist or is complete. If a .part file exists from an interrupted download,
+     * only the missing bytes are requested with an HTTP Range header. The ETag (or Last-Modified) of the response is stored
+     * in a .validator file next to the .part file and sent as If-Range header, so the server returns the complete file
+     * instead of appending bytes of a newer version if the file has been changed on the server meanwhile.
+     * The size is verified against the Content-Length/Content-Range of the response and the MD5 checksum of the
+     * received bytes against the Content-MD5 header, if the server sends one. Like the Content-Length, the Content-MD5
+     * of a 206 response only covers the requested range (RFC 2616 14.15), not the bytes already in the .part file.
+     * @param urlValue
+     * @param file - Target file, e.g. MultimediaHelper.getFile(audio)
+     * @return true if the file has been downloaded completely
+     */
+    public static boolean downloadMultimedia(String urlValue, File file) {
+        Log.i(MultimediaDownloader.class.getName(), "downloadMultimedia");
 
-        byte[] bytes = null;
+        File partFile = new File(file.getPath() + PART_FILE_SUFFIX);
+        File validatorFile = new File(partFile.getPath() + VALIDATOR_FILE_SUFFIX);
+        long offset = partFile.exists() ? partFile.length() : 0;
+        String validator = null;
+        if (offset > 0) {
+            validator = readValidator(validatorFile);
+            if (validator == null) {
+                // Without a validator it can't be verified that the bytes belong to the current version of the file
+                Log.w(MultimediaDownloader.class.getName(), "Missing validator of " + partFile.getName() + ", starting from the beginning");
+                partFile.delete();
+                offset = 0;
+            }
+        }
+        Log.i(MultimediaDownloader.class.getName(), "Downloading from " + urlValue + " (offset " + offset + ")...");
 
+        ResponseBody responseBody = null;
         try {
-            URL url = new URL(urlValue);
-
-            HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
-            httpURLConnection.setRequestMethod("GET");
-            httpURLConnection.connect();
-
-            int responseCode = httpURLConnection.getResponseCode();
-            Log.i(MultimediaDownloader.class.getName(), "responseCode: " + responseCode);
-            InputStream inputStream = null;
-            if (responseCode == 200) {
-                inputStream = httpURLConnection.getInputStream();
-                bytes = IOUtils.toByteArray(inputStream);
+            Request request = HttpClientHelper.getMultimediaRequest(urlValue, offset, validator);
+            Response response = HttpClientHelper.getOkHttpClient().newCall(request).execute();
+            HttpClientHelper.logResponse(response);
+            responseBody = response.body();
+            int responseCode = response.code();
+            long expectedLength;
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                String contentRange = response.header("Content-Range");
+                if (getRangeStart(contentRange) != offset) {
+                    Log.w(MultimediaDownloader.class.getName(), "Unexpected Content-Range: " + contentRange);
+                    deletePartFile(partFile, validatorFile);
+                    return false;
+                }
+                expectedLength = getRangeTotal(contentRange);
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // The server doesn't support ranges or the file has been changed since the .part file was started,
+                // start from the beginning
+                offset = 0;
+                expectedLength = responseBody.contentLength();
+                writeValidator(validatorFile, getValidator(response));
             } else {
-                inputStream = httpURLConnection.getErrorStream();
-                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                String response = "";
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    response += line;
+                if (responseCode == 416) {
+                    // Range Not Satisfiable, i.e. the .part file is invalid
+                    deletePartFile(partFile, validatorFile);
                 }
-                Log.w(MultimediaDownloader.class.getName(), "responseCode: " + responseCode + ", response: " + response);
+                Log.w(MultimediaDownloader.class.getName(), "responseCode: " + responseCode + ", response: " + responseBody.string());
+                return false;
             }
-        } catch (MalformedURLException e) {
-            Log.e(MultimediaDownloader.class.getName(), "MalformedURLException", e);
-            e.printStackTrace();
-        } catch (ProtocolException e) {
-            Log.e(MultimediaDownloader.class.getName(), "ProtocolException", e);
+
+            // Only the body of this response
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long length = offset;
+            InputStream inputStream = responseBody.byteStream();
+            OutputStream outputStream = new FileOutputStream(partFile, offset > 0);
+            try {
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                    messageDigest.update(buffer, 0, count);
+                    length += count;
+                }
+            } finally {
+                outputStream.close();
+                inputStream.close();
+            }
+
+            if ((expectedLength >= 0) && (length != expectedLength)) {
+                // The connection has been closed early, the rest is requested with the next download
+                Log.w(MultimediaDownloader.class.getName(), "Incomplete download of " + file.getName() + ": " + length + " of " + expectedLength + " bytes");
+                return false;
+            }
+            String contentMd5 = response.header("Content-MD5");
+            if (contentMd5 != null) {
+                String md5 = Base64.encodeToString(messageDigest.digest(), Base64.NO_WRAP);
+                if (!contentMd5.trim().equals(md5)) {
+                    Log.w(MultimediaDownloader.class.getName(), "Checksum mismatch of " + file.getName() + ": " + md5 + " instead of " + contentMd5);
+                    if (offset > 0) {
+                        // Only the received range is corrupt, it is requested again with the next download
+                        truncate(partFile, offset);
+                    } else {
+                        deletePartFile(partFile, validatorFile);
+                    }
+                    return false;
+                }
+            }
+
+            if (file.exists()) {
+                file.delete();
+            }
+            if (!partFile.renameTo(file)) {
+                Log.w(MultimediaDownloader.class.getName(), "Could not rename " + partFile + " to " + file);
+                return false;
+            }
+            validatorFile.delete();
+            Log.i(MultimediaDownloader.class.getName(), "Stored " + length + " bytes at " + file.getAbsolutePath());
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.e(MultimediaDownloader.class.getName(), "IllegalArgumentException", e);
             e.printStackTrace();
         } catch (IOException e) {
+            // The .part file is kept, so the download can be resumed
             Log.e(MultimediaDownloader.class.getName(), "IOException", e);
             e.printStackTrace();
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(MultimediaDownloader.class.getName(), "NoSuchAlgorithmException", e);
+            e.printStackTrace();
+        } finally {
+            if (responseBody != null) {
+                try {
+                    responseBody.close();
+                } catch (IOException e) {
+                    Log.e(MultimediaDownloader.class.getName(), "IOException", e);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static void deletePartFile(File partFile, File validatorFile) {
+        partFile.delete();
+        validatorFile.delete();
+    }
+
+    /**
+     * Returns the value for an If-Range header, i.e. the ETag of the response or its Last-Modified date if it only has
+     * a weak ETag or none, or null if the response contains neither
+     * @param response
+     * @return
+     */
+    static String getValidator(Response response) {
+        String eTag = response.header("ETag");
+        if ((eTag != null) && !eTag.startsWith("W/")) {
+            // Weak ETags must not be used in If-Range
+            return eTag;
         }
+        return response.header("Last-Modified");
+    }
 
-        return bytes;
+    private static String readValidator(File validatorFile) {
+        if (!validatorFile.exists()) {
+            return null;
+        }
+        try {
+            InputStream inputStream = new FileInputStream(validatorFile);
+            try {
+                byte[] bytes = new byte[(int) validatorFile.length()];
+                int length = 0;
+                int count;
+                while ((length < bytes.length) && ((count = inputStream.read(bytes, length, bytes.length - length)) != -1)) {
+                    length += count;
+                }
+                String validator = new String(bytes, 0, length, "UTF-8").trim();
+                return validator.isEmpty() ? null : validator;
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.e(MultimediaDownloader.class.getName(), "IOException", e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the validator of a response which is written to the .part file from the beginning. Without a validator
+     * the .part file can't be resumed, so the old validator is deleted in any case.
+     * @param validatorFile
+     * @param validator
+     * @throws IOException
+     */
+    private static void writeValidator(File validatorFile, String validator) throws IOException {
+        validatorFile.delete();
+        if (validator == null) {
+            return;
+        }
+        OutputStream outputStream = new FileOutputStream(validatorFile);
+        try {
+            outputStream.write(validator.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the first byte position of a Content-Range header like "bytes 100-199/200" or -1
+     * @param contentRange
+     * @return
+     */
+    static long getRangeStart(String contentRange) {
+        if ((contentRange == null) || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+        int dashIndex = contentRange.indexOf('-');
+        if (dashIndex < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dashIndex).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the complete length of a Content-Range header like "bytes 100-199/200" or -1 if it is unknown
+     * @param contentRange
+     * @return
+     */
+    static long getRangeTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slashIndex = contentRange.lastIndexOf('/');
+        if (slashIndex < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slashIndex + 1).trim());
+        } catch (NumberFormatException e) {
+            // "*"
+            return -1;
+        }
     }
 }
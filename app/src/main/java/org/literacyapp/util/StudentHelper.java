@@ -5,8 +5,10 @@ import android.os.Environment;
 import android.util.Log;
 
 import org.literacyapp.contentprovider.dao.StudentDao;
+import org.literacyapp.contentprovider.model.Student;
 
 import java.io.File;
+import java.util.List;
 
 public class StudentHelper {
 
@@ -26,12 +28,19 @@ public class StudentHelper {
         Log.i(StudentHelper.class.getName(), "generateNextUniqueId");
 
         String deviceId = DeviceInfoHelper.getDeviceId(context);
-        Log.i(StudentHelper.class.getName(), "Looking up the number of Students registered on device " + deviceId);
-        long count = studentDao.queryBuilder()
+        Log.i(StudentHelper.class.getName(), "Looking up the highest id of the Students registered on device " + deviceId);
+        // The number of Students can't be used, because merged Students are deleted
+        List<Student> students = studentDao.queryBuilder()
                 .where(StudentDao.Properties.UniqueId.like(deviceId + "%"))
-                .count();
-        Log.i(StudentHelper.class.getName(), "count: " + count);
-        String uniqueId = deviceId + "_" + (count + 1);
+                .list();
+        long maxLongId = 0;
+        for (Student student : students) {
+            if (deviceId.equals(extractDeviceIdFromUniqueId(student.getUniqueId()))) {
+                maxLongId = Math.max(maxLongId, extractLongIdFromUniqueId(student.getUniqueId()));
+            }
+        }
+        Log.i(StudentHelper.class.getName(), "maxLongId: " + maxLongId);
+        String uniqueId = deviceId + "_" + (maxLongId + 1);
         Log.i(StudentHelper.class.getName(), "uniqueId: " + uniqueId);
         return uniqueId;
     }
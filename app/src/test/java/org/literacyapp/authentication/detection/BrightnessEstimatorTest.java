@@ -0,0 +1,49 @@
+package org.literacyapp.authentication.detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class BrightnessEstimatorTest {
+
+    @Test
+    public void testMidGrayHasBrightnessTwo() {
+        BrightnessEstimator brightnessEstimator = new BrightnessEstimator();
+        assertThat(brightnessEstimator.hasEstimate(), is(false));
+        updateWithUniformImage(brightnessEstimator, 128);
+        assertThat(brightnessEstimator.hasEstimate(), is(true));
+        assertEquals(2, brightnessEstimator.getBrightness(), 0.05);
+    }
+
+    @Test
+    public void testSingleDarkFrameIsSmoothed() {
+        BrightnessEstimator brightnessEstimator = new BrightnessEstimator();
+        updateWithUniformImage(brightnessEstimator, 128);
+        updateWithUniformImage(brightnessEstimator, 0);
+        assertThat(brightnessEstimator.getBrightness() > 1, is(true));
+        assertThat(brightnessEstimator.getBrightness() < 2, is(true));
+    }
+
+    @Test
+    public void testResetForgetsPreviousEstimates() {
+        BrightnessEstimator brightnessEstimator = new BrightnessEstimator();
+        updateWithUniformImage(brightnessEstimator, 255);
+        brightnessEstimator.reset();
+        updateWithUniformImage(brightnessEstimator, 64);
+        assertEquals(1, brightnessEstimator.getBrightness(), 0.05);
+    }
+
+    private static void updateWithUniformImage(BrightnessEstimator brightnessEstimator, int luma) {
+        byte[] row = new byte[64];
+        Arrays.fill(row, (byte) luma);
+        brightnessEstimator.clearHistogram();
+        for (int y = 0; y < 8; y++){
+            brightnessEstimator.addRow(row, row.length);
+        }
+        brightnessEstimator.finishUpdate();
+    }
+}
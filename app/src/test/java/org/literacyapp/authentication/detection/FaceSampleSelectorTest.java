@@ -0,0 +1,46 @@
+package org.literacyapp.authentication.detection;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FaceSampleSelectorTest {
+
+    @Test
+    public void testSamplesAreKeptUntilCapacityIsReached() {
+        FaceSampleSelector<String> faceSampleSelector = new FaceSampleSelector<>(2);
+        assertThat(faceSampleSelector.offer("a", 0.5, new float[] {1, 0}), is(nullValue()));
+        assertThat(faceSampleSelector.offer("b", 0.5, new float[] {0, 1}), is(nullValue()));
+        assertThat(faceSampleSelector.size(), is(2));
+    }
+
+    @Test
+    public void testLowQualitySampleIsDropped() {
+        FaceSampleSelector<String> faceSampleSelector = new FaceSampleSelector<>(2);
+        faceSampleSelector.offer("sharp", 0.9, new float[] {1, 0, 0});
+        faceSampleSelector.offer("blurry", 0.1, new float[] {0, 1, 0});
+        assertThat(faceSampleSelector.offer("bright", 0.8, new float[] {0, 0, 1}), is("blurry"));
+        assertThat(faceSampleSelector.getSelectedSamples(), is(Arrays.asList("sharp", "bright")));
+    }
+
+    @Test
+    public void testNearDuplicateIsDroppedBeforeDiverseSample() {
+        FaceSampleSelector<String> faceSampleSelector = new FaceSampleSelector<>(2);
+        faceSampleSelector.offer("frontal", 0.9, new float[] {1, 0});
+        faceSampleSelector.offer("profile", 0.6, new float[] {0, 1});
+        // Better than the profile, but almost the same pose as the frontal sample
+        assertThat(faceSampleSelector.offer("frontalAgain", 0.8, new float[] {0.99f, 0.141f}), is("frontalAgain"));
+        assertThat(faceSampleSelector.getSelectedSamples(), is(Arrays.asList("frontal", "profile")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentDimensionIsRejected() {
+        FaceSampleSelector<String> faceSampleSelector = new FaceSampleSelector<>(2);
+        faceSampleSelector.offer("a", 0.5, new float[] {1, 0});
+        faceSampleSelector.offer("b", 0.5, new float[] {1, 0, 0});
+    }
+}
@@ -0,0 +1,57 @@
+package org.literacyapp.authentication.recognition;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DuplicateStudentDetectorTest {
+
+    @Test
+    public void testSimilarStudentsAreFound() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        studentEmbeddingIndex.put(1, 10, new float[] {1, 0, 0});
+        studentEmbeddingIndex.put(2, 20, new float[] {0, 1, 0});
+        studentEmbeddingIndex.put(3, 30, new float[] {0.9f, 0.1f, 0});
+        // Same Student as the first StudentImageCollectionEvent, must not be reported
+        studentEmbeddingIndex.put(4, 10, new float[] {1, 0.05f, 0});
+
+        List<StudentPair> studentPairs = new DuplicateStudentDetector(0.9, 2).findCandidatePairs(studentEmbeddingIndex.snapshot());
+        assertThat(studentPairs.size(), is(1));
+        assertThat(studentPairs.get(0).getStudentId1(), is(10L));
+        assertThat(studentPairs.get(0).getStudentId2(), is(30L));
+    }
+
+    @Test
+    public void testTiledScanFindsAllPairs() {
+        Random random = new Random(42);
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        int size = 101;
+        for (int i = 0; i < size; i++) {
+            float[] meanFeatureVector = new float[4];
+            for (int j = 0; j < meanFeatureVector.length; j++) {
+                meanFeatureVector[j] = random.nextFloat();
+            }
+            studentEmbeddingIndex.put(i + 1, i + 1, meanFeatureVector);
+        }
+        StudentEmbeddingIndex.Snapshot snapshot = studentEmbeddingIndex.snapshot();
+
+        int expectedNumberOfPairs = 0;
+        for (int row = 0; row < size; row++) {
+            for (int column = row + 1; column < size; column++) {
+                if (Math.abs(snapshot.dot(row, column)) > 0.95) {
+                    expectedNumberOfPairs++;
+                }
+            }
+        }
+
+        List<StudentPair> studentPairs = new DuplicateStudentDetector(0.95, 7).findCandidatePairs(snapshot);
+        assertThat(studentPairs.size(), is(expectedNumberOfPairs));
+        for (int i = 1; i < studentPairs.size(); i++) {
+            assertThat(studentPairs.get(i - 1).getSimilarity() >= studentPairs.get(i).getSimilarity(), is(true));
+        }
+    }
+}
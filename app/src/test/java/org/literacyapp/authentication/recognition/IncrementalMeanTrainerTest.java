@@ -0,0 +1,74 @@
+package org.literacyapp.authentication.recognition;
+
+import org.junit.Test;
+import org.literacyapp.contentprovider.model.analytics.StudentImageCollectionEvent;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IncrementalMeanTrainerTest {
+
+    @Test
+    public void testMeanFeatureVectorOfStudentImageCollectionEvent() {
+        StudentImageCollectionEvent studentImageCollectionEvent = new StudentImageCollectionEvent();
+        assertThat(IncrementalMeanTrainer.getMeanFeatureVector(studentImageCollectionEvent), is(nullValue()));
+
+        IncrementalMeanTrainer.addFeatureVector(studentImageCollectionEvent, new float[] {1, 2});
+        IncrementalMeanTrainer.addFeatureVector(studentImageCollectionEvent, new float[] {3, 6});
+        assertThat(studentImageCollectionEvent.getFeatureVectorCount(), is(2));
+        assertThat(IncrementalMeanTrainer.getMeanFeatureVector(studentImageCollectionEvent), is(new float[] {2, 4}));
+    }
+
+    @Test
+    public void testStudentMeanFeatureVectorIsWeightedByCount() {
+        IncrementalMeanTrainer incrementalMeanTrainer = new IncrementalMeanTrainer(null);
+        incrementalMeanTrainer.addStudentImageCollectionEvent(getStudentImageCollectionEvent(10, new float[] {3, 0}, 3));
+        incrementalMeanTrainer.addStudentImageCollectionEvent(getStudentImageCollectionEvent(10, new float[] {0, 1}, 1));
+        incrementalMeanTrainer.addStudentImageCollectionEvent(getStudentImageCollectionEvent(20, new float[] {4, 4}, 2));
+
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(10), is(new float[] {0.75f, 0.25f}));
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(20), is(new float[] {2, 2}));
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(30), is(nullValue()));
+    }
+
+    @Test
+    public void testMergeStudentsCombinesRunningSums() {
+        IncrementalMeanTrainer incrementalMeanTrainer = new IncrementalMeanTrainer(null);
+        incrementalMeanTrainer.addStudentImageCollectionEvent(getStudentImageCollectionEvent(10, new float[] {2, 0}, 2));
+        incrementalMeanTrainer.addStudentImageCollectionEvent(getStudentImageCollectionEvent(20, new float[] {0, 2}, 2));
+
+        incrementalMeanTrainer.mergeStudents(20, 10);
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(10), is(new float[] {0.5f, 0.5f}));
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(20), is(nullValue()));
+    }
+
+    @Test
+    public void testPersistedStudentImageCollectionEventIsNotAddedTwiceOnFirstUse() {
+        final StudentImageCollectionEvent trainedStudentImageCollectionEvent = getStudentImageCollectionEvent(10, new float[] {0, 0}, 2);
+        trainedStudentImageCollectionEvent.setId(1L);
+        // Has already been stored by the caller before it is added
+        final StudentImageCollectionEvent newStudentImageCollectionEvent = getStudentImageCollectionEvent(10, new float[] {4, 0}, 2);
+        newStudentImageCollectionEvent.setId(2L);
+        IncrementalMeanTrainer incrementalMeanTrainer = new IncrementalMeanTrainer(null) {
+            @Override
+            List<StudentImageCollectionEvent> loadTrainedStudentImageCollectionEvents() {
+                return Arrays.asList(trainedStudentImageCollectionEvent, newStudentImageCollectionEvent);
+            }
+        };
+
+        incrementalMeanTrainer.addStudentImageCollectionEvent(newStudentImageCollectionEvent);
+        assertThat(incrementalMeanTrainer.getStudentMeanFeatureVector(10), is(new float[] {1, 0}));
+    }
+
+    private StudentImageCollectionEvent getStudentImageCollectionEvent(long studentId, float[] featureVectorSum, int featureVectorCount) {
+        StudentImageCollectionEvent studentImageCollectionEvent = new StudentImageCollectionEvent();
+        studentImageCollectionEvent.setStudentId(studentId);
+        studentImageCollectionEvent.setFeatureVectorSum(featureVectorSum);
+        studentImageCollectionEvent.setFeatureVectorCount(featureVectorCount);
+        return studentImageCollectionEvent;
+    }
+}
@@ -0,0 +1,48 @@
+package org.literacyapp.authentication.recognition;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RecognitionDecisionPolicyTest {
+
+    private RecognitionDecisionPolicy recognitionDecisionPolicy = new RecognitionDecisionPolicy(0.5, 0.05);
+
+    @Test
+    public void testClearMatchIsRecognized() {
+        assertThat(recognitionDecisionPolicy.getRecognizedStudentId(getStudentSearchResult(0.8f, 0.6f)), is(1L));
+    }
+
+    @Test
+    public void testSingleMatchIsRecognized() {
+        assertThat(recognitionDecisionPolicy.getRecognizedStudentId(getStudentSearchResult(0.8f)), is(1L));
+    }
+
+    @Test
+    public void testMatchBelowThresholdIsRejected() {
+        assertThat(recognitionDecisionPolicy.getRecognizedStudentId(getStudentSearchResult(0.4f, 0.1f)), is(0L));
+    }
+
+    @Test
+    public void testAmbiguousMatchIsRejected() {
+        assertThat(recognitionDecisionPolicy.getRecognizedStudentId(getStudentSearchResult(0.8f, 0.78f)), is(0L));
+    }
+
+    @Test
+    public void testEmptyResultIsRejected() {
+        assertThat(recognitionDecisionPolicy.getRecognizedStudentId(new StudentSearchResult(2)), is(0L));
+    }
+
+    /**
+     * Returns a sorted StudentSearchResult, where the studentIds are 1, 2, ... in the order of the scores
+     */
+    private StudentSearchResult getStudentSearchResult(float... scores) {
+        StudentSearchResult studentSearchResult = new StudentSearchResult(scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            studentSearchResult.offer(i + 1, scores[i]);
+        }
+        studentSearchResult.sortDescending();
+        return studentSearchResult;
+    }
+}
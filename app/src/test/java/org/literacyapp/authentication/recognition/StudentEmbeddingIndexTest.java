@@ -0,0 +1,86 @@
+package org.literacyapp.authentication.recognition;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StudentEmbeddingIndexTest {
+
+    @Test
+    public void testSearchReturnsNearestStudentsInDescendingOrder() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        studentEmbeddingIndex.put(1, 10, new float[] {1, 0, 0});
+        studentEmbeddingIndex.put(2, 20, new float[] {0, 5, 0});
+        studentEmbeddingIndex.put(3, 30, new float[] {1, 1, 0});
+        studentEmbeddingIndex.put(4, 40, new float[] {2, 1, 0});
+
+        StudentSearchResult studentSearchResult = new StudentSearchResult(2);
+        studentEmbeddingIndex.search(new float[] {3, 0, 0}, 0, studentSearchResult);
+        assertThat(studentSearchResult.size(), is(2));
+        assertThat(studentSearchResult.getStudentId(0), is(10L));
+        assertThat(studentSearchResult.getStudentId(1), is(40L));
+        assertThat(studentSearchResult.getScore(0) > studentSearchResult.getScore(1), is(true));
+    }
+
+    @Test
+    public void testSearchKeepsEveryStudentOnlyOnce() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        studentEmbeddingIndex.put(1, 10, new float[] {1, 0});
+        studentEmbeddingIndex.put(2, 10, new float[] {1, 0.1f});
+        studentEmbeddingIndex.put(3, 20, new float[] {1, 1});
+
+        StudentSearchResult studentSearchResult = new StudentSearchResult(3);
+        studentEmbeddingIndex.search(new float[] {1, 0}, 0, studentSearchResult);
+        assertThat(studentSearchResult.size(), is(2));
+        assertThat(studentSearchResult.getStudentId(0), is(10L));
+        assertThat(studentSearchResult.getScore(0), is(1.0f));
+        assertThat(studentSearchResult.getStudentId(1), is(20L));
+    }
+
+    @Test
+    public void testExcludedStudentIsSkipped() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        studentEmbeddingIndex.put(1, 10, new float[] {1, 0});
+        studentEmbeddingIndex.put(2, 20, new float[] {1, 0});
+
+        StudentSearchResult studentSearchResult = new StudentSearchResult(5);
+        studentEmbeddingIndex.search(new float[] {1, 0}, 10, studentSearchResult);
+        assertThat(studentSearchResult.size(), is(1));
+        assertThat(studentSearchResult.getStudentId(0), is(20L));
+    }
+
+    @Test
+    public void testPutReplacesAndRemoveDeletes() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        for (int i = 1; i <= 100; i++) {
+            studentEmbeddingIndex.put(i, i, new float[] {0, 1});
+        }
+        assertThat(studentEmbeddingIndex.size(), is(100));
+
+        StudentSearchResult studentSearchResult = new StudentSearchResult(1);
+        studentEmbeddingIndex.put(50, 50, new float[] {1, 0});
+        assertThat(studentEmbeddingIndex.size(), is(100));
+        studentEmbeddingIndex.search(new float[] {1, 0}, 0, studentSearchResult);
+        assertThat(studentSearchResult.getStudentId(0), is(50L));
+
+        studentEmbeddingIndex.remove(50);
+        assertThat(studentEmbeddingIndex.size(), is(99));
+        studentEmbeddingIndex.search(new float[] {1, 0}, 0, studentSearchResult);
+        assertThat(studentSearchResult.getScore(0), is(0.0f));
+    }
+
+    @Test
+    public void testReassignStudent() {
+        StudentEmbeddingIndex studentEmbeddingIndex = new StudentEmbeddingIndex(null);
+        studentEmbeddingIndex.put(1, 10, new float[] {1, 0});
+        studentEmbeddingIndex.put(2, 20, new float[] {0, 1});
+
+        studentEmbeddingIndex.reassignStudent(20, 10);
+        StudentSearchResult studentSearchResult = new StudentSearchResult(5);
+        studentEmbeddingIndex.search(new float[] {0, 1}, 0, studentSearchResult);
+        assertThat(studentSearchResult.size(), is(1));
+        assertThat(studentSearchResult.getStudentId(0), is(10L));
+        assertThat(studentSearchResult.getScore(0), is(1.0f));
+    }
+}
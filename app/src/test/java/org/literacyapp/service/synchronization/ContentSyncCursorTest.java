@@ -0,0 +1,196 @@
+package org.literacyapp.service.synchronization;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ContentSyncCursorTest {
+
+    private static final String URL = "http://literacyapp.org/rest/content/allophone/list?deviceId=1&locale=EN";
+
+    private ContentSyncCursor contentSyncCursor;
+
+    @Before
+    public void setUp() {
+        contentSyncCursor = new ContentSyncCursor(new InMemorySharedPreferences(), "EN");
+    }
+
+    @Test
+    public void testFullUrlWithoutHighWaterMark() {
+        assertThat(contentSyncCursor.getUrl(URL, "allophone"), is(URL));
+    }
+
+    @Test
+    public void testHighWaterMarkIsAdvanced() {
+        ContentUpserter<ContentUpserterTest.TestEntity> contentUpserter = ContentUpserterTest.createContentUpserter(new LongIntMap());
+        contentUpserter.add(new ContentUpserterTest.TestEntity(1L, 3, 2000L));
+        contentSyncCursor.update("allophone", contentUpserter);
+        assertThat(contentSyncCursor.getUrl(URL, "allophone"), is(URL + "&since=2000&sinceRevision=3"));
+        // Other entity types are not affected
+        assertThat(contentSyncCursor.getUrl(URL, "letter"), is(URL));
+    }
+
+    @Test
+    public void testHighWaterMarkIsKeptIfIncomplete() {
+        ContentUpserter<ContentUpserterTest.TestEntity> contentUpserter = ContentUpserterTest.createContentUpserter(new LongIntMap());
+        contentUpserter.add(new ContentUpserterTest.TestEntity(1L, 3, 2000L));
+        contentSyncCursor.update("allophone", contentUpserter);
+
+        contentUpserter = ContentUpserterTest.createContentUpserter(new LongIntMap());
+        contentUpserter.add(new ContentUpserterTest.TestEntity(2L, 4, 3000L));
+        contentUpserter.markIncomplete();
+        contentSyncCursor.update("allophone", contentUpserter);
+        assertThat(contentSyncCursor.getUrl(URL, "allophone"), is(URL + "&since=2000&sinceRevision=3"));
+    }
+
+    @Test
+    public void testHighWaterMarkIsNotMovedBackwards() {
+        ContentUpserter<ContentUpserterTest.TestEntity> contentUpserter = ContentUpserterTest.createContentUpserter(new LongIntMap());
+        contentUpserter.add(new ContentUpserterTest.TestEntity(1L, 3, 2000L));
+        contentSyncCursor.update("allophone", contentUpserter);
+
+        // Nothing has been changed since the last synchronization
+        contentSyncCursor.update("allophone", ContentUpserterTest.createContentUpserter(new LongIntMap()));
+        assertThat(contentSyncCursor.getUrl(URL, "allophone"), is(URL + "&since=2000&sinceRevision=3"));
+    }
+
+    private static class InMemorySharedPreferences implements SharedPreferences {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return values;
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new InMemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class InMemoryEditor implements Editor {
+
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                changes.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                if (clear) {
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.literacyapp.service.synchronization;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ContentUpserterTest {
+
+    @Test
+    public void testNewEntityIsInserted() {
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(new LongIntMap());
+        assertThat(contentUpserter.add(new TestEntity(1L, 1, 1000L)), is(ContentUpserter.Operation.INSERT));
+        assertThat(contentUpserter.getExistingRevisionNumber(1L), is(1));
+    }
+
+    @Test
+    public void testEntityWithNewerRevisionNumberIsUpdated() {
+        LongIntMap existingRevisionNumbers = new LongIntMap();
+        existingRevisionNumbers.put(1L, 1);
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(existingRevisionNumbers);
+        assertThat(contentUpserter.add(new TestEntity(1L, 2, 1000L)), is(ContentUpserter.Operation.UPDATE));
+        assertThat(contentUpserter.getExistingRevisionNumber(1L), is(2));
+    }
+
+    @Test
+    public void testEntityWithSameOrOlderRevisionNumberIsNotWritten() {
+        LongIntMap existingRevisionNumbers = new LongIntMap();
+        existingRevisionNumbers.put(1L, 2);
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(existingRevisionNumbers);
+        assertThat(contentUpserter.add(new TestEntity(1L, 2, 1000L)), is(ContentUpserter.Operation.NONE));
+        assertThat(contentUpserter.add(new TestEntity(1L, 1, 1000L)), is(ContentUpserter.Operation.NONE));
+        assertThat(contentUpserter.getExistingRevisionNumber(1L), is(2));
+    }
+
+    @Test
+    public void testEntityContainedTwiceIsInsertedOnce() {
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(new LongIntMap());
+        assertThat(contentUpserter.add(new TestEntity(1L, 1, 1000L)), is(ContentUpserter.Operation.INSERT));
+        assertThat(contentUpserter.add(new TestEntity(1L, 1, 1000L)), is(ContentUpserter.Operation.NONE));
+    }
+
+    @Test
+    public void testOnlyExistingEntityIsDeleted() {
+        LongIntMap existingRevisionNumbers = new LongIntMap();
+        existingRevisionNumbers.put(1L, 1);
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(existingRevisionNumbers);
+        assertThat(contentUpserter.delete(1L), is(true));
+        assertThat(contentUpserter.delete(2L), is(false));
+    }
+
+    @Test
+    public void testMaxTimeLastUpdateAndRevisionNumber() {
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(new LongIntMap());
+        assertThat(contentUpserter.getMaxTimeLastUpdate(), is(0L));
+        assertThat(contentUpserter.getMaxRevisionNumber(), is(0));
+        contentUpserter.add(new TestEntity(1L, 3, 2000L));
+        contentUpserter.add(new TestEntity(2L, 5, 1000L));
+        contentUpserter.add(new TestEntity(3L, 1, null));
+        assertThat(contentUpserter.getMaxTimeLastUpdate(), is(2000L));
+        assertThat(contentUpserter.getMaxRevisionNumber(), is(5));
+    }
+
+    @Test
+    public void testMarkIncomplete() {
+        ContentUpserter<TestEntity> contentUpserter = createContentUpserter(new LongIntMap());
+        assertThat(contentUpserter.isComplete(), is(true));
+        contentUpserter.markIncomplete();
+        assertThat(contentUpserter.isComplete(), is(false));
+    }
+
+    static ContentUpserter<TestEntity> createContentUpserter(LongIntMap existingRevisionNumbers) {
+        return new ContentUpserter<TestEntity>(null, existingRevisionNumbers) {
+            @Override
+            protected long getId(TestEntity entity) {
+                return entity.id;
+            }
+
+            @Override
+            protected int getRevisionNumber(TestEntity entity) {
+                return entity.revisionNumber;
+            }
+
+            @Override
+            protected Calendar getTimeLastUpdate(TestEntity entity) {
+                return entity.timeLastUpdate;
+            }
+        };
+    }
+
+    static class TestEntity {
+
+        private long id;
+        private int revisionNumber;
+        private Calendar timeLastUpdate;
+
+        TestEntity(long id, int revisionNumber, Long timeLastUpdate) {
+            this.id = id;
+            this.revisionNumber = revisionNumber;
+            if (timeLastUpdate != null) {
+                this.timeLastUpdate = Calendar.getInstance();
+                this.timeLastUpdate.setTimeInMillis(timeLastUpdate);
+            }
+        }
+    }
+}
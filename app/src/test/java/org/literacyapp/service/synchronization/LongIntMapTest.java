@@ -0,0 +1,38 @@
+package org.literacyapp.service.synchronization;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LongIntMapTest {
+
+    @Test
+    public void testMissingKeyReturnsDefaultValue() {
+        LongIntMap longIntMap = new LongIntMap();
+        longIntMap.put(1L, 3);
+        assertThat(longIntMap.get(2L, -1), is(-1));
+        assertThat(longIntMap.containsKey(2L), is(false));
+    }
+
+    @Test
+    public void testPutReplacesExistingValue() {
+        LongIntMap longIntMap = new LongIntMap();
+        longIntMap.put(42L, 1);
+        longIntMap.put(42L, 2);
+        assertThat(longIntMap.get(42L, -1), is(2));
+        assertThat(longIntMap.size(), is(1));
+    }
+
+    @Test
+    public void testEntriesAreKeptWhenResized() {
+        LongIntMap longIntMap = new LongIntMap();
+        for (long key = 0; key < 1000; key++){
+            longIntMap.put(key * 1024, (int) key);
+        }
+        assertThat(longIntMap.size(), is(1000));
+        for (long key = 0; key < 1000; key++){
+            assertThat(longIntMap.get(key * 1024, -1), is((int) key));
+        }
+    }
+}
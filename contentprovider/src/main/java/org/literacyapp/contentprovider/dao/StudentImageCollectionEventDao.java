@@ -14,6 +14,7 @@ import org.greenrobot.greendao.database.DatabaseStatement;
 
 import java.util.Calendar;
 import org.literacyapp.contentprovider.dao.converter.CalendarConverter;
+import org.literacyapp.contentprovider.dao.converter.FloatArrayConverter;
 import org.literacyapp.contentprovider.model.Device;
 import org.literacyapp.contentprovider.model.Student;
 
@@ -36,12 +37,16 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
         public final static Property DeviceId = new Property(1, long.class, "deviceId", false, "DEVICE_ID");
         public final static Property Time = new Property(2, long.class, "time", false, "TIME");
         public final static Property StudentId = new Property(3, long.class, "studentId", false, "STUDENT_ID");
-        public final static Property MeanFeatureVector = new Property(4, String.class, "meanFeatureVector", false, "MEAN_FEATURE_VECTOR");
+        public final static Property MeanFeatureVector = new Property(4, byte[].class, "meanFeatureVector", false, "MEAN_FEATURE_VECTOR");
+        public final static Property FeatureVectorSum = new Property(5, byte[].class, "featureVectorSum", false, "FEATURE_VECTOR_SUM");
+        public final static Property FeatureVectorCount = new Property(6, int.class, "featureVectorCount", false, "FEATURE_VECTOR_COUNT");
     }
 
     private DaoSession daoSession;
 
     private final CalendarConverter timeConverter = new CalendarConverter();
+    private final FloatArrayConverter meanFeatureVectorConverter = new FloatArrayConverter();
+    private final FloatArrayConverter featureVectorSumConverter = new FloatArrayConverter();
 
     public StudentImageCollectionEventDao(DaoConfig config) {
         super(config);
@@ -60,7 +65,9 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
                 "\"DEVICE_ID\" INTEGER NOT NULL ," + // 1: deviceId
                 "\"TIME\" INTEGER NOT NULL ," + // 2: time
                 "\"STUDENT_ID\" INTEGER NOT NULL ," + // 3: studentId
-                "\"MEAN_FEATURE_VECTOR\" TEXT);"); // 4: meanFeatureVector
+                "\"MEAN_FEATURE_VECTOR\" BLOB," + // 4: meanFeatureVector
+                "\"FEATURE_VECTOR_SUM\" BLOB," + // 5: featureVectorSum
+                "\"FEATURE_VECTOR_COUNT\" INTEGER NOT NULL );"); // 6: featureVectorCount
     }
 
     /** Drops the underlying database table. */
@@ -81,10 +88,16 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
         stmt.bindLong(3, timeConverter.convertToDatabaseValue(entity.getTime()));
         stmt.bindLong(4, entity.getStudentId());
  
-        String meanFeatureVector = entity.getMeanFeatureVector();
+        float[] meanFeatureVector = entity.getMeanFeatureVector();
         if (meanFeatureVector != null) {
-            stmt.bindString(5, meanFeatureVector);
+            stmt.bindBlob(5, meanFeatureVectorConverter.convertToDatabaseValue(meanFeatureVector));
         }
+ 
+        float[] featureVectorSum = entity.getFeatureVectorSum();
+        if (featureVectorSum != null) {
+            stmt.bindBlob(6, featureVectorSumConverter.convertToDatabaseValue(featureVectorSum));
+        }
+        stmt.bindLong(7, entity.getFeatureVectorCount());
     }
 
     @Override
@@ -99,10 +112,16 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
         stmt.bindLong(3, timeConverter.convertToDatabaseValue(entity.getTime()));
         stmt.bindLong(4, entity.getStudentId());
  
-        String meanFeatureVector = entity.getMeanFeatureVector();
+        float[] meanFeatureVector = entity.getMeanFeatureVector();
         if (meanFeatureVector != null) {
-            stmt.bindString(5, meanFeatureVector);
+            stmt.bindBlob(5, meanFeatureVectorConverter.convertToDatabaseValue(meanFeatureVector));
+        }
+ 
+        float[] featureVectorSum = entity.getFeatureVectorSum();
+        if (featureVectorSum != null) {
+            stmt.bindBlob(6, featureVectorSumConverter.convertToDatabaseValue(featureVectorSum));
         }
+        stmt.bindLong(7, entity.getFeatureVectorCount());
     }
 
     @Override
@@ -123,7 +142,9 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
             cursor.getLong(offset + 1), // deviceId
             timeConverter.convertToEntityProperty(cursor.getLong(offset + 2)), // time
             cursor.getLong(offset + 3), // studentId
-            cursor.isNull(offset + 4) ? null : cursor.getString(offset + 4) // meanFeatureVector
+            cursor.isNull(offset + 4) ? null : meanFeatureVectorConverter.convertToEntityProperty(cursor.getBlob(offset + 4)), // meanFeatureVector
+            cursor.isNull(offset + 5) ? null : featureVectorSumConverter.convertToEntityProperty(cursor.getBlob(offset + 5)), // featureVectorSum
+            cursor.getInt(offset + 6) // featureVectorCount
         );
         return entity;
     }
@@ -134,7 +155,9 @@ public class StudentImageCollectionEventDao extends AbstractDao<StudentImageColl
         entity.setDeviceId(cursor.getLong(offset + 1));
         entity.setTime(timeConverter.convertToEntityProperty(cursor.getLong(offset + 2)));
         entity.setStudentId(cursor.getLong(offset + 3));
-        entity.setMeanFeatureVector(cursor.isNull(offset + 4) ? null : cursor.getString(offset + 4));
+        entity.setMeanFeatureVector(cursor.isNull(offset + 4) ? null : meanFeatureVectorConverter.convertToEntityProperty(cursor.getBlob(offset + 4)));
+        entity.setFeatureVectorSum(cursor.isNull(offset + 5) ? null : featureVectorSumConverter.convertToEntityProperty(cursor.getBlob(offset + 5)));
+        entity.setFeatureVectorCount(cursor.getInt(offset + 6));
      }
     
     @Override
@@ -0,0 +1,48 @@
+package org.literacyapp.contentprovider.dao.converter;
+
+import android.util.Log;
+
+import org.greenrobot.greendao.converter.PropertyConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Stores a float array (e.g. a feature vector) as a BLOB of little-endian float32 values.
+ */
+public class FloatArrayConverter implements PropertyConverter<float[], byte[]> {
+
+    public static final int BYTES_PER_FLOAT = 4;
+
+    @Override
+    public float[] convertToEntityProperty(byte[] databaseValue) {
+        Log.d(getClass().getName(), "convertToEntityProperty");
+
+        float[] floatArray = toFloatArray(databaseValue);
+        Log.d(getClass().getName(), "floatArray.length: " + floatArray.length);
+        return floatArray;
+    }
+
+    @Override
+    public byte[] convertToDatabaseValue(float[] entityProperty) {
+        Log.d(getClass().getName(), "convertToDatabaseValue");
+
+        byte[] databaseValue = toByteArray(entityProperty);
+        Log.d(getClass().getName(), "databaseValue.length: " + databaseValue.length);
+        return databaseValue;
+    }
+
+    public static byte[] toByteArray(float[] floatArray) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(floatArray.length * BYTES_PER_FLOAT).order(ByteOrder.LITTLE_ENDIAN);
+        byteBuffer.asFloatBuffer().put(floatArray);
+        return byteBuffer.array();
+    }
+
+    public static float[] toFloatArray(byte[] byteArray) {
+        FloatBuffer floatBuffer = ByteBuffer.wrap(byteArray).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        float[] floatArray = new float[floatBuffer.remaining()];
+        floatBuffer.get(floatArray);
+        return floatArray;
+    }
+}
@@ -6,6 +6,7 @@ import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
 import org.greenrobot.greendao.annotation.NotNull;
 import org.literacyapp.contentprovider.dao.converter.CalendarConverter;
+import org.literacyapp.contentprovider.dao.converter.FloatArrayConverter;
 
 import java.util.Calendar;
 
@@ -23,11 +24,12 @@ public class StudentImageFeature {
     private Calendar timeCreated;
 
     @NotNull
-    private String featureVector;
+    @Convert(converter = FloatArrayConverter.class, columnType = byte[].class)
+    private float[] featureVector;
 
-    @Generated(hash = 828845722)
+    @Generated
     public StudentImageFeature(Long id, @NotNull Calendar timeCreated,
-            @NotNull String featureVector) {
+            @NotNull float[] featureVector) {
         this.id = id;
         this.timeCreated = timeCreated;
         this.featureVector = featureVector;
@@ -53,11 +55,11 @@ public class StudentImageFeature {
         this.timeCreated = timeCreated;
     }
 
-    public String getFeatureVector() {
+    public float[] getFeatureVector() {
         return this.featureVector;
     }
 
-    public void setFeatureVector(String featureVector) {
+    public void setFeatureVector(float[] featureVector) {
         this.featureVector = featureVector;
     }
 }
@@ -14,6 +14,7 @@ import org.literacyapp.contentprovider.dao.StudentDao;
 import org.literacyapp.contentprovider.dao.StudentImageCollectionEventDao;
 import org.literacyapp.contentprovider.dao.StudentImageDao;
 import org.literacyapp.contentprovider.dao.converter.CalendarConverter;
+import org.literacyapp.contentprovider.dao.converter.FloatArrayConverter;
 import org.literacyapp.contentprovider.model.Device;
 import org.literacyapp.contentprovider.model.Student;
 import org.literacyapp.contentprovider.model.StudentImage;
@@ -48,7 +49,16 @@ public class StudentImageCollectionEvent {
     @ToOne(joinProperty = "studentId")
     private Student student;
 
-    private String meanFeatureVector;
+    @Convert(converter = FloatArrayConverter.class, columnType = byte[].class)
+    private float[] meanFeatureVector;
+
+    /**
+     * Running sum of the featureVectors of all StudentImages with extracted features
+     */
+    @Convert(converter = FloatArrayConverter.class, columnType = byte[].class)
+    private float[] featureVectorSum;
+
+    private int featureVectorCount;
 
     @ToMany(referencedJoinProperty = "studentImageCollectionEventId")
     private List<StudentImage> studentImages;
@@ -61,14 +71,16 @@ public class StudentImageCollectionEvent {
     @Generated(hash = 136770604)
     private transient StudentImageCollectionEventDao myDao;
 
-    @Generated(hash = 862266622)
+    @Generated
     public StudentImageCollectionEvent(Long id, long deviceId, @NotNull Calendar time, long studentId,
-            String meanFeatureVector) {
+            float[] meanFeatureVector, float[] featureVectorSum, int featureVectorCount) {
         this.id = id;
         this.deviceId = deviceId;
         this.time = time;
         this.studentId = studentId;
         this.meanFeatureVector = meanFeatureVector;
+        this.featureVectorSum = featureVectorSum;
+        this.featureVectorCount = featureVectorCount;
     }
 
     @Generated(hash = 802935259)
@@ -215,14 +227,30 @@ public class StudentImageCollectionEvent {
         myDao.update(this);
     }
 
-    public String getMeanFeatureVector() {
+    public float[] getMeanFeatureVector() {
         return this.meanFeatureVector;
     }
 
-    public void setMeanFeatureVector(String meanFeatureVector) {
+    public void setMeanFeatureVector(float[] meanFeatureVector) {
         this.meanFeatureVector = meanFeatureVector;
     }
 
+    public float[] getFeatureVectorSum() {
+        return this.featureVectorSum;
+    }
+
+    public void setFeatureVectorSum(float[] featureVectorSum) {
+        this.featureVectorSum = featureVectorSum;
+    }
+
+    public int getFeatureVectorCount() {
+        return this.featureVectorCount;
+    }
+
+    public void setFeatureVectorCount(int featureVectorCount) {
+        this.featureVectorCount = featureVectorCount;
+    }
+
     /**
      * To-many relationship, resolved on first access (and after reset).
      * Changes to to-many relations are not persisted, make changes to the target entity.
@@ -0,0 +1,30 @@
+package org.literacyapp.contentprovider.dao.converter;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class FloatArrayConverterTest {
+
+    @Test
+    public void testToByteArrayIsLittleEndianFloat32() {
+        byte[] byteArray = FloatArrayConverter.toByteArray(new float[] {1.0f});
+        // 1.0f == 0x3F800000
+        assertArrayEquals(new byte[] {0x00, 0x00, (byte) 0x80, 0x3F}, byteArray);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        float[] floatArray = new float[] {0.0f, -1.5f, 3.25f, Float.MIN_VALUE, Float.MAX_VALUE};
+        byte[] byteArray = FloatArrayConverter.toByteArray(floatArray);
+        assertThat(byteArray.length, is(floatArray.length * FloatArrayConverter.BYTES_PER_FLOAT));
+        assertArrayEquals(floatArray, FloatArrayConverter.toFloatArray(byteArray), 0.0f);
+    }
+
+    @Test
+    public void testEmptyArray() {
+        assertThat(FloatArrayConverter.toFloatArray(FloatArrayConverter.toByteArray(new float[0])).length, is(0));
+    }
+}
@@ -30,8 +30,12 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
     private static final int MAGIC_TEXTURE_ID = 10;
     private static final String TAG = "JavaCameraView";
+    /* Callback buffers owned by the camera, the processing thread and the pending frame */
+    private static final int CALLBACK_BUFFER_COUNT = 3;
 
-    private byte mBuffer[];
+    private byte mBuffers[][];
+    /* Latest preview buffer which has not been picked up by the processing thread yet */
+    private byte mPendingBuffer[];
     private Mat[] mFrameChain;
     private int mChainIdx = 0;
     private Thread mThread;
@@ -174,9 +178,12 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
                     int size = mFrameWidth * mFrameHeight;
                     size  = size * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
-                    mBuffer = new byte[size];
-
-                    mCamera.addCallbackBuffer(mBuffer);
+                    mBuffers = new byte[CALLBACK_BUFFER_COUNT][];
+                    for (int i = 0; i < CALLBACK_BUFFER_COUNT; i++) {
+                        mBuffers[i] = new byte[size];
+                        mCamera.addCallbackBuffer(mBuffers[i]);
+                    }
+                    mPendingBuffer = null;
                     mCamera.setPreviewCallbackWithBuffer(this);
 
                     mFrameChain = new Mat[2];
@@ -219,6 +226,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCamera.release();
             }
             mCamera = null;
+            mPendingBuffer = null;
             if (mFrameChain != null) {
                 mFrameChain[0].release();
                 mFrameChain[1].release();
@@ -230,6 +238,31 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         }
     }
 
+    /**
+     * Change the exposure compensation of the running camera by the given number of steps, limited to the supported range
+     * @param steps
+     * @return true if the exposure compensation has been changed
+     */
+    public boolean changeExposureCompensation(int steps) {
+        synchronized (this) {
+            if (mCamera == null)
+                return false;
+            try {
+                Camera.Parameters params = mCamera.getParameters();
+                int current = params.getExposureCompensation();
+                int changed = Math.max(params.getMinExposureCompensation(), Math.min(params.getMaxExposureCompensation(), current + steps));
+                if (changed == current)
+                    return false;
+                params.setExposureCompensation(changed);
+                mCamera.setParameters(params);
+                return true;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Exposure compensation couldn't be changed: " + e.getLocalizedMessage());
+                return false;
+            }
+        }
+    }
+
     private boolean mCameraFrameReady = false;
 
     @Override
@@ -284,13 +317,17 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
+        byte[] droppedBuffer;
+        /* The buffer is only handed over, it is copied by the processing thread if the frame is delivered */
         synchronized (this) {
-            mFrameChain[mChainIdx].put(0, 0, frame);
+            droppedBuffer = mPendingBuffer;
+            mPendingBuffer = frame;
             mCameraFrameReady = true;
             this.notify();
         }
-        if (mCamera != null)
-            mCamera.addCallbackBuffer(mBuffer);
+        /* The previous frame has not been picked up in time, its buffer can be reused right away */
+        if (mCamera != null && droppedBuffer != null)
+            mCamera.addCallbackBuffer(droppedBuffer);
     }
 
     private class JavaCameraFrame implements CvCameraViewFrame {
@@ -301,10 +338,18 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         @Override
         public Mat rgba() {
-            Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+            /* Converted at most once per frame and only if a listener asks for it */
+            if (!mRgbaValid) {
+                Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                mRgbaValid = true;
+            }
             return mRgba;
         }
 
+        public void invalidate() {
+            mRgbaValid = false;
+        }
+
         public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
             super();
             mWidth = width;
@@ -319,6 +364,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
 
         private Mat mYuvFrameData;
         private Mat mRgba;
+        private boolean mRgbaValid;
         private int mWidth;
         private int mHeight;
     };
@@ -329,6 +375,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         public void run() {
             do {
                 boolean hasFrame = false;
+                byte[] buffer = null;
                 synchronized (JavaCameraView.this) {
                     try {
                         while (!mCameraFrameReady && !mStopThread) {
@@ -339,12 +386,24 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     }
                     if (mCameraFrameReady)
                     {
+                        buffer = mPendingBuffer;
+                        mPendingBuffer = null;
                         mChainIdx = 1 - mChainIdx;
                         mCameraFrameReady = false;
                         hasFrame = true;
                     }
                 }
 
+                if (hasFrame && buffer != null) {
+                    /* Only frames which are delivered are copied, the buffer goes back to the camera right afterwards */
+                    mFrameChain[1 - mChainIdx].put(0, 0, buffer);
+                    mCameraFrame[1 - mChainIdx].invalidate();
+                    synchronized (JavaCameraView.this) {
+                        if (mCamera != null)
+                            mCamera.addCallbackBuffer(buffer);
+                    }
+                }
+
                 if (!mStopThread && hasFrame) {
                     if (!mFrameChain[1 - mChainIdx].empty())
                         deliverAndDrawFrame(mCameraFrame[1 - mChainIdx]);